@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 暗号文の格納ファイル
+ * スクランブラーの配線表と開始時の位相を先頭に、暗号文をUTF-8で一定の文字数ごとの区画に分けて格納し、
+ * 末尾に各区画の文字位置、ローターの回転数、バイト位置の索引を格納します。
+ * 索引から任意の区画の位相を算出できるため、先行する暗号文を変換せずに指定の範囲のみを復号化できます。
+ */
+public class CipherContainer {
+	/** 格納ファイルの識別子 */
+	private static final int CONTAINER_FILE_MAGIC = 0x454E4346;
+	/** 格納ファイルの版数 */
+	private static final int CONTAINER_FILE_VERSION = 1;
+	/** 区画の文字数 */
+	private static final int CHUNK_SIZE = 1 << 16;
+	/** 索引の要素の長さ（バイト） */
+	private static final int INDEX_ENTRY_SIZE = Long.BYTES * 3;
+	/** 末尾の長さ（バイト） */
+	private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES * 2;
+	/** 区画の最大の長さ（バイト） */
+	private static final int MAX_CHUNK_BYTES = (CHUNK_SIZE + 1) * 3;
+
+	/** 格納ファイルのパス */
+	private final Path path;
+	/** 格納時のスクランブラーのカーソル */
+	private final ScramblerCursor cursor;
+	/** 開始時の位相 */
+	private final String startOffsetText;
+	/** 索引（区画ごとの文字位置、回転数、バイト位置と、終端の値） */
+	private final long[][] index;
+
+	/**
+	 * パスと索引を基に格納ファイルを生成します。
+	 * 
+	 * @param path 格納ファイルのパス。
+	 * @param cursor 格納時のスクランブラーのカーソル。
+	 * @param startOffsetText 開始時の位相。
+	 * @param index 索引。
+	 */
+	private CipherContainer(Path path, ScramblerCursor cursor, String startOffsetText, long[][] index) {
+		this.path = path;
+		this.cursor = cursor;
+		this.startOffsetText = startOffsetText;
+		this.index = index;
+	}
+
+	/**
+	 * 平文を暗号化して格納ファイルへ保存します。
+	 * 平文はスクランブラーの正規化方針に従って正規化されます。
+	 * スクランブラー自身の位相は変更されません。
+	 * 
+	 * @param scrambler スクランブラー。
+	 * 現在の配線表と位相が使用されます。
+	 * @param in 平文の入力元。
+	 * @param path 保存先のパス。
+	 * @return 格納された暗号文の文字数。
+	 * 配線表の長さが格納ファイルに記録できる上限（2GiB）を超える場合は-1が返され、ファイルは作成されません。
+	 * NUL文字を出力し得る配線表（{@link Scrambler#isBijective()}が偽）の場合は-2が返され、ファイルは作成されません。
+	 * 暗号文のNUL文字からはローターの回転の有無を判別できず、範囲を指定した復号化で位相がずれるためです。
+	 * @throws IOException 読み書きに失敗した場合。
+	 */
+	public static long write(Scrambler scrambler, Reader in, Path path) throws IOException {
+		long wiringLength = scrambler.getWiringTablesSize();
+
+		if (wiringLength > Integer.MAX_VALUE)
+			return -1;
+
+		if (!scrambler.isBijective())
+			return -2;
+
+		ScramblerCursor cursor = scrambler.createCursor();
+		ByteBuffer head = ByteBuffer.allocate(Integer.BYTES * 3);
+		ByteBuffer offsetBuf = ByteBuffer.allocate(Integer.BYTES * (1 + cursor.getRotorNum()));
+
+		head.putInt(CONTAINER_FILE_MAGIC).putInt(CONTAINER_FILE_VERSION).putInt((int) wiringLength);
+		offsetBuf.putInt(cursor.getRotorNum());
+
+		for (int i = 0; i < cursor.getRotorNum(); i++)
+			offsetBuf.putInt(cursor.getOffset(i));
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, head.flip());
+			scrambler.writeWiringTables(channel);
+			writeFully(channel, offsetBuf.flip());
+
+			ByteBuffer indexBuf = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 64);
+			char[] readBuf = new char[CHUNK_SIZE + 1];
+			StringBuffer chunk = new StringBuffer(CHUNK_SIZE + 1);
+			long charPosition = 0, symbolPosition = 0;
+			int chunkNum = 0, chunkSteps = 0;
+			int readNum;
+
+			while (true) {
+				readNum = in.read(readBuf, 0, CHUNK_SIZE - chunk.length());
+
+				// 区画の末尾でサロゲートペアを分断しないよう、読み込んだ文字列の末尾が上位サロゲートの場合は1文字を追加で読み込む
+
+				if (readNum > 0 && Character.isHighSurrogate(readBuf[readNum - 1])) {
+					int lowNum = in.read(readBuf, readNum, 1);
+
+					if (lowNum > 0)
+						readNum += lowNum;
+				}
+
+				// 区画の途中で読み込みが分かれても正確に数えられるよう、回転数は暗号文ではなく平文から数える
+
+				if (readNum > 0) {
+					String text = new String(readBuf, 0, readNum);
+
+					chunk.append(cursor.convertText(text));
+					chunkSteps += cursor.countSteps(text);
+				}
+
+				if (readNum != -1 && chunk.length() < CHUNK_SIZE)
+					continue;
+
+				if (chunk.length() == 0 && readNum == -1)
+					break;
+
+				String text = chunk.toString();
+
+				chunk.setLength(0);
+
+				if (indexBuf.remaining() < INDEX_ENTRY_SIZE)
+					indexBuf = ByteBuffer.allocate(indexBuf.capacity() * 2).put(indexBuf.flip());
+
+				indexBuf.putLong(charPosition).putLong(symbolPosition).putLong(channel.position());
+				chunkNum++;
+				writeFully(channel, StandardCharsets.UTF_8.encode(text));
+				charPosition += text.length();
+				symbolPosition += chunkSteps;
+				chunkSteps = 0;
+			}
+
+			long indexOffset = channel.position();
+
+			indexBuf = ByteBuffer.allocate(indexBuf.position() + INDEX_ENTRY_SIZE + FOOTER_SIZE).put(indexBuf.flip());
+			indexBuf.putLong(charPosition).putLong(symbolPosition).putLong(indexOffset);
+			indexBuf.putLong(indexOffset).putInt(chunkNum).putInt(CONTAINER_FILE_MAGIC);
+			writeFully(channel, indexBuf.flip());
+
+			return charPosition;
+		}
+	}
+
+	/**
+	 * バッファーの内容を全てチャンネルへ書き込みます。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @param buf 書き込むバッファー。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+
+	/**
+	 * 格納ファイルを開き、先頭の配線表と位相、末尾の索引のみを読み取り専用でメモリーマップします。
+	 * 暗号文の区画は復号化する際に必要な区画のみがメモリーマップされるため、2GiBを超える格納ファイルも開けます。
+	 * 
+	 * @param path 格納ファイルのパス。
+	 * @return 格納ファイル。
+	 * 識別子や版数が異なる場合や、配線表や索引が不正な場合はNULLが返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public static CipherContainer open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int wiringStart = Integer.BYTES * 3;
+
+			if (size < wiringStart + Integer.BYTES + FOOTER_SIZE)
+				return null;
+
+			ByteBuffer head = map(channel, 0, wiringStart);
+			ByteBuffer footer = map(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+
+			if (head.getInt(0) != CONTAINER_FILE_MAGIC || head.getInt(Integer.BYTES) != CONTAINER_FILE_VERSION
+					|| footer.getInt(FOOTER_SIZE - Integer.BYTES) != CONTAINER_FILE_MAGIC)
+				return null;
+
+			int wiringLength = head.getInt(Integer.BYTES * 2);
+
+			if (wiringLength < 0 || wiringLength > size - wiringStart - Integer.BYTES - FOOTER_SIZE)
+				return null;
+
+			Scrambler scrambler = new Scrambler(0);
+
+			if (scrambler.loadWiringTables(channel, wiringStart, wiringLength) != 0 || !scrambler.isBijective())
+				return null;
+
+			ScramblerCursor cursor = scrambler.createCursor();
+			long offsetStart = wiringStart + wiringLength;
+			long offsetLength = Integer.BYTES * (1L + cursor.getRotorNum());
+
+			if (offsetStart + offsetLength > size - FOOTER_SIZE)
+				return null;
+
+			ByteBuffer offsetBuf = map(channel, offsetStart, offsetLength);
+
+			if (offsetBuf.getInt(0) != cursor.getRotorNum())
+				return null;
+
+			char[] startOffsets = new char[cursor.getRotorNum()];
+
+			for (int i = 0; i < startOffsets.length; i++) {
+				int offset = offsetBuf.getInt(Integer.BYTES * (i + 1));
+
+				if (offset < 0 || offset >= cursor.getCharSet().length())
+					return null;
+
+				startOffsets[i] = cursor.getCharSet().charAt(offset);
+			}
+
+			long indexOffset = footer.getLong(0);
+			int chunkNum = footer.getInt(Long.BYTES);
+			long indexLength = (long) INDEX_ENTRY_SIZE * (chunkNum + 1L);
+
+			if (chunkNum < 0 || indexOffset < offsetStart + offsetLength || indexLength > Integer.MAX_VALUE
+					|| indexOffset + indexLength != size - FOOTER_SIZE)
+				return null;
+
+			ByteBuffer indexBuf = map(channel, indexOffset, indexLength);
+			long[][] index = new long[chunkNum + 1][3];
+
+			for (int i = 0; i <= chunkNum; i++) {
+				for (int j = 0; j < 3; j++)
+					index[i][j] = indexBuf.getLong(INDEX_ENTRY_SIZE * i + Long.BYTES * j);
+
+				if (i > 0 && (index[i][0] < index[i - 1][0] || index[i][1] < index[i - 1][1]
+						|| index[i][2] < index[i - 1][2]
+						|| index[i][2] - index[i - 1][2] > (long) MAX_CHUNK_BYTES))
+					return null;
+			}
+
+			if ((chunkNum > 0 && index[0][2] != offsetStart + offsetLength) || index[chunkNum][2] != indexOffset)
+				return null;
+
+			return new CipherContainer(path, cursor, new String(startOffsets), index);
+		}
+	}
+
+	/**
+	 * ファイルの一部を読み取り専用でメモリーマップします。
+	 * マップされた領域はチャンネルを閉じた後も使用できます。
+	 * 
+	 * @param channel ファイルのチャンネル。
+	 * @param position 始点のバイト位置。
+	 * @param size 長さ（バイト）。
+	 * @return マップされたバッファー。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	/**
+	 * 格納された暗号文の文字数を取得します。
+	 * 
+	 * @return 文字数。
+	 */
+	public long length() {
+		return index[index.length - 1][0];
+	}
+
+	/**
+	 * 区画の個数を取得します。
+	 * 
+	 * @return 区画の個数。
+	 */
+	public int getChunkNum() {
+		return index.length - 1;
+	}
+
+	/**
+	 * 開始時の位相を取得します。
+	 * 
+	 * @return 位相に対応する文字セットの文字列。
+	 */
+	public String getStartOffsetText() {
+		return startOffsetText;
+	}
+
+	/**
+	 * 指定の範囲の暗号文を復号化します。
+	 * 範囲を含む区画の位相は索引から算出されるため、先行する暗号文は変換されません。
+	 * 
+	 * @param from 復号化する範囲の先頭の文字位置。
+	 * @param count 復号化する文字数。
+	 * 暗号文の末尾を超える分は無視されます。
+	 * @return 復号化された文字列。
+	 * 範囲が不正な場合はNULLが返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public String read(long from, int count) throws IOException {
+		if (from < 0 || count < 0 || from > length())
+			return null;
+
+		long to = Math.min(length(), from + count);
+		StringBuffer res = new StringBuffer((int) (to - from));
+		ScramblerCursor localCursor = cursor.copy();
+		int chunkIndex = findChunk(from);
+
+		localCursor.setOffsetText(startOffsetText);
+		localCursor.advance(index[chunkIndex][1]);
+
+		for (long position = index[chunkIndex][0]; position < to; chunkIndex++) {
+			String text = decodeChunk(chunkIndex);
+			int start = (int) Math.max(0, from - position);
+			int end = (int) Math.min(text.length(), to - position);
+
+			// 配線表は全単射に限られるため、暗号文のうち正規化後に文字セットに存在する文字と回転が一対一に対応する
+			// 読み飛ばす文字も変換する文字と同じ規則で数える
+
+			localCursor.advance(localCursor.countSteps(text.subSequence(0, start)));
+
+			for (int i = start; i < end; i++)
+				res.append(localCursor.convertChar(text.charAt(i)));
+
+			position += text.length();
+		}
+
+		return res.toString();
+	}
+
+	/**
+	 * 文字位置を含む区画を二分探索します。
+	 * 
+	 * @param position 文字位置。
+	 * @return 区画の番地。
+	 */
+	private int findChunk(long position) {
+		int low = 0, high = index.length - 2;
+
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+
+			if (index[mid][0] <= position) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		return Math.max(0, low);
+	}
+
+	/**
+	 * 区画の暗号文を復号します（文字コードの変換のみ）。
+	 * 区画のみをメモリーマップして読み込みます。
+	 * 
+	 * @param chunkIndex 区画の番地。
+	 * @return 区画の暗号文。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	private String decodeChunk(int chunkIndex) throws IOException {
+		long start = index[chunkIndex][2];
+		long end = index[chunkIndex + 1][2];
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			CharBuffer text = StandardCharsets.UTF_8.decode(map(channel, start, end - start));
+
+			return text.toString();
+		}
+	}
+}
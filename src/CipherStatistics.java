@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * 暗号文の統計
+ * 文字セットの番地の列から単字・2文字組・3文字組の出現回数と一致指数を集計します。
+ */
+public class CipherStatistics {
+	/** 2文字組を集計する表の最大の長さ */
+	private static final int MAX_BIGRAM_TABLE_SIZE = 1 << 22;
+	/** 3文字組を集計する表の最大の長さ */
+	private static final int MAX_TRIGRAM_TABLE_SIZE = 1 << 20;
+
+	/** 文字セット */
+	private final String charSet;
+	/** 単字の出現回数 */
+	private final long[] unigrams;
+	/** 2文字組の出現回数（集計しない場合はNULL） */
+	private final long[] bigrams;
+	/** 3文字組の出現回数（集計しない場合はNULL） */
+	private final long[] trigrams;
+	/** 文字の総数 */
+	private long total = 0;
+	/** 先頭の1文字目と2文字目 */
+	private int head1 = -1, head2 = -1;
+	/** 末尾の1文字前と2文字前 */
+	private int last1 = -1, last2 = -1;
+
+	/**
+	 * 文字セットを基に空の統計を生成します。
+	 * 文字セットが大きすぎる場合、2文字組と3文字組は集計されません。
+	 * 
+	 * @param charSet 文字セット。
+	 */
+	public CipherStatistics(String charSet) {
+		int n = charSet.length();
+
+		this.charSet = charSet;
+		unigrams = new long[n];
+		bigrams = (long) n * n <= MAX_BIGRAM_TABLE_SIZE ? new long[n * n] : null;
+		trigrams = (long) n * n * n <= MAX_TRIGRAM_TABLE_SIZE ? new long[n * n * n] : null;
+	}
+
+	/**
+	 * ファイルを並列に読み込み、統計を集計します。
+	 * ファイルはUTF-8として区間ごとに一度だけ読み込まれ、区間ごとの集計は最後に結合されます。
+	 * 文字セットに存在しない文字は読み飛ばされます。
+	 * 
+	 * @param path ファイルのパス。
+	 * @param charSet 文字セット。
+	 * @return 統計。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public static CipherStatistics analyze(Path path, String charSet) throws IOException {
+		Utf8SymbolCodec codec = new Utf8SymbolCodec(charSet, Utility.createCharIndexTable(charSet));
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long chunkSize = Math.max(1 << 16, Math.min(CorpusReader.DEFAULT_CHUNK_SIZE,
+					channel.size() / Runtime.getRuntime().availableProcessors() + 1));
+			long[] chunks = CorpusReader.splitChunks(channel, chunkSize);
+
+			return IntStream.range(0, chunks.length - 1).parallel().mapToObj(i -> {
+				CipherStatistics res = new CipherStatistics(charSet);
+
+				try {
+					CorpusReader.readSymbols(channel, chunks[i], chunks[i + 1], codec, res::accept);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+
+				return res;
+			}).reduce(CipherStatistics::merge).orElseGet(() -> new CipherStatistics(charSet));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * 番地の列を集計します。
+	 * 
+	 * @param symbols 文字セットの番地の配列。
+	 * @param length 有効な要素数。
+	 */
+	public void accept(int[] symbols, int length) {
+		int n = unigrams.length;
+
+		for (int i = 0; i < length; i++) {
+			int symbol = symbols[i];
+
+			unigrams[symbol]++;
+
+			if (last1 != -1) {
+				if (bigrams != null)
+					bigrams[last1 * n + symbol]++;
+
+				if (last2 != -1 && trigrams != null)
+					trigrams[(last2 * n + last1) * n + symbol]++;
+			}
+
+			if (total == 0) {
+				head1 = symbol;
+			} else if (total == 1) {
+				head2 = symbol;
+			}
+
+			last2 = last1;
+			last1 = symbol;
+			total++;
+		}
+	}
+
+	/**
+	 * 後続する区間の統計を結合します。
+	 * 区間の境界をまたぐ2文字組と3文字組も集計されます。
+	 * 
+	 * @param next 後続する区間の統計。
+	 * 同じ文字セットで集計されている必要があります。
+	 * @return 結合された統計（このインスタンス）。
+	 */
+	public CipherStatistics merge(CipherStatistics next) {
+		int n = unigrams.length;
+
+		if (last1 != -1 && next.head1 != -1) {
+			if (bigrams != null)
+				bigrams[last1 * n + next.head1]++;
+
+			if (trigrams != null) {
+				if (last2 != -1)
+					trigrams[(last2 * n + last1) * n + next.head1]++;
+
+				if (next.head2 != -1)
+					trigrams[(last1 * n + next.head1) * n + next.head2]++;
+			}
+		}
+
+		for (int i = 0; i < unigrams.length; i++)
+			unigrams[i] += next.unigrams[i];
+
+		if (bigrams != null)
+			for (int i = 0; i < bigrams.length; i++)
+				bigrams[i] += next.bigrams[i];
+
+		if (trigrams != null)
+			for (int i = 0; i < trigrams.length; i++)
+				trigrams[i] += next.trigrams[i];
+
+		if (total == 0) {
+			head1 = next.head1;
+			head2 = next.head2;
+		} else if (total == 1) {
+			head2 = next.head1;
+		}
+
+		if (next.total == 1) {
+			last2 = last1;
+			last1 = next.last1;
+		} else if (next.total >= 2) {
+			last2 = next.last2;
+			last1 = next.last1;
+		}
+
+		total += next.total;
+
+		return this;
+	}
+
+	/**
+	 * 文字の総数を取得します。
+	 * 
+	 * @return 文字の総数。
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * 単字の出現回数を取得します。
+	 * 
+	 * @param symbol 文字セットの番地。
+	 * @return 出現回数。
+	 */
+	public long getUnigramCount(int symbol) {
+		return unigrams[symbol];
+	}
+
+	/**
+	 * 2文字組の出現回数を取得します。
+	 * 
+	 * @param first 1文字目の番地。
+	 * @param second 2文字目の番地。
+	 * @return 出現回数。
+	 * 2文字組が集計されていない場合は-1が返されます。
+	 */
+	public long getBigramCount(int first, int second) {
+		return bigrams != null ? bigrams[first * unigrams.length + second] : -1;
+	}
+
+	/**
+	 * 3文字組の出現回数を取得します。
+	 * 
+	 * @param first 1文字目の番地。
+	 * @param second 2文字目の番地。
+	 * @param third 3文字目の番地。
+	 * @return 出現回数。
+	 * 3文字組が集計されていない場合は-1が返されます。
+	 */
+	public long getTrigramCount(int first, int second, int third) {
+		return trigrams != null ? trigrams[(first * unigrams.length + second) * unigrams.length + third] : -1;
+	}
+
+	/**
+	 * 一致指数を取得します。
+	 * 
+	 * @return 一致指数。
+	 * 文字の総数が2未満の場合は0が返されます。
+	 */
+	public double getIndexOfCoincidence() {
+		if (total < 2)
+			return 0;
+
+		double sum = 0;
+
+		for (long count : unigrams)
+			sum += (double) count * (count - 1);
+
+		return sum / ((double) total * (total - 1));
+	}
+
+	/**
+	 * 統計を視覚的な文字列として取得します。
+	 * 単字は全て、2文字組と3文字組は出現回数の多い順に表示されます。
+	 * 
+	 * @param topNum 表示する2文字組と3文字組の個数。
+	 * @return 統計。
+	 */
+	public String getSummary(int topNum) {
+		StringBuffer res = new StringBuffer();
+
+		res.append("Symbols: " + total + "\n");
+		res.append(String.format("IC: %.6f (%.3f x random)%n", getIndexOfCoincidence(),
+				getIndexOfCoincidence() * unigrams.length));
+
+		for (int i = 0; i < unigrams.length; i++)
+			res.append(String.format("%c %d %.3f%%%n", charSet.charAt(i), unigrams[i],
+					total > 0 ? 100.0 * unigrams[i] / total : 0.0));
+
+		res.append("Bigrams:");
+		appendTopGrams(res, bigrams, 2, topNum);
+		res.append("\nTrigrams:");
+		appendTopGrams(res, trigrams, 3, topNum);
+
+		return res.toString();
+	}
+
+	/**
+	 * 出現回数の多いn文字組を文字列へ追加します。
+	 * 
+	 * @param res 追加先。
+	 * @param grams n文字組の出現回数。
+	 * @param gramLength n文字組の長さ。
+	 * @param topNum 追加する個数。
+	 */
+	private void appendTopGrams(StringBuffer res, long[] grams, int gramLength, int topNum) {
+		if (grams == null) {
+			res.append(" (not counted)");
+
+			return;
+		}
+
+		int[] top = IntStream.range(0, grams.length).filter(i -> grams[i] > 0).boxed()
+				.sorted((a, b) -> Long.compare(grams[b], grams[a])).limit(topNum).mapToInt(Integer::intValue)
+				.toArray();
+
+		for (int gram : top) {
+			char[] chars = new char[gramLength];
+
+			for (int i = gramLength - 1, rest = gram; i >= 0; i--, rest /= unigrams.length)
+				chars[i] = charSet.charAt(rest % unigrams.length);
+
+			res.append(" " + new String(chars) + "=" + grams[gram]);
+		}
+	}
+}
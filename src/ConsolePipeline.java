@@ -0,0 +1,174 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 標準入出力のパイプライン
+ * 行の読み込み（復号）と書き込み（符号化）をそれぞれ専用のスレッドで行い、呼び出したスレッドとリングバッファーで接続します。
+ * 呼び出したスレッドは行の変換に専念でき、入出力の待ち時間と変換が重なります。
+ * 出力は行ごとにはフラッシュされず、書き込む行が途切れた時にのみフラッシュされます。
+ */
+public class ConsolePipeline {
+	/** リングバッファーの容量 */
+	private static final int CAPACITY = 1 << 10;
+	/** 入力の終端を示す要素（同一性で比較） */
+	private static final String END_OF_INPUT = new String();
+	/** 出力の終端を示す要素（同一性で比較） */
+	private static final String END_OF_OUTPUT = new String();
+
+	/** 入力元 */
+	private final BufferedReader reader;
+	/** 出力先 */
+	private final PrintStream out;
+	/** 読み込まれた行 */
+	private final RingBuffer<String> inputLines = new RingBuffer<String>(CAPACITY);
+	/** 書き込む文字列 */
+	private final RingBuffer<String> outputTexts = new RingBuffer<String>(CAPACITY);
+	/** 書き込みのスレッド */
+	private final Thread writerThread;
+	/** 書き込みを依頼した文字列の個数（呼び出したスレッドのみが更新） */
+	private long requestedNum = 0;
+	/** 書き込み終えた文字列の個数 */
+	private volatile long writtenNum = 0;
+	/** 書き込みの完了を待って休止しているスレッド */
+	private final AtomicReference<Thread> drainingThread = new AtomicReference<Thread>();
+	/** 入力が終端に達した場合は真（呼び出したスレッドのみが更新） */
+	private boolean inputEnded = false;
+	/** 読み込みで発生した例外 */
+	private volatile IOException readError = null;
+
+	/**
+	 * 入力元と出力先を基にパイプラインを生成し、読み込みと書き込みのスレッドを開始します。
+	 * 
+	 * @param reader 入力元。
+	 * 以降は読み込みのスレッドのみが使用します。
+	 * @param out 出力先。
+	 * 自動フラッシュが無効なストリームを指定してください。
+	 */
+	public ConsolePipeline(BufferedReader reader, PrintStream out) {
+		this.reader = reader;
+		this.out = out;
+
+		Thread readerThread = new Thread(this::read, "ConsolePipeline-Reader");
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		writerThread = new Thread(this::write, "ConsolePipeline-Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * 次の行を取得します。
+	 * 
+	 * @return 改行文字を含まない行。
+	 * 入力が終端に達した場合はNULLが返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public String nextLine() throws IOException, InterruptedException {
+		if (inputEnded)
+			return null;
+
+		String res = inputLines.take();
+
+		if (res == END_OF_INPUT) {
+			inputEnded = true;
+
+			if (readError != null)
+				throw readError;
+
+			return null;
+		}
+
+		return res;
+	}
+
+	/**
+	 * 文字列の書き込みを依頼します。
+	 * 依頼した順に書き込まれます。
+	 * 
+	 * @param text 文字列。
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public void print(String text) throws InterruptedException {
+		if (text.isEmpty())
+			return;
+
+		outputTexts.put(text);
+		requestedNum++;
+	}
+
+	/**
+	 * 依頼した全ての文字列が書き込まれるまで待機します。
+	 * 以降は出力先へ直接書き込んでも順序が保たれます。
+	 * 
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public void drain() throws InterruptedException {
+		int count = 0;
+
+		while (writtenNum != requestedNum)
+			RingBuffer.idle(count++, drainingThread);
+
+		RingBuffer.endIdle(count, drainingThread);
+	}
+
+	/**
+	 * 依頼した全ての文字列を書き込み、書き込みのスレッドを終了させて出力先をフラッシュします。
+	 * 
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public void close() throws InterruptedException {
+		outputTexts.put(END_OF_OUTPUT);
+		writerThread.join();
+		out.flush();
+	}
+
+	/**
+	 * 読み込みのスレッドとして、入力元の行をリングバッファーへ追加します。
+	 */
+	private void read() {
+		try {
+			try {
+				String line;
+
+				while ((line = reader.readLine()) != null)
+					inputLines.put(line);
+			} catch (IOException e) {
+				readError = e;
+			}
+
+			inputLines.put(END_OF_INPUT);
+		} catch (InterruptedException e) {
+			// 終了する
+		}
+	}
+
+	/**
+	 * 書き込みのスレッドとして、リングバッファーの文字列を出力先へ書き込みます。
+	 * 書き込む文字列が途切れた場合のみ出力先をフラッシュします。
+	 */
+	private void write() {
+		try {
+			while (true) {
+				String text = outputTexts.poll();
+
+				if (text == null) {
+					out.flush();
+					text = outputTexts.take();
+				}
+
+				if (text == END_OF_OUTPUT)
+					break;
+
+				out.print(text);
+				writtenNum++;
+				RingBuffer.wake(drainingThread);
+			}
+		} catch (InterruptedException e) {
+			// 終了する
+		}
+	}
+}
@@ -0,0 +1,581 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+/**
+ * 変換方式
+ * ローターの位相を一つの整数値（位置）で表し、位置と文字セットの番地から変換後の番地を求めます。
+ * 構成に応じて、配線表を順に辿る方式、全ての位置の置換を事前に展開した表を引く方式、
+ * 2番目以降のローターとリフレクターの合成を位置ごとに保持する方式から選択されます。
+ * 位置は{@link ScramblerCursor#getPosition()}と同じく、1番目のローターを最下位の桁とする値です。
+ * 一つの方式を複数のスレッドから同時に使用することはできません。
+ */
+public abstract class ConversionEngine {
+	/** 展開した表に使用できるメモリーの上限（バイト） */
+	public static final long DEFAULT_MEMORY_BUDGET = Math.min(64L << 20, Runtime.getRuntime().maxMemory() / 8);
+	/** 較正に使用する文字数 */
+	private static final int CALIBRATION_LENGTH = 1 << 14;
+	/** 較正の繰り返し回数 */
+	private static final int CALIBRATION_REPEAT_NUM = 5;
+
+	/** 文字セットの長さ */
+	protected final int n;
+	/** リフレクターの配線表 */
+	protected final WiringTable reflectorTable;
+	/** ローターの配線表 */
+	protected final WiringTable[] forwardTables;
+	/** ローターの逆引きの配線表 */
+	protected final WiringTable[] reverseTables;
+	/** 位置の個数 */
+	protected final long positionNum;
+	/** 較正の結果 */
+	private String calibrationReport = "";
+
+	/**
+	 * 配線表を基に変換方式を生成します。
+	 * 
+	 * @param n 文字セットの長さ。
+	 * @param reflectorTable リフレクターの配線表。
+	 * @param forwardTables ローターの配線表。
+	 * @param reverseTables ローターの逆引きの配線表。
+	 * @param positionNum 位置の個数。
+	 */
+	protected ConversionEngine(int n, WiringTable reflectorTable, WiringTable[] forwardTables,
+			WiringTable[] reverseTables, long positionNum) {
+		this.n = n;
+		this.reflectorTable = reflectorTable;
+		this.forwardTables = forwardTables;
+		this.reverseTables = reverseTables;
+		this.positionNum = positionNum;
+	}
+
+	/**
+	 * 方式の名前を取得します。
+	 * 
+	 * @return 名前。
+	 */
+	public abstract String getName();
+
+	/**
+	 * 方式が保持する表のメモリー使用量を取得します。
+	 * 
+	 * @return バイト数。
+	 */
+	public abstract long getMemorySize();
+
+	/**
+	 * 位置における文字セットの番地を変換します。
+	 * 
+	 * @param position 位置。
+	 * 0以上、位置の個数未満の値です。
+	 * @param charSetIndex 変換する文字の番地。
+	 * @return 変換された文字の番地。
+	 * 対応する文字が存在しない場合は-1が返されます。
+	 */
+	public abstract int substitute(long position, int charSetIndex);
+
+	/**
+	 * 位置の個数を取得します。
+	 * 
+	 * @return 文字セットの長さのローターの個数乗。
+	 */
+	public long getPositionNum() {
+		return positionNum;
+	}
+
+	/**
+	 * 選択時の較正の結果を取得します。
+	 * 
+	 * @return 候補ごとの1文字あたりの変換時間の文字列。
+	 */
+	public String getCalibrationReport() {
+		return calibrationReport;
+	}
+
+	/**
+	 * 表と較正の結果を共有し、変換中の状態のみを独自に持つ方式を生成します。
+	 * 較正をやり直さずに、複製したスクランブラーで使用できます。
+	 * 状態を持たない方式は自身が返されます。
+	 * 
+	 * @return 方式。
+	 */
+	ConversionEngine fork() {
+		return this;
+	}
+
+	/**
+	 * 位置を各ローターの位相へ分解します。
+	 * 
+	 * @param position 位置。
+	 * @param offsets 位相の格納先。
+	 */
+	protected void decodePosition(long position, int[] offsets) {
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = (int) (position % n);
+			position /= n;
+		}
+	}
+
+	/**
+	 * 指定の番地以降のローターとリフレクターの配線表を順に辿って変換します。
+	 * 
+	 * @param offsets 全てのローターの位相。
+	 * @param firstRotorIndex 最初に通過するローターの番地。
+	 * @param charSetIndex 変換する文字の番地。
+	 * @return 変換された文字の番地。
+	 * 対応する文字が存在しない場合は-1が返されます。
+	 */
+	protected int walk(int[] offsets, int firstRotorIndex, int charSetIndex) {
+		for (int i = firstRotorIndex; i < forwardTables.length; i++) {
+			if (charSetIndex == -1)
+				return -1;
+
+			int charSetPairIndex = charSetIndex + offsets[i];
+
+			charSetIndex = forwardTables[i].get(charSetPairIndex < n ? charSetPairIndex : charSetPairIndex - n);
+		}
+
+		if (charSetIndex == -1)
+			return -1;
+
+		charSetIndex = reflectorTable.get(charSetIndex);
+
+		for (int i = forwardTables.length - 1; i >= firstRotorIndex; i--) {
+			if (charSetIndex == -1 || (charSetIndex = reverseTables[i].get(charSetIndex)) == -1)
+				return -1;
+
+			charSetIndex -= offsets[i];
+
+			if (charSetIndex < 0)
+				charSetIndex += n;
+		}
+
+		return charSetIndex;
+	}
+
+	/**
+	 * 構成とメモリーの上限に合う方式を生成し、短い較正で最も速い方式を選択します。
+	 * 配線表を順に辿る方式と異なる結果になった方式は選択されません。
+	 * 全ての位置の置換を展開した表は、較正に使用する範囲の位置のみを展開して較正し、選択された場合にのみ全体を展開します。
+	 * キャッシュが指定された場合、展開した表はキャッシュから読み込まれ、新たに展開して選択された表はキャッシュへ保存されます。
+	 * 
+	 * @param charSet 文字セット。
+	 * @param reflectorTable リフレクターの配線表。
+	 * @param forwardTables ローターの配線表。
+	 * @param reverseTables ローターの逆引きの配線表。
+	 * @param memoryBudget 展開した表に使用できるメモリーの上限（バイト）。
+	 * @param tableCache 展開した表のキャッシュ。
+	 * NULLの場合は使用されません。
+	 * @return 選択された方式。
+	 * 位置の個数がlongで表現できない場合はNULLが返されます。
+	 */
+	public static ConversionEngine select(String charSet, WiringTable reflectorTable, WiringTable[] forwardTables,
+			WiringTable[] reverseTables, long memoryBudget, TableCache tableCache) {
+		int n = charSet.length();
+		long positionNum = 1;
+
+		for (int i = 0; i < forwardTables.length; i++) {
+			if (positionNum > Long.MAX_VALUE / n)
+				return null;
+
+			positionNum *= n;
+		}
+
+		// 較正用の文字列と開始位置（展開した表の較正の範囲が一周しないよう、位置の個数が多い場合は末尾を除く）
+
+		Random random = new Random(n * 31L + forwardTables.length);
+		int[] symbols = new int[CALIBRATION_LENGTH];
+		long startPosition = (long) (random.nextDouble() * Math.max(1, positionNum - CALIBRATION_LENGTH + 1));
+
+		for (int i = 0; i < symbols.length; i++)
+			symbols[i] = random.nextInt(n);
+
+		ConversionEngine reference = new Reference(n, reflectorTable, forwardTables, reverseTables, positionNum);
+		ConversionEngine[] candidates = new ConversionEngine[3];
+		int candidateNum = 0;
+
+		candidates[candidateNum++] = reference;
+
+		if (forwardTables.length >= 2)
+			candidates[candidateNum++] = new CompositeCache(n, reflectorTable, forwardTables, reverseTables,
+					positionNum);
+
+		String tableKey = null;
+		FullPeriodTable mappedTable = null, calibrationTable = null;
+
+		if (positionNum <= (Integer.MAX_VALUE - 8) / n / Integer.BYTES
+				&& positionNum * n * Integer.BYTES <= memoryBudget) {
+			WiringTable table = null;
+
+			// キャッシュは起動を速めるためのものであり、読み書きに失敗しても表を展開して継続する
+
+			if (tableCache != null) {
+				tableKey = TableCache.createKey("TABLE", charSet, reflectorTable, forwardTables);
+
+				try {
+					table = tableCache.load(tableKey, positionNum * n);
+				} catch (IOException e) {
+					table = null;
+				}
+			}
+
+			if (table != null) {
+				mappedTable = new FullPeriodTable(n, reflectorTable, forwardTables, reverseTables, positionNum, table);
+				candidates[candidateNum++] = mappedTable;
+			} else if (positionNum <= CALIBRATION_LENGTH) {
+				calibrationTable = new FullPeriodTable(n, reflectorTable, forwardTables, reverseTables, positionNum,
+						0, positionNum);
+				candidates[candidateNum++] = calibrationTable;
+			} else {
+				calibrationTable = new FullPeriodTable(n, reflectorTable, forwardTables, reverseTables, positionNum,
+						startPosition, CALIBRATION_LENGTH);
+				candidates[candidateNum++] = calibrationTable;
+			}
+		}
+
+		int[] expected = run(reference, symbols, startPosition);
+		ConversionEngine res = reference;
+		long bestNanos = Long.MAX_VALUE;
+		StringBuffer report = new StringBuffer();
+
+		for (int i = 0; i < candidateNum; i++) {
+			ConversionEngine candidate = candidates[i];
+			long nanos = Long.MAX_VALUE;
+			boolean consistent = true;
+
+			for (int j = 0; j < CALIBRATION_REPEAT_NUM && consistent; j++) {
+				long start = System.nanoTime();
+				int[] actual = run(candidate, symbols, startPosition);
+
+				nanos = Math.min(nanos, System.nanoTime() - start);
+				consistent = Arrays.equals(actual, expected);
+			}
+
+			report.append(String.format("%s%s: %.2f ns/char%s", report.length() > 0 ? ", " : "", candidate.getName(),
+					(double) nanos / CALIBRATION_LENGTH, consistent ? "" : " (inconsistent)"));
+
+			if (consistent && nanos < bestNanos) {
+				res = candidate;
+				bestNanos = nanos;
+			}
+		}
+
+		// 較正の範囲のみを展開した表が選択された場合は、ここで初めて全ての位置を展開する
+
+		if (res == calibrationTable && positionNum > CALIBRATION_LENGTH)
+			res = new FullPeriodTable(n, reflectorTable, forwardTables, reverseTables, positionNum, 0, positionNum);
+
+		res.calibrationReport = report.toString();
+
+		if (res == mappedTable) {
+			res.calibrationReport += " (mapped from the table cache)";
+		} else if (res instanceof FullPeriodTable && tableCache != null) {
+			try {
+				if (tableCache.store(tableKey, ((FullPeriodTable) res).table))
+					res.calibrationReport += " (stored in the table cache)";
+			} catch (IOException e) {
+				res.calibrationReport += " (failed to store in the table cache)";
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * 構成が等しいかを判定します。
+	 * 変換方式は文字セットの番地のみを扱うため、文字セットの長さと配線表の要素が等しければ同じ結果になります。
+	 * 
+	 * @param charSetLength 文字セットの長さ。
+	 * @param otherReflectorTable リフレクターの配線表。
+	 * @param otherForwardTables ローターの配線表。
+	 * 逆引きの配線表は配線表から一意に決まるため比較されません。
+	 * @return 等しい場合は真。
+	 */
+	boolean hasSameWiring(int charSetLength, WiringTable otherReflectorTable, WiringTable[] otherForwardTables) {
+		if (charSetLength != n || otherForwardTables.length != forwardTables.length
+				|| !hasSameElements(reflectorTable, otherReflectorTable))
+			return false;
+
+		for (int i = 0; i < forwardTables.length; i++)
+			if (!hasSameElements(forwardTables[i], otherForwardTables[i]))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * 2つの配線表の要素が等しいかを判定します。
+	 * 
+	 * @param table 配線表。
+	 * @param otherTable 比較する配線表。
+	 * @return 等しい場合は真。
+	 */
+	private static boolean hasSameElements(WiringTable table, WiringTable otherTable) {
+		if (table == otherTable)
+			return true;
+
+		if (table.length() != otherTable.length())
+			return false;
+
+		for (int i = 0; i < table.length(); i++)
+			if (table.get(i) != otherTable.get(i))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * 連続する位置で文字列を変換します。
+	 * 
+	 * @param engine 方式。
+	 * @param symbols 文字セットの番地の配列。
+	 * @param startPosition 最初の文字の位置。
+	 * @return 変換された番地の配列。
+	 */
+	private static int[] run(ConversionEngine engine, int[] symbols, long startPosition) {
+		int[] res = new int[symbols.length];
+		long position = startPosition;
+
+		for (int i = 0; i < symbols.length; i++) {
+			res[i] = engine.substitute(position, symbols[i]);
+
+			if (++position == engine.positionNum)
+				position = 0;
+		}
+
+		return res;
+	}
+
+	/**
+	 * 配線表を順に辿る方式
+	 * 追加のメモリーを使用せず、全ての構成で使用できます。
+	 */
+	static class Reference extends ConversionEngine {
+		/** 直前の位置の位相 */
+		private final int[] offsets;
+		/** 直前の位置 */
+		private long lastPosition = 0;
+
+		/**
+		 * 配線表を基に方式を生成します。
+		 * 
+		 * @param n 文字セットの長さ。
+		 * @param reflectorTable リフレクターの配線表。
+		 * @param forwardTables ローターの配線表。
+		 * @param reverseTables ローターの逆引きの配線表。
+		 * @param positionNum 位置の個数。
+		 */
+		Reference(int n, WiringTable reflectorTable, WiringTable[] forwardTables, WiringTable[] reverseTables,
+				long positionNum) {
+			super(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			offsets = new int[forwardTables.length];
+		}
+
+		@Override
+		ConversionEngine fork() {
+			ConversionEngine res = new Reference(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			res.calibrationReport = getCalibrationReport();
+
+			return res;
+		}
+
+		@Override
+		public String getName() {
+			return "REFERENCE";
+		}
+
+		@Override
+		public long getMemorySize() {
+			return 0;
+		}
+
+		@Override
+		public int substitute(long position, int charSetIndex) {
+			if (position != lastPosition) {
+				if (position == lastPosition + 1) {
+					// 連続する位置は1番目のローターから桁上がりさせる
+
+					for (int i = 0; i < offsets.length && ++offsets[i] == n; i++)
+						offsets[i] = 0;
+				} else {
+					decodePosition(position, offsets);
+				}
+
+				lastPosition = position;
+			}
+
+			return walk(offsets, 0, charSetIndex);
+		}
+	}
+
+	/**
+	 * 2番目以降のローターとリフレクターを合成した置換を保持する方式
+	 * 合成した置換は1番目のローターが一周するまで変わらないため、各番地を初めて通過した時に求めて再利用します。
+	 */
+	static class CompositeCache extends ConversionEngine {
+		/** 合成した置換 */
+		private final int[] composite;
+		/** 合成した置換の各要素を求めた時の上位の位置（未計算は-1） */
+		private final long[] stamps;
+		/** 上位のローターの位相 */
+		private final int[] offsets;
+		/** 位相を保持している上位の位置 */
+		private long upperPosition = -1;
+
+		/**
+		 * 配線表を基に方式を生成します。
+		 * 
+		 * @param n 文字セットの長さ。
+		 * @param reflectorTable リフレクターの配線表。
+		 * @param forwardTables ローターの配線表。
+		 * @param reverseTables ローターの逆引きの配線表。
+		 * @param positionNum 位置の個数。
+		 */
+		CompositeCache(int n, WiringTable reflectorTable, WiringTable[] forwardTables, WiringTable[] reverseTables,
+				long positionNum) {
+			super(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			composite = new int[n];
+			stamps = new long[n];
+			offsets = new int[forwardTables.length];
+
+			Arrays.fill(stamps, -1);
+		}
+
+		@Override
+		ConversionEngine fork() {
+			ConversionEngine res = new CompositeCache(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			res.calibrationReport = getCalibrationReport();
+
+			return res;
+		}
+
+		@Override
+		public String getName() {
+			return "COMPOSITE";
+		}
+
+		@Override
+		public long getMemorySize() {
+			return (long) n * (Integer.BYTES + Long.BYTES);
+		}
+
+		@Override
+		public int substitute(long position, int charSetIndex) {
+			long currentUpperPosition = position / n;
+			int offset = (int) (position - currentUpperPosition * n);
+
+			if (currentUpperPosition != upperPosition) {
+				decodePosition(position, offsets);
+				upperPosition = currentUpperPosition;
+			}
+
+			int charSetPairIndex = charSetIndex + offset;
+
+			charSetIndex = forwardTables[0].get(charSetPairIndex < n ? charSetPairIndex : charSetPairIndex - n);
+
+			if (charSetIndex == -1)
+				return -1;
+
+			if (stamps[charSetIndex] != upperPosition) {
+				composite[charSetIndex] = walk(offsets, 1, charSetIndex);
+				stamps[charSetIndex] = upperPosition;
+			}
+
+			if ((charSetIndex = composite[charSetIndex]) == -1 || (charSetIndex = reverseTables[0].get(charSetIndex)) == -1)
+				return -1;
+
+			charSetIndex -= offset;
+
+			return charSetIndex >= 0 ? charSetIndex : charSetIndex + n;
+		}
+	}
+
+	/**
+	 * 全ての位置の置換を展開した表を引く方式
+	 * 位置の個数と文字セットの長さの積の要素を使用するため、表がメモリーの上限に収まる構成のみで使用できます。
+	 * 較正のために、連続する一部の位置のみを展開することもできます。
+	 */
+	static class FullPeriodTable extends ConversionEngine {
+		/** 位置ごとの置換を連結した表 */
+		private final WiringTable table;
+		/** 表の先頭の位置 */
+		private final long firstPosition;
+
+		/**
+		 * 配線表を基に連続する位置の置換を並列に展開して方式を生成します。
+		 * 表はヒープを経由せずにヒープ外のバッファーへ直接書き込まれます。
+		 * 
+		 * @param n 文字セットの長さ。
+		 * @param reflectorTable リフレクターの配線表。
+		 * @param forwardTables ローターの配線表。
+		 * @param reverseTables ローターの逆引きの配線表。
+		 * @param positionNum 位置の個数。
+		 * @param firstPosition 展開する先頭の位置。
+		 * @param length 展開する位置の個数。
+		 * 先頭の位置との和が位置の個数以下である必要があります。
+		 */
+		FullPeriodTable(int n, WiringTable reflectorTable, WiringTable[] forwardTables, WiringTable[] reverseTables,
+				long positionNum, long firstPosition, long length) {
+			super(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			ByteBuffer buf = ByteBuffer.allocateDirect((int) (length * n * Integer.BYTES))
+					.order(ByteOrder.nativeOrder());
+			IntBuffer values = buf.asIntBuffer();
+			ThreadLocal<int[]> offsetBufs = ThreadLocal.withInitial(() -> new int[forwardTables.length]);
+
+			LongStream.range(0, length).parallel().forEach(index -> {
+				int[] offsets = offsetBufs.get();
+				int base = (int) (index * n);
+
+				decodePosition(firstPosition + index, offsets);
+
+				for (int i = 0; i < n; i++)
+					values.put(base + i, walk(offsets, 0, i));
+			});
+
+			this.table = WiringTable.wrap(buf, 0, (int) (length * n));
+			this.firstPosition = firstPosition;
+		}
+
+		/**
+		 * 展開済みの表を基に方式を生成します。
+		 * 
+		 * @param n 文字セットの長さ。
+		 * @param reflectorTable リフレクターの配線表。
+		 * @param forwardTables ローターの配線表。
+		 * @param reverseTables ローターの逆引きの配線表。
+		 * @param positionNum 位置の個数。
+		 * @param table 全ての位置の置換を連結した表（メモリーマップされた表など）。
+		 */
+		FullPeriodTable(int n, WiringTable reflectorTable, WiringTable[] forwardTables, WiringTable[] reverseTables,
+				long positionNum, WiringTable table) {
+			super(n, reflectorTable, forwardTables, reverseTables, positionNum);
+
+			this.table = table;
+			this.firstPosition = 0;
+		}
+
+		@Override
+		public String getName() {
+			return "TABLE";
+		}
+
+		@Override
+		public long getMemorySize() {
+			return (long) table.length() * Integer.BYTES;
+		}
+
+		@Override
+		public int substitute(long position, int charSetIndex) {
+			return table.get((int) (position - firstPosition) * n + charSetIndex);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * コーパス読み込み
+ * UTF-8のファイルを区間ごとに読み込み、文字セットの番地の列へ変換します。
+ */
+public class CorpusReader {
+	/** 既定の区間の長さ（バイト） */
+	public static final long DEFAULT_CHUNK_SIZE = 1L << 24;
+	/** 読み込みバッファーの長さ（バイト） */
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+	/** 番地の列の長さ */
+	private static final int SYMBOL_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * 番地の列の受け取り先
+	 */
+	@FunctionalInterface
+	public interface SymbolSink {
+		/**
+		 * 番地の列を受け取ります。
+		 * 配列は再利用されるため、呼び出し後に参照してはいけません。
+		 * 
+		 * @param symbols 文字セットの番地の配列。
+		 * @param length 有効な要素数。
+		 */
+		void accept(int[] symbols, int length);
+	}
+
+	private CorpusReader() {
+		// インスタンス化を拒否
+	}
+
+	/**
+	 * ファイルをUTF-8の文字の境界で区間に分割します。
+	 * 
+	 * @param channel ファイルのチャンネル。
+	 * @param chunkSize 区間のおおよその長さ（バイト）。
+	 * @return 区間の境界の配列。
+	 * 先頭は0、末尾はファイルの長さです。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public static long[] splitChunks(FileChannel channel, long chunkSize) throws IOException {
+		long size = channel.size();
+		int chunkNum = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+		long[] res = new long[chunkNum + 1];
+		ByteBuffer buf = ByteBuffer.allocate(1);
+
+		for (int i = 1; i < chunkNum; i++) {
+			long boundary = Math.max(res[i - 1], i * chunkSize);
+
+			// 継続バイト（10xxxxxx）を飛ばして文字の先頭へ合わせる
+
+			while (boundary < size) {
+				buf.clear();
+				channel.read(buf, boundary);
+
+				if ((buf.get(0) & 0xC0) != 0x80)
+					break;
+
+				boundary++;
+			}
+
+			res[i] = boundary;
+		}
+
+		res[chunkNum] = size;
+
+		return res;
+	}
+
+	/**
+	 * ファイルの区間を読み込み、文字セットに存在する文字のみを番地の列として受け渡します。
+	 * 文字セットに存在しない文字は読み飛ばされます。
+	 * 異なる区間は並列に読み込むことができます。
+	 * 
+	 * @param channel ファイルのチャンネル。
+	 * @param start 区間の始点（バイト）。
+	 * @param end 区間の終点（バイト）。
+	 * @param codec {@link Utility#createCharIndexTable(String)}で生成された表を基にした変換。
+	 * @param sink 番地の列の受け取り先。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public static void readSymbols(FileChannel channel, long start, long end, Utf8SymbolCodec codec, SymbolSink sink)
+			throws IOException {
+		ByteBuffer byteBuf = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		int[] symbols = new int[SYMBOL_BUFFER_SIZE];
+		int symbolNum = 0;
+		long position = start;
+
+		while (true) {
+			boolean endOfInput = position >= end;
+
+			if (!endOfInput) {
+				byteBuf.limit((int) Math.min(byteBuf.capacity(), byteBuf.position() + end - position));
+
+				int readNum = channel.read(byteBuf, position);
+
+				if (readNum < 0) {
+					endOfInput = true;
+				} else {
+					position += readNum;
+				}
+			}
+
+			byteBuf.flip();
+
+			// 番地の配列が一杯になった場合は受け渡してから残りを読み取る
+
+			while (true) {
+				symbolNum = codec.decodeSymbols(byteBuf, symbols, symbolNum, endOfInput);
+
+				if (symbolNum < symbols.length - 1)
+					break;
+
+				sink.accept(symbols, symbolNum);
+				symbolNum = 0;
+			}
+
+			byteBuf.compact();
+
+			if (endOfInput)
+				break;
+		}
+
+		if (symbolNum > 0)
+			sink.accept(symbols, symbolNum);
+	}
+}
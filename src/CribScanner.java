@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * クリブの配置の走査
+ * リフレクターは文字を自身へ変換しないため、クリブの文字と暗号文の文字が同じ位置で一致する配置はあり得ません。
+ * 暗号文を読み込みながら、クリブを配置できる全ての位置を64個ずつビット演算で判定します。
+ */
+public class CribScanner {
+	/** 一度に判定する暗号文の長さ */
+	private static final int WINDOW_SIZE = 1 << 16;
+
+	/**
+	 * 配置の受け取り先
+	 */
+	@FunctionalInterface
+	public interface PlacementSink {
+		/**
+		 * クリブを配置できる位置を受け取ります。
+		 * 同じファイルの配置は位置、クリブの番地の昇順に受け渡され、異なるファイルの配置は並列に受け渡されます。
+		 * 
+		 * @param file ファイルのパス。
+		 * @param cribIndex クリブの番地。
+		 * @param position 文字セットに存在する文字のみを数えた暗号文の位置。
+		 */
+		void accept(Path file, int cribIndex, long position);
+	}
+
+	/** 文字セット */
+	private final String charSet;
+	/** クリブの文字セットの番地（文字セットに存在しない文字は-1） */
+	private final int[][] cribs;
+	/** クリブの最大の長さ */
+	private final int maxCribLength;
+	/** 文字セットの番地からクリブに含まれる文字の通し番号への表（含まれない文字は-1） */
+	private final int[] symbolSlots;
+	/** クリブに含まれる文字の種類数 */
+	private final int slotNum;
+
+	/**
+	 * 文字セットとクリブを基に走査を生成します。
+	 * 
+	 * @param charSet 文字セット。
+	 * @param cribs クリブ。
+	 * 文字セットに存在しない文字はどの文字とも一致しない文字として扱われます。
+	 */
+	public CribScanner(String charSet, String... cribs) {
+		int[] charIndexTable = Utility.createCharIndexTable(charSet);
+
+		this.charSet = charSet;
+		this.cribs = new int[cribs.length][];
+		symbolSlots = new int[charSet.length()];
+
+		Arrays.fill(symbolSlots, -1);
+
+		int maxLength = 1, slotCount = 0;
+
+		for (int i = 0; i < cribs.length; i++) {
+			this.cribs[i] = new int[cribs[i].length()];
+			maxLength = Math.max(maxLength, cribs[i].length());
+
+			for (int j = 0; j < cribs[i].length(); j++) {
+				int symbol = Utility.getCharIndex(charIndexTable, cribs[i].charAt(j));
+
+				this.cribs[i][j] = symbol;
+
+				if (symbol != -1 && symbolSlots[symbol] == -1)
+					symbolSlots[symbol] = slotCount++;
+			}
+		}
+
+		maxCribLength = maxLength;
+		slotNum = slotCount;
+	}
+
+	/**
+	 * ファイルを走査し、クリブを配置できる全ての位置を受け渡します。
+	 * ファイルは並列に、各ファイルの中は先頭から順に走査されます。
+	 * 
+	 * @param files ファイルのパス。
+	 * UTF-8で読み込まれ、文字セットに存在しない文字は読み飛ばされます。
+	 * @param sink 配置の受け取り先。
+	 * スレッドセーフである必要があります。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public void scan(List<Path> files, PlacementSink sink) throws IOException {
+		Utf8SymbolCodec codec = new Utf8SymbolCodec(charSet, Utility.createCharIndexTable(charSet));
+
+		try {
+			files.parallelStream().forEach(file -> {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					Window window = new Window(file, sink);
+
+					CorpusReader.readSymbols(channel, 0, channel.size(), codec, window::append);
+					window.finish();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * 暗号文の区間
+	 * 判定が終わっていない位置の暗号文を保持します。
+	 */
+	private class Window {
+		/** ファイルのパス */
+		private final Path file;
+		/** 配置の受け取り先 */
+		private final PlacementSink sink;
+		/** 暗号文 */
+		private final int[] symbols = new int[WINDOW_SIZE + maxCribLength];
+		/** 暗号文の長さ */
+		private int length = 0;
+		/** 区間の先頭の位置 */
+		private long base = 0;
+		/** クリブに含まれる文字ごとの出現位置のビット集合 */
+		private final long[][] occurrences = new long[slotNum][(symbols.length >> 6) + 2];
+		/** クリブごとの配置できない位置のビット集合 */
+		private final long[][] conflicts = new long[cribs.length][(symbols.length >> 6) + 2];
+		/** クリブごとの配置できる64個の位置のビット集合 */
+		private final long[] legals = new long[cribs.length];
+
+		/**
+		 * ファイルと受け取り先を基に区間を生成します。
+		 * 
+		 * @param file ファイルのパス。
+		 * @param sink 配置の受け取り先。
+		 */
+		Window(Path file, PlacementSink sink) {
+			this.file = file;
+			this.sink = sink;
+		}
+
+		/**
+		 * 暗号文を追加し、区間が満たされるごとに判定します。
+		 * 
+		 * @param newSymbols 文字セットの番地の配列。
+		 * @param newLength 有効な要素数。
+		 */
+		void append(int[] newSymbols, int newLength) {
+			int copied = 0;
+
+			while (copied < newLength) {
+				int copyNum = Math.min(newLength - copied, symbols.length - length);
+
+				System.arraycopy(newSymbols, copied, symbols, length, copyNum);
+				length += copyNum;
+				copied += copyNum;
+
+				if (length == symbols.length)
+					flush(false);
+			}
+		}
+
+		/**
+		 * 残りの暗号文を判定します。
+		 */
+		void finish() {
+			flush(true);
+		}
+
+		/**
+		 * 区間の暗号文を判定します。
+		 * 最後でなければ、最長のクリブの長さから1を引いた分の暗号文を次の区間へ持ち越します。
+		 * 
+		 * @param last 最後の区間の場合は真。
+		 */
+		private void flush(boolean last) {
+			int wordNum = (length >> 6) + 1;
+			int limit = last ? length : length - maxCribLength + 1;
+
+			if (limit <= 0)
+				return;
+
+			for (long[] occurrence : occurrences)
+				Arrays.fill(occurrence, 0, wordNum + 1, 0);
+
+			for (int i = 0; i < length; i++) {
+				int slot = symbolSlots[symbols[i]];
+
+				if (slot != -1)
+					occurrences[slot][i >> 6] |= 1L << i;
+			}
+
+			for (int cribIndex = 0; cribIndex < cribs.length; cribIndex++) {
+				int[] crib = cribs[cribIndex];
+				long[] conflict = conflicts[cribIndex];
+
+				Arrays.fill(conflict, 0, wordNum, 0);
+
+				for (int j = 0; j < crib.length; j++) {
+					if (crib[j] == -1)
+						continue;
+
+					long[] occurrence = occurrences[symbolSlots[crib[j]]];
+					int wordShift = j >> 6, bitShift = j & 63;
+
+					for (int k = 0; k + wordShift < wordNum; k++) {
+						long bits = occurrence[k + wordShift] >>> bitShift;
+
+						if (bitShift != 0)
+							bits |= occurrence[k + wordShift + 1] << (64 - bitShift);
+
+						conflict[k] |= bits;
+					}
+				}
+			}
+
+			// 位置の昇順に受け渡すため、64個の位置ごとに全てのクリブを判定する
+
+			for (int k = 0; k << 6 < limit; k++) {
+				long any = 0;
+
+				for (int cribIndex = 0; cribIndex < cribs.length; cribIndex++) {
+					int cribLimit = Math.min(limit, length - cribs[cribIndex].length + 1);
+					long legal = 0;
+
+					if (k << 6 < cribLimit) {
+						legal = ~conflicts[cribIndex][k];
+
+						if (((k + 1) << 6) > cribLimit)
+							legal &= (1L << (cribLimit & 63)) - 1;
+					}
+
+					legals[cribIndex] = legal;
+					any |= legal;
+				}
+
+				while (any != 0) {
+					int bit = Long.numberOfTrailingZeros(any);
+
+					for (int cribIndex = 0; cribIndex < cribs.length; cribIndex++)
+						if ((legals[cribIndex] >>> bit & 1) != 0)
+							sink.accept(file, cribIndex, base + (k << 6) + bit);
+
+					any &= any - 1;
+				}
+			}
+
+			System.arraycopy(symbols, limit, symbols, 0, length - limit);
+			length -= limit;
+			base += limit;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * 巡回構造の目録
+ * 全ての位置について、Rejewskiの特性（1文字目と4文字目、2文字目と5文字目、3文字目と6文字目の置換の積）の巡回構造を求め、
+ * 巡回構造ごとに整列した目録をファイルへ保存します。
+ * 観測された巡回構造から候補となる位置を二分探索で検索できます。
+ */
+public class CycleCatalog {
+	/** 目録ファイルの識別子 */
+	private static final int CATALOG_FILE_MAGIC = 0x454E4343;
+	/** 目録ファイルの版数 */
+	private static final int CATALOG_FILE_VERSION = 2;
+	/** 目録ファイルのヘッダーの長さ（バイト） */
+	private static final int HEADER_SIZE = Integer.BYTES * 5 + Long.BYTES * 2;
+	/** 特性を構成する置換の積の個数 */
+	private static final int PRODUCT_NUM = 3;
+
+	/** 目録の要素（上位ビットが巡回構造のハッシュ値、下位ビットが位置） */
+	private final LongBuffer records;
+	/** 位置を表すビット数 */
+	private final int positionBits;
+
+	/**
+	 * 目録の要素を基に目録を生成します。
+	 * 
+	 * @param records 目録の要素。
+	 * @param positionBits 位置を表すビット数。
+	 */
+	private CycleCatalog(LongBuffer records, int positionBits) {
+		this.records = records;
+		this.positionBits = positionBits;
+	}
+
+	/**
+	 * カーソルの配線表を基に全ての位置の巡回構造を並列に求め、目録をファイルへ保存します。
+	 * 
+	 * @param cursor カーソル。
+	 * 位相は使用されません。
+	 * @param path 保存先のパス。
+	 * @return エラーコード。
+	 * 正常に保存された場合は0が返されます。
+	 * 位置の個数が多すぎる場合はエラーコード1が返されます。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	public static int build(ScramblerCursor cursor, Path path) throws IOException { // => error code
+		long positionNum = cursor.getPositionNum();
+
+		if (positionNum == -1 || positionNum > Integer.MAX_VALUE - 8)
+			return 1;
+
+		int positionBits = 64 - Long.numberOfLeadingZeros(Math.max(1, positionNum - 1));
+		long hashMask = (1L << (63 - positionBits)) - 1;
+		KeySpace keySpace = new KeySpace(cursor, false);
+		ThreadLocal<KeySpace.KeyCursor> cursors = keySpace.createLocalCursors(cursor);
+		long[] records = new long[(int) positionNum];
+
+		keySpace.keys().parallel().forEach(key -> {
+			ScramblerCursor localCursor = cursors.get().seek(key);
+
+			records[(int) key] = ((getSignatureHash(getCharacteristic(localCursor)) & hashMask) << positionBits) | key;
+		});
+
+		Arrays.parallelSort(records);
+
+		ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+
+		buf.putInt(CATALOG_FILE_MAGIC).putInt(CATALOG_FILE_VERSION).putInt(cursor.getCharSet().length())
+				.putInt(cursor.getRotorNum()).putLong(cursor.getFingerprint()).putInt(positionBits)
+				.putLong(records.length);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long record : records) {
+				if (buf.remaining() < Long.BYTES) {
+					writeFully(channel, buf);
+				}
+
+				buf.putLong(record);
+			}
+
+			writeFully(channel, buf);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * バッファーの内容を全てチャンネルへ書き込みます。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @param buf 書き込むバッファー。
+	 * 書き込み後は空になります。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+
+		while (buf.hasRemaining())
+			channel.write(buf);
+
+		buf.clear();
+	}
+
+	/**
+	 * 目録ファイルを読み取り専用でメモリーマップします。
+	 * 
+	 * @param path 目録ファイルのパス。
+	 * @param cursor 目録を生成したスクランブラーと同じ構成のカーソル。
+	 * @return 目録。
+	 * 識別子や版数、文字セットの長さ、ローターの個数、構成のハッシュ値（{@link ScramblerCursor#getFingerprint()}）が異なる場合はNULLが返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public static CycleCatalog open(Path path, ScramblerCursor cursor) throws IOException {
+		ByteBuffer buf = WiringTable.map(path);
+
+		if (buf.remaining() < HEADER_SIZE || buf.getInt() != CATALOG_FILE_MAGIC
+				|| buf.getInt() != CATALOG_FILE_VERSION || buf.getInt() != cursor.getCharSet().length()
+				|| buf.getInt() != cursor.getRotorNum() || buf.getLong() != cursor.getFingerprint())
+			return null;
+
+		int positionBits = buf.getInt();
+		long recordNum = buf.getLong();
+
+		if (buf.remaining() != recordNum * Long.BYTES)
+			return null;
+
+		return new CycleCatalog(buf.slice().order(buf.order()).asLongBuffer(), positionBits);
+	}
+
+	/**
+	 * 巡回構造に一致する位置を検索します。
+	 * ハッシュ値の衝突による誤った候補はカーソルで巡回構造を再計算して除外されます。
+	 * 
+	 * @param signature 巡回構造の文字列。
+	 * {@link #getSignature(ScramblerCursor)}と同じ形式です。
+	 * @param cursor 目録を生成したスクランブラーと同じ配線表を持つカーソル。
+	 * 位相は変更されます。
+	 * @return 昇順に整列された位置の配列。
+	 * 巡回構造の形式が不正な場合はNULLが返されます。
+	 */
+	public long[] find(String signature, ScramblerCursor cursor) {
+		int[][] characteristic = parseSignature(signature);
+
+		if (characteristic == null)
+			return null;
+
+		String canonicalSignature = formatSignature(characteristic);
+		long hashMask = (1L << (63 - positionBits)) - 1;
+		long key = getSignatureHash(characteristic) & hashMask;
+		long positionMask = (1L << positionBits) - 1;
+		int first = lowerBound(key << positionBits);
+		int last = lowerBound((key + 1) << positionBits);
+
+		return LongStream.range(first, last).map(i -> records.get((int) i) & positionMask).filter(position -> {
+			cursor.setPosition(position);
+
+			return formatSignature(getCharacteristic(cursor)).equals(canonicalSignature);
+		}).toArray();
+	}
+
+	/**
+	 * 目録の要素の個数を取得します。
+	 * 
+	 * @return 要素の個数。
+	 */
+	public int size() {
+		return records.limit();
+	}
+
+	/**
+	 * 指定の値以上となる最初の要素の番地を二分探索します。
+	 * 
+	 * @param value 値。
+	 * @return 要素の番地。
+	 */
+	private int lowerBound(long value) {
+		int low = 0, high = records.limit();
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (records.get(mid) < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * カーソルの現在の位置における巡回構造を文字列として取得します。
+	 * 
+	 * @param cursor カーソル。
+	 * 位相は変更されません。
+	 * @return 巡回構造の文字列。
+	 * 各積の巡回の長さを降順にカンマで、積をスラッシュで区切った文字列です（例: 13,13/10,10,3,3/...）。
+	 */
+	public static String getSignature(ScramblerCursor cursor) {
+		long position = cursor.getPosition();
+		String res = formatSignature(getCharacteristic(cursor));
+
+		cursor.setPosition(position);
+
+		return res;
+	}
+
+	/**
+	 * 巡回構造の文字列を解析します。
+	 * 
+	 * @param signature 巡回構造の文字列。
+	 * @return 積ごとの巡回の長さ（降順）。
+	 * 形式が不正な場合はNULLが返されます。
+	 */
+	private static int[][] parseSignature(String signature) {
+		String[] products = signature.split("/");
+
+		if (products.length != PRODUCT_NUM)
+			return null;
+
+		int[][] res = new int[PRODUCT_NUM][];
+
+		for (int i = 0; i < PRODUCT_NUM; i++) {
+			if (!products[i].matches("^\\d+(,\\d+)*$"))
+				return null;
+
+			res[i] = Arrays.stream(products[i].split(",")).mapToInt(Integer::parseInt)
+					.map(length -> -length).sorted().map(length -> -length).toArray();
+		}
+
+		return res;
+	}
+
+	/**
+	 * 巡回構造を文字列へ整形します。
+	 * 
+	 * @param characteristic 積ごとの巡回の長さ（降順）。
+	 * @return 巡回構造の文字列。
+	 */
+	private static String formatSignature(int[][] characteristic) {
+		StringBuffer res = new StringBuffer();
+
+		for (int i = 0; i < characteristic.length; i++) {
+			if (i > 0)
+				res.append('/');
+
+			for (int j = 0; j < characteristic[i].length; j++) {
+				if (j > 0)
+					res.append(',');
+
+				res.append(characteristic[i][j]);
+			}
+		}
+
+		return res.toString();
+	}
+
+	/**
+	 * 巡回構造のハッシュ値を求めます。
+	 * 
+	 * @param characteristic 積ごとの巡回の長さ（降順）。
+	 * @return ハッシュ値。
+	 */
+	private static long getSignatureHash(int[][] characteristic) {
+		long res = 0;
+
+		for (int[] lengths : characteristic) {
+			for (int length : lengths)
+				res = (res + length) * 0x9E3779B97F4A7C15L;
+
+			res = (res ^ (res >>> 29)) * 0xBF58476D1CE4E5B9L;
+		}
+
+		return res ^ (res >>> 32);
+	}
+
+	/**
+	 * カーソルの現在の位置から6文字分の置換を求め、Rejewskiの特性の巡回構造を求めます。
+	 * 
+	 * @param cursor カーソル。
+	 * 位相は6文字分進みます。
+	 * @return 積ごとの巡回の長さ（降順）。
+	 */
+	private static int[][] getCharacteristic(ScramblerCursor cursor) {
+		int n = cursor.getCharSet().length();
+		int[][] substitutions = new int[PRODUCT_NUM * 2][n];
+
+		for (int[] substitution : substitutions) {
+			cursor.step();
+
+			for (int i = 0; i < n; i++)
+				substitution[i] = cursor.substitute(i);
+		}
+
+		int[][] res = new int[PRODUCT_NUM][];
+		boolean[] visited = new boolean[n];
+
+		for (int i = 0; i < PRODUCT_NUM; i++) {
+			int[] first = substitutions[i];
+			int[] second = substitutions[i + PRODUCT_NUM];
+			int[] lengths = new int[n];
+			int lengthNum = 0;
+
+			Arrays.fill(visited, false);
+
+			for (int start = 0; start < n; start++) {
+				if (visited[start])
+					continue;
+
+				int length = 0;
+
+				for (int current = start; current != -1 && !visited[current]; current = second[first[current]]) {
+					visited[current] = true;
+					length++;
+
+					if (first[current] == -1)
+						break;
+				}
+
+				lengths[lengthNum++] = length;
+			}
+
+			res[i] = Arrays.stream(lengths, 0, lengthNum).map(length -> -length).sorted().map(length -> -length)
+					.toArray();
+		}
+
+		return res;
+	}
+}
@@ -1,6 +1,23 @@
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * ENIGMA
@@ -13,7 +30,13 @@ public class Enigma {
 	/** コマンドの説明文：文字セットの設定 */
 	static final String COMMAND_SCS = "/SCS <STRING> ... Set the character set.";
 	/** コマンドの説明文：スクランブラーの表示 */
-	static final String COMMAND_GSI = "/GSI ... Get all rotor / reflector information.";
+	static final String COMMAND_GSI = "/GSI [INT] [INT] | DIFF ... Get the rotor / reflector information (from the rotor number, for the count of rotors), or only the rotor offsets changed since the last /GSI in this session.";
+	/** コマンドの説明文：変換方式の表示 */
+	static final String COMMAND_ENG = "/ENG ... Get the conversion engine selected for the current scrambler.";
+	/** コマンドの説明文：展開した表のキャッシュの設定 */
+	static final String COMMAND_TCD = "/TCD <FILE> [INT] | OFF ... Enable the on-disk cache of expanded tables in the directory (with the size limit in MiB), or disable it.";
+	/** コマンドの説明文：性能測定 */
+	static final String COMMAND_BENCH = "/BENCH [INT] [INT] ... Measure the throughput, latency and allocation of the current scrambler (for the character count per thread, with the thread count).";
 	/** コマンドの説明文：ローターの個数の設定 */
 	static final String COMMAND_SRN = "/SRN <INT> ... Set the number of rotors.";
 	/** コマンドの説明文：ローター／リフレクターの出力文字セットの設定 */
@@ -24,17 +47,75 @@ public class Enigma {
 	static final String COMMAND_SRO = "/SRO <STRING> ... Set the rotor offset.";
 	/** コマンドの説明文：自動大文字変換機能の設定 */
 	static final String COMMAND_TUC = "/TUC <BOOLEAN> ... Set the function to convert lowercase to uppercase.";
+	/** コマンドの説明文：アクセント記号除去機能の設定 */
+	static final String COMMAND_TAS = "/TAS <BOOLEAN> ... Set the function to strip accents from letters.";
+	/** コマンドの説明文：文字セットに存在しない文字の扱いの設定 */
+	static final String COMMAND_SUR = "/SUR <PASS|DROP|REPLACE> [CHAR] ... Set the rule for characters outside the character set.";
+	/** コマンドの説明文：セッションの切り替え */
+	static final String COMMAND_SES = "/SES [STRING] ... Switch to the named session (a copy of the current scrambler if new), or get the session information.";
+	/** コマンドの説明文：ファイルの文字の出現頻度の表示 */
+	static final String COMMAND_FRQ = "/FRQ <FILE> ... Get the symbol frequency statistics of the file.";
+	/** コマンドの説明文：巡回構造の目録の生成 */
+	static final String COMMAND_CCB = "/CCB <FILE> ... Build the cycle structure catalog of all rotor offsets.";
+	/** コマンドの説明文：巡回構造の目録の検索 */
+	static final String COMMAND_CCF = "/CCF <FILE> <STRING> ... Find the rotor offsets matching the cycle structure (e.g. 13,13/10,10,3,3/...).";
+	/** コマンドの説明文：クリブの配置の走査 */
+	static final String COMMAND_CRB = "/CRB <FILE> <STRING> ... Find every legal crib position in the file / directory (multiple cribs allowed).";
+	/** コマンドの説明文：ファイルの各行の一括変換 */
+	static final String COMMAND_BAT = "/BAT <FILE> <FILE> ... Convert each \"<OFFSET> <STRING>\" line of the file from its own rotor offset.";
+	/** コマンドの説明文：ローターの配線の復元 */
+	static final String COMMAND_RRW = "/RRW <FILE> <INT> ... Recover the wiring of the rotor from the \"<OFFSET> <PLAINTEXT> <CIPHERTEXT>\" lines of the file.";
+	/** コマンドの説明文：鍵の探索 */
+	static final String COMMAND_KSR = "/KSR <FILE> <BOOLEAN> <STRING> [STRING] ... Search the rotor offsets (and the rotor order if TRUE) of the ciphertext (and the crib), resuming from the checkpoint file.";
+	/** コマンドの説明文：複数のプロセスによる鍵の探索 */
+	static final String COMMAND_KSP = "/KSP <FILE> <BOOLEAN> <INT> <STRING> [STRING] ... Search the keys like /KSR with the given number of worker processes.";
+	/** コマンドの説明文：ファイルの変換 */
+	static final String COMMAND_CVF = "/CVF <FILE> <FILE> ... Convert the UTF-8 text file into another file from the current rotor offset.";
+	/** コマンドの説明文：格納ファイルへの暗号化 */
+	static final String COMMAND_WCF = "/WCF <FILE> <FILE> ... Encode the text file into a seekable container file from the current rotor offset.";
+	/** コマンドの説明文：格納ファイルの部分的な復号化 */
+	static final String COMMAND_RCF = "/RCF <FILE> [INT] [INT] ... Decode the characters of the container file from the position (and the count).";
+	/** コマンドの説明文：バックグラウンドのジョブの管理 */
+	static final String COMMAND_JOB = "/JOB <SUBMIT|LIST|CANCEL|PRIORITY|RESULT> ... Run the analysis commands in the background (SUBMIT [INT] </COMMAND ...>, LIST, CANCEL <INT>, PRIORITY <INT> <INT>, RESULT <INT>).";
 	/** コマンドの説明文：プログラムの終了 */
 	static final String COMMAND_END = "/END ... End the program.";
 
+	/** 展開した表のキャッシュの合計の大きさの上限の既定値（MiB） */
+	static final long DEFAULT_TABLE_CACHE_SIZE = 256;
+	/** ジョブとして実行できる解析のコマンド */
+	static final Set<String> ANALYSIS_COMMANDS = Set.of("FRQ", "CCB", "CCF", "CRB", "BAT", "RRW",
+			"KSR", "KSP", "CVF", "WCF", "RCF");
+	/** 性能測定の1スレッドあたりの文字数の既定値 */
+	static final int DEFAULT_BENCHMARK_CHAR_NUM = 1 << 22;
+	/** 待機中のジョブの上限 */
+	static final int JOB_QUEUE_CAPACITY = 64;
+	/** 終了時に実行中のジョブの中断を待つ時間（ミリ秒） */
+	static final long JOB_SHUTDOWN_TIMEOUT = 5000;
+	/** 稼働中のセッションの推定メモリー使用量の上限（バイト） */
+	static final long SESSION_MEMORY_LIMIT = 4L << 20;
+
 	/** スクランブラー */
 	static Scrambler scrambler = new Scrambler(3);
 
+	/** セッションの保管庫（退避したセッションはメモリーに保持） */
+	static SessionPool sessionPool = new SessionPool(SESSION_MEMORY_LIMIT, null);
+
+	/** 現在のセッションの名前 */
+	static String sessionName = "DEFAULT";
+
 	/** 自動大文字変換機能の有効化 */
 	static boolean activeUppercaseConversionFunction = true;
 
+	/** セッションの名前を鍵とする、前回の/GSIにおけるローターの位相（構成の変更で破棄） */
+	static Map<String, String> lastStatusOffsetTexts = new HashMap<String, String>();
+
+	/** バックグラウンドのジョブ（対話的な変換のために1コアを残す） */
+	static JobScheduler jobScheduler = new JobScheduler(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+			JOB_QUEUE_CAPACITY);
+
 	/**
 	 * 主となるプログラムを実行します。
+	 * 標準入出力が端末でない場合（パイプやファイルへのリダイレクト）は、入出力と変換を並行に行うパイプラインで実行します。
 	 * 
 	 * @param args 引数。
 	 * 機能はありません。
@@ -48,11 +129,29 @@ public class Enigma {
 		System.out.println(COMMAND_GCS);
 		System.out.println(COMMAND_SCS);
 		System.out.println(COMMAND_GSI);
+		System.out.println(COMMAND_ENG);
+		System.out.println(COMMAND_TCD);
+		System.out.println(COMMAND_BENCH);
 		System.out.println(COMMAND_SRN);
 		System.out.println(COMMAND_SRP);
 		System.out.println(COMMAND_GRO);
 		System.out.println(COMMAND_SRO);
 		System.out.println(COMMAND_TUC);
+		System.out.println(COMMAND_TAS);
+		System.out.println(COMMAND_SUR);
+		System.out.println(COMMAND_SES);
+		System.out.println(COMMAND_FRQ);
+		System.out.println(COMMAND_CCB);
+		System.out.println(COMMAND_CCF);
+		System.out.println(COMMAND_CRB);
+		System.out.println(COMMAND_BAT);
+		System.out.println(COMMAND_RRW);
+		System.out.println(COMMAND_KSR);
+		System.out.println(COMMAND_KSP);
+		System.out.println(COMMAND_CVF);
+		System.out.println(COMMAND_WCF);
+		System.out.println(COMMAND_RCF);
+		System.out.println(COMMAND_JOB);
 		System.out.println(COMMAND_END);
 
 		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(System.in));
@@ -64,17 +163,30 @@ public class Enigma {
 		scrambler.setRotorCharSetPair(1, "AJDKSIRUXBLHWTMCQGZNPYFVOE");
 		scrambler.setRotorCharSetPair(2, "BDFHJLCPRTXVZNYEIWGAKMUSQO");
 		scrambler.setReflectorCharSetPair("EJMZALYXVBWFCRQUONTSPIKHGD");
+		scrambler.setNormalizationPolicy(
+				scrambler.getNormalizationPolicy().withCaseFolding(activeUppercaseConversionFunction));
+
+		// enigma.tableCacheDirが指定された場合のみ、展開した表をディレクトリーへキャッシュ
+
+		String tableCacheDirectoryName = System.getProperty("enigma.tableCacheDir");
+
+		if (tableCacheDirectoryName != null)
+			setTableCacheDirectory(tableCacheDirectoryName, String.valueOf(DEFAULT_TABLE_CACHE_SIZE));
+
+		if (System.console() == null) {
+			runPipeline(bufferedReader);
+
+			return;
+		}
 
 		try {
 			while (true) {
-				System.out.print("> ");
+				System.out.print(getJobNotices() + "> ");
 
-				text = bufferedReader.readLine();
+				if ((text = bufferedReader.readLine()) == null)
+					break;
 
 				if (text.length() > 0) {
-					if (activeUppercaseConversionFunction)
-						text = text.toUpperCase();
-
 					if (text.charAt(0) != '/') {
 						System.out.println(scrambler.convertText(text));
 					} else {
@@ -88,6 +200,58 @@ public class Enigma {
 		}
 	}
 
+	/**
+	 * 標準入力の行をパイプラインで処理します。
+	 * 読み込みと書き込みは別のスレッドで行われ、標準出力は行ごとにはフラッシュされません。
+	 * 文字列の変換はローターの位相の順序を保つため、呼び出したスレッドで順に行われます。
+	 * コマンドは先行する全ての出力が書き込まれてから実行されます。
+	 * 出力される内容は対話的に実行した場合と同じです。
+	 * 
+	 * @param bufferedReader 標準入力。
+	 */
+	static void runPipeline(BufferedReader bufferedReader) {
+		PrintStream consoleOut = System.out;
+		PrintStream pipelineOut = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+
+		consoleOut.flush();
+		System.setOut(pipelineOut);
+
+		ConsolePipeline pipeline = new ConsolePipeline(bufferedReader, pipelineOut);
+		String lineSeparator = System.lineSeparator();
+
+		try {
+			try {
+				String text;
+
+				while (true) {
+					pipeline.print(getJobNotices() + "> ");
+
+					if ((text = pipeline.nextLine()) == null)
+						break;
+
+					if (text.length() > 0) {
+						if (text.charAt(0) != '/') {
+							pipeline.print(scrambler.convertText(text) + lineSeparator);
+						} else {
+							pipeline.drain();
+
+							if (runCommand(text.substring(1)) == 1)
+								break;
+						}
+					}
+				}
+			} finally {
+				pipeline.close();
+			}
+		} catch (IOException e) {
+			System.err.println(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			System.setOut(consoleOut);
+		}
+	}
+
 	/**
 	 * 文字列を基にコマンドを実行します。
 	 * 
@@ -95,12 +259,14 @@ public class Enigma {
 	 * 空白文字で区切られた引数です。
 	 * クォーテーションやエスケープシーケンスに対応しています。
 	 * コマンドが要求する引数の個数と一致しない場合は説明文が表示されます。
+	 * 自動大文字変換機能が有効な場合はファイルのパスを除く引数が大文字に変換されます。
 	 * @return 終了コード。
 	 * 標準で0が返されます。
 	 * プログラムを終了する場合は1が返されます。
 	 */
 	static int runCommand(String text) {
-		String[] args = Utility.evalArguments(text);
+		String[] args = Utility.evalArguments(activeUppercaseConversionFunction ? text.toUpperCase() : text);
+		String[] rawArgs = Utility.evalArguments(text);
 
 		switch (args[0].toUpperCase()) {
 		case "GCS":
@@ -122,14 +288,47 @@ public class Enigma {
 			return 0;
 
 		case "GSI":
-			if (args.length == 1) {
-				getScramblerInformation();
+			if (args.length == 2 && args[1].equalsIgnoreCase("DIFF")) {
+				getScramblerOffsetDifference();
+			} else if (args.length <= 3) {
+				getScramblerInformation(args.length >= 2 ? args[1] : "1",
+						args.length == 3 ? args[2] : String.valueOf(Integer.MAX_VALUE));
 			} else {
 				System.out.println(COMMAND_GSI);
 			}
 
 			return 0;
 
+		case "ENG":
+			if (args.length == 1) {
+				getEngineInformation();
+			} else {
+				System.out.println(COMMAND_ENG);
+			}
+
+			return 0;
+
+		case "TCD":
+			if (args.length == 2 && args[1].equals("OFF")) {
+				disableTableCache();
+			} else if (args.length == 2 || args.length == 3) {
+				setTableCacheDirectory(rawArgs[1], args.length == 3 ? args[2] : String.valueOf(DEFAULT_TABLE_CACHE_SIZE));
+			} else {
+				System.out.println(COMMAND_TCD);
+			}
+
+			return 0;
+
+		case "BENCH":
+			if (args.length <= 3) {
+				runBenchmark(args.length >= 2 ? args[1] : String.valueOf(DEFAULT_BENCHMARK_CHAR_NUM),
+						args.length == 3 ? args[2] : String.valueOf(Runtime.getRuntime().availableProcessors()));
+			} else {
+				System.out.println(COMMAND_BENCH);
+			}
+
+			return 0;
+
 		case "SRN":
 			if (args.length == 2) {
 				setRotorNumber(args[1]);
@@ -175,8 +374,62 @@ public class Enigma {
 
 			return 0;
 
+		case "TAS":
+			if (args.length == 2) {
+				setAccentStrippingFunction(args[1]);
+			} else {
+				System.out.println(COMMAND_TAS);
+			}
+
+			return 0;
+
+		case "SUR":
+			if (args.length == 2 || args.length == 3) {
+				setUnknownCharacterRule(args[1], args.length == 3 ? args[2] : null);
+			} else {
+				System.out.println(COMMAND_SUR);
+			}
+
+			return 0;
+
+		case "SES":
+			if (args.length == 1) {
+				getSessionInformation();
+			} else if (args.length == 2) {
+				switchSession(args[1]);
+			} else {
+				System.out.println(COMMAND_SES);
+			}
+
+			return 0;
+
+		case "FRQ":
+		case "CCB":
+		case "CCF":
+		case "CRB":
+		case "BAT":
+		case "RRW":
+		case "KSR":
+		case "KSP":
+		case "CVF":
+		case "WCF":
+		case "RCF":
+			runAnalysisCommand(args, rawArgs, scrambler, System.out);
+
+			return 0;
+
+		case "JOB":
+			if (args.length >= 2) {
+				runJobCommand(args, text);
+			} else {
+				System.out.println(COMMAND_JOB);
+			}
+
+			return 0;
+
 		case "END":
 			if (args.length == 1) {
+				jobScheduler.shutdown(JOB_SHUTDOWN_TIMEOUT);
 				System.out.println("Good bye.");
 			} else {
 				System.out.println(COMMAND_END);
@@ -190,6 +443,275 @@ public class Enigma {
 		}
 	}
 
+	/**
+	 * 解析のコマンドを実行します。
+	 * 対話的に実行される場合と、ジョブとしてバックグラウンドで実行される場合があります。
+	 * 
+	 * @param args 評価されたコマンドの引数（自動大文字変換機能が有効な場合は大文字へ変換済み）。
+	 * @param rawArgs 評価されたコマンドの引数（変換前）。
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @return コマンドが解析のコマンドの場合は真。
+	 */
+	static boolean runAnalysisCommand(String[] args, String[] rawArgs, Scrambler scrambler, PrintStream out) {
+		switch (args[0].toUpperCase()) {
+		case "FRQ":
+			if (args.length == 2) {
+				getFrequencyStatistics(scrambler, out, rawArgs[1]);
+			} else {
+				out.println(COMMAND_FRQ);
+			}
+
+			break;
+
+		case "CCB":
+			if (args.length == 2) {
+				buildCycleCatalog(scrambler, out, rawArgs[1]);
+			} else {
+				out.println(COMMAND_CCB);
+			}
+
+			break;
+
+		case "CCF":
+			if (args.length == 3) {
+				findCycleCatalog(scrambler, out, rawArgs[1], args[2]);
+			} else {
+				out.println(COMMAND_CCF);
+			}
+
+			break;
+
+		case "CRB":
+			if (args.length >= 3) {
+				scanCribPlacements(scrambler, out, rawArgs[1], Arrays.copyOfRange(args, 2, args.length));
+			} else {
+				out.println(COMMAND_CRB);
+			}
+
+			break;
+
+		case "BAT":
+			if (args.length == 3) {
+				convertBatchFile(scrambler, out, rawArgs[1], rawArgs[2]);
+			} else {
+				out.println(COMMAND_BAT);
+			}
+
+			break;
+
+		case "RRW":
+			if (args.length == 3) {
+				recoverRotorWiring(scrambler, out, rawArgs[1], args[2]);
+			} else {
+				out.println(COMMAND_RRW);
+			}
+
+			break;
+
+		case "KSR":
+			if (args.length == 4 || args.length == 5) {
+				searchKey(scrambler, out, rawArgs[1], args[2], args[3], args.length == 5 ? args[4] : null);
+			} else {
+				out.println(COMMAND_KSR);
+			}
+
+			break;
+
+		case "KSP":
+			if (args.length == 5 || args.length == 6) {
+				searchKeyWithProcesses(scrambler, out, rawArgs[1], args[2], args[3], args[4], args.length == 6 ? args[5] : null);
+			} else {
+				out.println(COMMAND_KSP);
+			}
+
+			break;
+
+		case "CVF":
+			if (args.length == 3) {
+				convertFile(scrambler, out, rawArgs[1], rawArgs[2]);
+			} else {
+				out.println(COMMAND_CVF);
+			}
+
+			break;
+
+		case "WCF":
+			if (args.length == 3) {
+				writeContainerFile(scrambler, out, rawArgs[1], rawArgs[2]);
+			} else {
+				out.println(COMMAND_WCF);
+			}
+
+			break;
+
+		case "RCF":
+			if (args.length >= 2 && args.length <= 4) {
+				readContainerFile(out, rawArgs[1], args.length >= 3 ? args[2] : "0",
+						args.length == 4 ? args[3] : String.valueOf(Integer.MAX_VALUE));
+			} else {
+				out.println(COMMAND_RCF);
+			}
+
+			break;
+
+		default:
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * バックグラウンドのジョブを投入、一覧表示、取り消し、優先度の変更、出力の表示します。
+	 * 投入されたジョブは投入時のスクランブラーの複製を使用するため、以降の対話的な変換や設定の変更の影響を受けません。
+	 * 
+	 * @param args 評価されたコマンドの引数。
+	 * 2番目の要素が操作（SUBMIT、LIST、CANCEL、PRIORITY、RESULT）です。
+	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
+	 * @param text コマンドの文字列。
+	 * 投入するコマンドは最初の"/"以降の文字列です。
+	 */
+	static void runJobCommand(String[] args, String text) {
+		switch (args[1].toUpperCase()) {
+		case "SUBMIT":
+			submitJob(text);
+			break;
+
+		case "LIST":
+			if (args.length != 2) {
+				System.out.println(COMMAND_JOB);
+				break;
+			}
+
+			List<JobScheduler.Job> jobs = jobScheduler.getJobs();
+
+			for (JobScheduler.Job job : jobs)
+				System.out.println(String.format("#%d %-9s priority %d, %d ms, %s", job.getId(), job.getStateName(),
+						job.getPriority(), job.getElapsedMillis(), job.getDescription()));
+
+			System.out.println(jobs.size() + " job(s).");
+			break;
+
+		case "CANCEL":
+			if (args.length != 3 || !args[2].matches("^\\d{1,9}$")) {
+				System.out.println(COMMAND_JOB);
+				break;
+			}
+
+			switch (jobScheduler.cancel(Integer.parseInt(args[2]))) {
+			case 0:
+				System.out.println("Job " + args[2] + " is being cancelled.");
+				break;
+
+			case 1:
+				System.out.println("The job does not exist.");
+				break;
+
+			default:
+				System.out.println("The job has already finished.");
+			}
+
+			break;
+
+		case "PRIORITY":
+			if (args.length != 4 || !args[2].matches("^\\d{1,9}$") || !args[3].matches("^-?\\d{1,9}$")) {
+				System.out.println(COMMAND_JOB);
+				break;
+			}
+
+			switch (jobScheduler.setPriority(Integer.parseInt(args[2]), Integer.parseInt(args[3]))) {
+			case 0:
+				break;
+
+			case 1:
+				System.out.println("The job does not exist.");
+				break;
+
+			default:
+				System.out.println("Only a queued job can be reprioritized.");
+			}
+
+			break;
+
+		case "RESULT":
+			if (args.length != 3 || !args[2].matches("^\\d{1,9}$")) {
+				System.out.println(COMMAND_JOB);
+				break;
+			}
+
+			JobScheduler.Job job = jobScheduler.getJob(Integer.parseInt(args[2]));
+
+			if (job == null) {
+				System.out.println("The job does not exist.");
+			} else {
+				System.out.print(job.getOutput());
+				System.out.println("#" + job.getId() + " " + job.getStateName() + ", " + job.getElapsedMillis() + " ms");
+			}
+
+			break;
+
+		default:
+			System.out.println(COMMAND_JOB);
+		}
+	}
+
+	/**
+	 * 解析のコマンドを現在のスクランブラーの複製で実行するジョブとして投入します。
+	 * 
+	 * @param text "JOB SUBMIT [優先度] /コマンド ..."形式の文字列。
+	 * 優先度は省略した場合は0です。
+	 * 解析のコマンド以外が指定された場合や待機中のジョブが上限に達している場合はエラー文が出力されます。
+	 */
+	static void submitJob(String text) {
+		int commandIndex = text.indexOf('/');
+		String[] headArgs = Utility.evalArguments(commandIndex != -1 ? text.substring(0, commandIndex) : text);
+
+		if (commandIndex == -1 || headArgs.length > 3 || (headArgs.length == 3 && !headArgs[2].matches("^-?\\d{1,9}$"))) {
+			System.out.println(COMMAND_JOB);
+
+			return;
+		}
+
+		String commandText = text.substring(commandIndex + 1);
+		String[] args = Utility.evalArguments(activeUppercaseConversionFunction ? commandText.toUpperCase() : commandText);
+		String[] rawArgs = Utility.evalArguments(commandText);
+
+		if (args.length == 0 || !ANALYSIS_COMMANDS.contains(args[0].toUpperCase())) {
+			System.out.println("Only the analysis commands (" + String.join(", ", ANALYSIS_COMMANDS.stream().sorted()
+					.map(name -> "/" + name).collect(Collectors.toList())) + ") can run as a job.");
+
+			return;
+		}
+
+		Scrambler snapshot = scrambler.copy();
+		JobScheduler.Job job = jobScheduler.submit("/" + commandText,
+				headArgs.length == 3 ? Integer.parseInt(headArgs[2]) : 0,
+				out -> runAnalysisCommand(args, rawArgs, snapshot, out));
+
+		if (job == null) {
+			System.out.println("Too many jobs are waiting.");
+		} else {
+			System.out.println("Job " + job.getId() + " submitted.");
+		}
+	}
+
+	/**
+	 * 前回の確認以降に終了したジョブの通知を取得します。
+	 * 
+	 * @return 1件につき1行の通知。
+	 * 終了したジョブがない場合は空の文字列が返されます。
+	 */
+	static String getJobNotices() {
+		StringBuffer res = new StringBuffer();
+
+		for (JobScheduler.Job job : jobScheduler.pollFinishedJobs())
+			res.append("[Job " + job.getId() + " " + job.getStateName() + "] " + job.getDescription()
+					+ System.lineSeparator());
+
+		return res.toString();
+	}
+
 	/**
 	 * 文字セットを表示します。
 	 */
@@ -205,21 +727,173 @@ public class Enigma {
 	 * 条件に合致しない文字列が指定された場合はエラー文が出力されます。
 	 */
 	static void setCharacterSet(String charSet) {
-		if (scrambler.setCharSet(charSet) != 0)
+		if (scrambler.setCharSet(charSet) != 0) {
 			System.out.println(
 					"The character set must be a multiple of 2 in length and contain no duplicate characters.");
+		} else {
+			lastStatusOffsetTexts.remove(sessionName);
+		}
+	}
+
+	/**
+	 * 指定の範囲のローター（とリフレクター）の状況を視覚的な文字列として標準出力へ直接書き込みます。
+	 * リフレクターは範囲が最後のローターまでを含む場合に表示されます。
+	 * 一部のローターのみを表示した場合は、続きを表示するコマンドが表示されます。
+	 * 
+	 * @param fromBuf 最初のローターの番号（1以上）。
+	 * @param countBuf 表示するローターの個数。
+	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
+	 */
+	static void getScramblerInformation(String fromBuf, String countBuf) {
+		if (!fromBuf.matches("^[1-9]\\d{0,8}$") || !countBuf.matches("^[1-9]\\d{0,9}$")
+				|| Long.parseLong(countBuf) > Integer.MAX_VALUE) {
+			System.out.println("The rotor number and the count must be positive numbers.");
+
+			return;
+		}
+
+		int rotorNum = scrambler.getRotorNum();
+		int fromRotorIndex = Math.min(Integer.parseInt(fromBuf) - 1, rotorNum);
+		int toRotorIndex = (int) Math.min((long) fromRotorIndex + Integer.parseInt(countBuf), rotorNum);
+
+		try {
+			scrambler.writeStatus(System.out, fromRotorIndex, toRotorIndex, toRotorIndex == rotorNum);
+		} catch (IOException e) {
+			// 標準出力への書き込みは例外を送出しない
+		}
+
+		System.out.println();
+		lastStatusOffsetTexts.put(sessionName, scrambler.getRotorsOffset());
+
+		if (fromRotorIndex > 0 || toRotorIndex < rotorNum)
+			System.out.println("Rotors " + (fromRotorIndex + 1) + "-" + toRotorIndex + " of " + rotorNum + "."
+					+ (toRotorIndex < rotorNum ? " Next: /GSI " + (toRotorIndex + 1) + " " + countBuf : ""));
+	}
+
+	/**
+	 * 現在のセッションで前回の/GSIから位相が変化したローターのみを1行ずつ表示します。
+	 * 前回の/GSIが実行されていない場合や、その後に文字セットやローターの個数が変更された場合は、全てのローターが表示されます。
+	 */
+	static void getScramblerOffsetDifference() {
+		String offsetText = scrambler.getRotorsOffset();
+		String lastStatusOffsetText = lastStatusOffsetTexts.get(sessionName);
+		int changedNum = 0;
+
+		for (int i = 0; i < offsetText.length(); i++) {
+			boolean existed = lastStatusOffsetText != null && i < lastStatusOffsetText.length();
+
+			if (existed && lastStatusOffsetText.charAt(i) == offsetText.charAt(i))
+				continue;
+
+			System.out.println("Rotor " + (i + 1) + ": " + (existed ? lastStatusOffsetText.charAt(i) : "-") + " -> "
+					+ offsetText.charAt(i));
+			changedNum++;
+		}
+
+		System.out.println(changedNum + " of " + offsetText.length() + " rotor offset(s) changed.");
+		lastStatusOffsetTexts.put(sessionName, offsetText);
+	}
+
+	/**
+	 * 現在の構成で選択された変換方式と較正の結果を表示します。
+	 * 構成の変更後に初めて実行された場合は、この時点で変換方式が選択されます。
+	 */
+	static void getEngineInformation() {
+		ConversionEngine engine = scrambler.getEngine();
+
+		if (engine == null) {
+			System.out.println("Engine: ROTOR (the number of rotor offsets exceeds the range of long)");
+
+			return;
+		}
+
+		System.out.println("Engine: " + engine.getName() + " (" + engine.getMemorySize() + " bytes)");
+		System.out.println("Rotor offsets: " + engine.getPositionNum());
+		System.out.println("Calibration: " + engine.getCalibrationReport());
+
+		TableCache tableCache = scrambler.getTableCache();
+
+		System.out.println("Table cache: " + (tableCache != null
+				? tableCache.getDirectory() + " (" + (tableCache.getSizeLimit() >> 20) + " MiB)"
+				: "disabled"));
+	}
+
+	/**
+	 * 展開した表のキャッシュの保存先と上限を設定します。
+	 * 次の変換時に変換方式が選択し直されます。
+	 * 
+	 * @param directoryName 保存先のディレクトリーのパス。
+	 * 不正なパスが指定された場合はエラー文が出力されます。
+	 * @param sizeBuf 合計の大きさの上限（MiB）。
+	 * 0以上の数値以外が指定された場合はエラー文が出力されます。
+	 */
+	static void setTableCacheDirectory(String directoryName, String sizeBuf) {
+		if (!sizeBuf.matches("^\\d{1,9}$")) {
+			System.out.println("The size limit must be a non-negative number of MiB.");
+
+			return;
+		}
+
+		try {
+			scrambler.setTableCache(new TableCache(Path.of(directoryName), Long.parseLong(sizeBuf) << 20));
+		} catch (InvalidPathException e) {
+			System.out.println("The directory path is invalid.");
+		}
 	}
 
 	/**
-	 * スクランブラーの状況を視覚的な文字列として表示します。
+	 * 展開した表のキャッシュを無効化します。
+	 * 次の変換時に変換方式が選択し直されます。
 	 */
-	static void getScramblerInformation() {
-		System.out.println(scrambler.getStatus());
+	static void disableTableCache() {
+		scrambler.setTableCache(null);
+	}
+
+	/**
+	 * 現在の構成と位相の複製でスクランブラーの性能を測定し、1スレッドと複数のスレッドで1文字ずつの変換と文字列の変換の結果を表示します。
+	 * スクランブラー自身の位相は変更されません。
+	 * 
+	 * @param charNumBuf 1スレッドあたりの測定の文字数。
+	 * @param threadNumBuf スレッドの個数。
+	 * 正の数値以外が指定された場合はエラー文が出力されます。
+	 */
+	static void runBenchmark(String charNumBuf, String threadNumBuf) {
+		if (!charNumBuf.matches("^[1-9]\\d{0,8}$") || !threadNumBuf.matches("^[1-9]\\d{0,3}$")) {
+			System.out.println("The character count and the thread count must be positive numbers.");
+
+			return;
+		}
+
+		int threadNum = Integer.parseInt(threadNumBuf);
+		String offsetText = scrambler.getRotorsOffset();
+		ScramblerBenchmark benchmark = new ScramblerBenchmark(scrambler, Integer.parseInt(charNumBuf));
+		ConversionEngine engine = scrambler.getEngine();
+
+		System.out.println("Benchmark of " + benchmark.getCharNum() + " character(s) per thread from the rotor offset "
+				+ offsetText + " (engine: " + (engine != null ? engine.getName() : "ROTOR") + ", "
+				+ Runtime.getRuntime().availableProcessors() + " processor(s), " + System.getProperty("java.vm.name")
+				+ " " + System.getProperty("java.vm.version") + ")");
+
+		for (int currentThreadNum : threadNum > 1 ? new int[] { 1, threadNum } : new int[] { 1 }) {
+			for (int mode : new int[] { ScramblerBenchmark.MODE_CHAR, ScramblerBenchmark.MODE_TEXT }) {
+				ScramblerBenchmark.Result result = benchmark.run(mode, currentThreadNum);
+
+				if (result == null) {
+					System.out.println("The benchmark was interrupted.");
+
+					return;
+				}
+
+				System.out.println(result);
+			}
+		}
+
+		System.out.println("The rotor offset remains " + scrambler.getRotorsOffset() + ".");
 	}
 
 	/**
 	 * ローターの個数を（再）設定します。
-	 * このメソッドが実行されると全てのローターとリフレクターが初期化されます。
+	 * 既存のローターとリフレクターは維持され、増えたローターのみが生成されます。
 	 * 
 	 * @param rotorNum ローターの個数。
 	 * 文字列から整数値に変換されます。
@@ -227,8 +901,11 @@ public class Enigma {
 	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
 	 */
 	static void setRotorNumber(String rotorNum) {
-		if (!rotorNum.matches("^\\d+$") || scrambler.setRotorNum(Integer.parseInt(rotorNum)) != 0)
+		if (!rotorNum.matches("^\\d+$") || scrambler.setRotorNum(Integer.parseInt(rotorNum)) != 0) {
 			System.out.println("The number of rotors must be a positive integer.");
+		} else {
+			lastStatusOffsetTexts.remove(sessionName);
+		}
 	}
 
 	/**
@@ -308,6 +985,7 @@ public class Enigma {
 	/**
 	 * 自動大文字変換機能を設定します。
 	 * これが有効化されると小文字の英字は大文字に変換されます。
+	 * 大文字への変換はスクランブラーの正規化方針として、暗号化もしくは復号化と同時に行われます。
 	 * 
 	 * @param isActive 有効化は真を示す文字列、無効化は偽を示す文字列。
 	 * 文字列を基に真偽を判定します。
@@ -320,6 +998,530 @@ public class Enigma {
 			activeUppercaseConversionFunction = false;
 		} else {
 			System.out.println("The boolean value must be \"TRUE\" or \"FALSE\".");
+
+			return;
+		}
+
+		scrambler.setNormalizationPolicy(
+				scrambler.getNormalizationPolicy().withCaseFolding(activeUppercaseConversionFunction));
+	}
+
+	/**
+	 * アクセント記号除去機能を設定します。
+	 * これが有効化されるとアクセント記号付きの文字（例: É、Ü）はアクセント記号を除いた文字に変換されます。
+	 * 
+	 * @param isActive 有効化は真を示す文字列、無効化は偽を示す文字列。
+	 * 文字列を基に真偽を判定します。
+	 * 条件に合致しない値（"TRUE"や"FALSE"以外の文字列）が指定された場合はエラー文が出力されます。
+	 */
+	static void setAccentStrippingFunction(String isActive) {
+		if (isActive.toUpperCase().matches("^TRUE|T$")) {
+			scrambler.setNormalizationPolicy(scrambler.getNormalizationPolicy().withAccentStripping(true));
+		} else if (isActive.toUpperCase().matches("^FALSE|F$")) {
+			scrambler.setNormalizationPolicy(scrambler.getNormalizationPolicy().withAccentStripping(false));
+		} else {
+			System.out.println("The boolean value must be \"TRUE\" or \"FALSE\".");
+		}
+	}
+
+	/**
+	 * 正規化後に文字セットに存在しない文字の扱いを設定します。
+	 * 
+	 * @param rule そのまま出力する場合は"PASS"、削除する場合は"DROP"、置換する場合は"REPLACE"。
+	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
+	 * @param replacement 置換後の1文字。
+	 * 置換する場合のみ必要です。
+	 * 文字セットに存在する文字の場合は置換後に暗号化もしくは復号化されます。
+	 */
+	static void setUnknownCharacterRule(String rule, String replacement) {
+		NormalizationPolicy policy = scrambler.getNormalizationPolicy();
+
+		switch (rule.toUpperCase()) {
+		case "PASS":
+			scrambler.setNormalizationPolicy(policy.withUnknownRule(NormalizationPolicy.RULE_PASS, '\0'));
+			break;
+
+		case "DROP":
+			scrambler.setNormalizationPolicy(policy.withUnknownRule(NormalizationPolicy.RULE_DROP, '\0'));
+			break;
+
+		case "REPLACE":
+			if (replacement == null || replacement.length() != 1) {
+				System.out.println("The replacement must be a single character.");
+			} else {
+				scrambler.setNormalizationPolicy(
+						policy.withUnknownRule(NormalizationPolicy.RULE_REPLACE, replacement.charAt(0)));
+			}
+
+			break;
+
+		default:
+			System.out.println("The rule must be \"PASS\", \"DROP\" or \"REPLACE\".");
+		}
+	}
+
+	/**
+	 * 現在のセッションを保管庫へ戻し、指定の名前のセッションへ切り替えます。
+	 * 存在しないセッションは現在のスクランブラーの複製として作成されます。
+	 * 保管庫は使用されていないセッションを圧縮した状態へ退避し、切り替え時に復元します。
+	 * 
+	 * @param name セッションの名前。
+	 */
+	static void switchSession(String name) {
+		try {
+			sessionPool.put(sessionName, scrambler);
+
+			Scrambler next = sessionPool.get(name);
+			boolean created = next == null;
+
+			if (created) {
+				next = scrambler.copy();
+				sessionPool.put(name, next);
+			}
+
+			scrambler = next;
+			sessionName = name;
+
+			System.out.println("Session " + name + (created ? " created" : " resumed") + " at the rotor offset "
+					+ scrambler.getRotorsOffset() + ".");
+		} catch (IOException e) {
+			System.out.println("The session could not be stored or restored.");
+		}
+	}
+
+	/**
+	 * 現在のセッションの名前と保管庫の状況を表示します。
+	 */
+	static void getSessionInformation() {
+		System.out.println("Session: " + sessionName);
+		System.out.println("Live sessions: " + sessionPool.getLiveSessionNum() + " ("
+				+ sessionPool.getLiveMemorySize() + " bytes estimated)");
+		System.out.println("Stored sessions: " + sessionPool.getStoredSessionNum());
+		System.out.println("Wiring templates: " + sessionPool.getTemplateNum());
+	}
+
+	/**
+	 * ファイルに含まれる文字セットの文字の出現頻度、一致指数、2文字組／3文字組の出現回数を表示します。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName ファイルのパス。
+	 * UTF-8で読み込まれます。
+	 * 読み込めない場合はエラー文が出力されます。
+	 */
+	static void getFrequencyStatistics(Scrambler scrambler, PrintStream out, String fileName) {
+		try {
+			out.println(CipherStatistics.analyze(Path.of(fileName), scrambler.getCharSet()).getSummary(10));
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read.");
+		}
+	}
+
+	/**
+	 * 全てのローターの位相について巡回構造を求め、目録をファイルへ保存します。
+	 * 現在の位相における巡回構造も表示されます。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName 保存先のパス。
+	 * 書き込めない場合や位相の組み合わせが多すぎる場合はエラー文が出力されます。
+	 */
+	static void buildCycleCatalog(Scrambler scrambler, PrintStream out, String fileName) {
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		try {
+			if (CycleCatalog.build(cursor, Path.of(fileName)) != 0) {
+				out.println("There are too many rotor offsets to catalog.");
+			} else {
+				out.println(CycleCatalog.getSignature(cursor));
+			}
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be written.");
+		}
+	}
+
+	/**
+	 * 巡回構造の目録から、巡回構造に一致するローターの位相を表示します。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName 目録ファイルのパス。
+	 * 読み込めない場合や現在のスクランブラーと構成が異なる場合はエラー文が出力されます。
+	 * @param signature 巡回構造の文字列。
+	 * 各積の巡回の長さをカンマで、3つの積をスラッシュで区切った文字列です。
+	 * 形式が不正な場合はエラー文が出力されます。
+	 */
+	static void findCycleCatalog(Scrambler scrambler, PrintStream out, String fileName, String signature) {
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		try {
+			CycleCatalog catalog = CycleCatalog.open(Path.of(fileName), cursor);
+
+			if (catalog == null) {
+				out.println("The catalog does not match the current scrambler.");
+
+				return;
+			}
+
+			long[] positions = catalog.find(signature, cursor);
+
+			if (positions == null) {
+				out.println("The cycle structure must be three lists of cycle lengths separated by \"/\".");
+
+				return;
+			}
+
+			for (long position : positions) {
+				cursor.setPosition(position);
+				out.println(cursor.getOffsetText());
+			}
+
+			out.println(positions.length + " candidate(s).");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read.");
+		}
+	}
+
+	/**
+	 * ファイル（ディレクトリーの場合は直下の全てのファイル）を走査し、クリブを配置できる全ての位置を表示します。
+	 * 位置は文字セットに存在する文字のみを数えた、0から始まる値です。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName ファイルもしくはディレクトリーのパス。
+	 * 読み込めない場合はエラー文が出力されます。
+	 * @param cribs クリブ。
+	 * 空の文字列が含まれる場合はエラー文が出力されます。
+	 */
+	static void scanCribPlacements(Scrambler scrambler, PrintStream out, String fileName, String[] cribs) {
+		for (String crib : cribs) {
+			if (crib.isEmpty()) {
+				out.println("The crib must not be empty.");
+
+				return;
+			}
+		}
+
+		try {
+			Path path = Path.of(fileName);
+			List<Path> files;
+
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> stream = Files.list(path)) {
+					files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+			} else {
+				files = List.of(path);
+			}
+
+			CribScanner scanner = new CribScanner(scrambler.getCharSet(), cribs);
+			long[] placementNum = new long[1];
+
+			// 配置を保持せずに表示するため、ファイルは1つずつ順に走査する
+
+			for (Path file : files) {
+				scanner.scan(List.of(file), (scannedFile, cribIndex, position) -> {
+					out.println(scannedFile + ":" + position + " " + cribs[cribIndex]);
+					placementNum[0]++;
+				});
+			}
+
+			out.println(placementNum[0] + " placement(s).");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read.");
+		}
+	}
+
+	/**
+	 * ファイルの各行の文字列をそれぞれの位相から並列に変換し、入力と同じ順序でファイルへ書き込みます。
+	 * 現在のローターの位相は変更されません。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param inputFileName 入力ファイルのパス。
+	 * 各行は位相に対応する文字セットの文字列と、変換する文字列を最初の空白で区切ったものです。
+	 * 位相が不正な行は空行として書き込まれ、その個数が表示されます。
+	 * @param outputFileName 出力ファイルのパス。
+	 * 読み書きできない場合はエラー文が出力されます。
+	 */
+	static void convertBatchFile(Scrambler scrambler, PrintStream out, String inputFileName,
+			String outputFileName) {
+		try {
+			List<String> lines = Files.readAllLines(Path.of(inputFileName));
+			List<String> offsetTexts = new ArrayList<String>(lines.size());
+			List<String> texts = new ArrayList<String>(lines.size());
+
+			for (String line : lines) {
+				int separatorIndex = line.indexOf(' ');
+
+				offsetTexts.add(separatorIndex != -1 ? line.substring(0, separatorIndex) : line);
+				texts.add(separatorIndex != -1 ? line.substring(separatorIndex + 1) : "");
+			}
+
+			List<String> results = scrambler.convertBatch(offsetTexts, texts);
+			long errorNum = results.stream().filter(result -> result == null).count();
+
+			Files.write(Path.of(outputFileName),
+					results.stream().map(result -> result != null ? result : "").collect(Collectors.toList()));
+
+			out.println(results.size() + " message(s) converted, " + errorNum + " invalid rotor offset(s).");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read or written.");
+		}
+	}
+
+	/**
+	 * 既知の平文と暗号文の組から、一つのローターの配線を復元して表示します。
+	 * 他のローターとリフレクターは現在の配線が使用されます。
+	 * 未知のローターの位相のずれごとに、矛盾のない配線が/SRPの形式で表示されます。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName 組のファイルのパス。
+	 * 各行は開始時の位相に対応する文字セットの文字列、平文、暗号文を空白で区切った文字列です。
+	 * 読み込めない場合や不正な行が存在する場合はエラー文が出力されます。
+	 * @param rotorIndexBuf 配線が未知のローターの番号（1以上）。
+	 * 存在しないローターが指定された場合はエラー文が出力されます。
+	 */
+	static void recoverRotorWiring(Scrambler scrambler, PrintStream out, String fileName, String rotorIndexBuf) {
+		WiringSolver solver = rotorIndexBuf.matches("^[1-9]\\d{0,8}$")
+				? scrambler.createWiringSolver(Integer.parseInt(rotorIndexBuf) - 1)
+				: null;
+
+		if (solver == null) {
+			out.println("The rotor number must be between 1 and " + scrambler.getRotorNum() + ".");
+
+			return;
+		}
+
+		try {
+			List<String> lines = Files.readAllLines(Path.of(fileName));
+			boolean caseFolding = scrambler.getNormalizationPolicy().isCaseFolding();
+
+			for (int i = 0; i < lines.size(); i++) {
+				String[] fields = lines.get(i).trim().split("\\s+");
+
+				if (fields.length == 1 && fields[0].isEmpty())
+					continue;
+
+				if (fields.length != 3 || solver.addPair(fields[0],
+						caseFolding ? fields[1].toUpperCase() : fields[1],
+						caseFolding ? fields[2].toUpperCase() : fields[2]) != 0) {
+					out.println("Line " + (i + 1)
+							+ " must be \"<OFFSET> <PLAINTEXT> <CIPHERTEXT>\" with aligned texts of the same length.");
+
+					return;
+				}
+			}
+
+			List<WiringSolver.Solution> solutions = solver.solve();
+
+			for (WiringSolver.Solution solution : solutions)
+				out.println(String.format("shift %d: /SRP %s %s (%s, %d / %d symbols determined by propagation)",
+						solution.getShift(), rotorIndexBuf, solution.getCharSetPair(),
+						solution.isTruncated() ? "search limit reached" : solution.isUnique() ? "unique" : "ambiguous",
+						solution.getDeterminedNum(), scrambler.getCharSet().length()));
+
+			out.println(solutions.size() + " consistent offset shift(s).");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read.");
+		}
+	}
+
+	/**
+	 * 暗号文を復号できるローターの位相（と順序）を全て探索し、得点の高い候補を表示します。
+	 * 探索中は進捗が定期的に表示され、探索済みの範囲はチェックポイントファイルへ保存されます。
+	 * チェックポイントファイルが存在する場合は続きから探索されます。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName チェックポイントファイルのパス。
+	 * 読み書きできない場合や異なる探索のファイルの場合はエラー文が出力されます。
+	 * @param includeRotorOrder ローターの順序も探索する場合は真を示す文字列、位相のみの場合は偽を示す文字列。
+	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
+	 * @param ciphertext 暗号文。
+	 * @param crib 暗号文の先頭に対応する平文。
+	 * NULLの場合は一致指数で評価されます。
+	 */
+	static void searchKey(Scrambler scrambler, PrintStream out, String fileName, String includeRotorOrder,
+			String ciphertext, String crib) {
+		if (!includeRotorOrder.toUpperCase().matches("^TRUE|T|FALSE|F$")) {
+			out.println("The boolean value must be \"TRUE\" or \"FALSE\".");
+
+			return;
+		}
+
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		try {
+			KeySearch search = new KeySearch(cursor, includeRotorOrder.toUpperCase().startsWith("T"), ciphertext,
+					crib, 10, Path.of(fileName));
+
+			if (search.loadCheckpoint() != 0) {
+				out.println("The checkpoint file belongs to a different search.");
+
+				return;
+			}
+
+			for (KeySearch.Candidate candidate : search.run(Runtime.getRuntime().availableProcessors(), out))
+				out.println(String.format("%.6f ", candidate.getScore())
+						+ search.getKeySpace().describe(candidate.getKey(), cursor) + " " + cursor.convertText(ciphertext));
+		} catch (ArithmeticException e) {
+			out.println("There are too many keys to search.");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The checkpoint file could not be read or written.");
+		}
+	}
+
+	/**
+	 * 鍵空間を区間に分割して複数のワーカープロセスへ割り当て、暗号文を復号できるローターの位相（と順序）を探索します。
+	 * 異常終了したワーカーの区間は他のワーカーへ再び割り当てられます。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param fileName チェックポイントファイルのパス。
+	 * 読み書きできない場合や異なる探索のファイルの場合はエラー文が出力されます。
+	 * @param includeRotorOrder ローターの順序も探索する場合は真を示す文字列、位相のみの場合は偽を示す文字列。
+	 * 条件に合致しない値が指定された場合はエラー文が出力されます。
+	 * @param processNumBuf ワーカープロセスの個数。
+	 * 1以上の数値以外が指定された場合はエラー文が出力されます。
+	 * @param ciphertext 暗号文。
+	 * @param crib 暗号文の先頭に対応する平文。
+	 * NULLの場合は一致指数で評価されます。
+	 */
+	static void searchKeyWithProcesses(Scrambler scrambler, PrintStream out, String fileName,
+			String includeRotorOrder, String processNumBuf, String ciphertext, String crib) {
+		if (!includeRotorOrder.toUpperCase().matches("^TRUE|T|FALSE|F$")) {
+			out.println("The boolean value must be \"TRUE\" or \"FALSE\".");
+
+			return;
+		}
+
+		if (!processNumBuf.matches("^[1-9][0-9]{0,3}$")) {
+			out.println("The number of processes must be a positive number.");
+
+			return;
+		}
+
+		int processNum = Integer.parseInt(processNumBuf);
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		try {
+			KeySearchCoordinator coordinator = new KeySearchCoordinator(scrambler,
+					KeySearchCoordinator.createTempWiringPath(), includeRotorOrder.toUpperCase().startsWith("T"),
+					ciphertext, crib, 10, Path.of(fileName));
+			KeySearch search = coordinator.getSearch();
+
+			if (search.loadCheckpoint() != 0) {
+				out.println("The checkpoint file belongs to a different search.");
+
+				return;
+			}
+
+			int threadNum = Math.max(1, Runtime.getRuntime().availableProcessors() / processNum);
+
+			for (KeySearch.Candidate candidate : coordinator.run(processNum, threadNum, out))
+				out.println(String.format("%.6f ", candidate.getScore())
+						+ search.getKeySpace().describe(candidate.getKey(), cursor) + " " + cursor.convertText(ciphertext));
+		} catch (ArithmeticException e) {
+			out.println("There are too many keys to search.");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The search failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * UTF-8のテキストファイルを現在の位相から暗号化もしくは復号化し、別のファイルへ書き込みます。
+	 * バイト列は文字列へ復号されずに直接番地へ変換されます。
+	 * 文字セットに存在しない文字は正規化方針に従って扱われ、不正なバイト列はそのまま書き込まれます。
+	 * スクランブラー自身の位相は変更されません。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param inputFileName 変換するファイルのパス。
+	 * @param outputFileName 書き込み先のファイルのパス。
+	 * 読み書きできない場合はエラー文が出力されます。
+	 */
+	static void convertFile(Scrambler scrambler, PrintStream out, String inputFileName, String outputFileName) {
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		try (FileChannel input = FileChannel.open(Path.of(inputFileName), StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(Path.of(outputFileName), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long length = cursor.createCodec().transcode(input, output, cursor::convertIndex);
+
+			out.println(length + " character(s) converted from the rotor offset " + scrambler.getRotorsOffset()
+					+ " to " + cursor.getOffsetText() + ".");
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read or written.");
+		}
+	}
+
+	/**
+	 * テキストファイルを現在の位相から暗号化し、範囲を指定して復号化できる格納ファイルへ保存します。
+	 * スクランブラー自身の位相は変更されません。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param out 出力先。
+	 * @param inputFileName 平文のファイルのパス。
+	 * UTF-8で読み込まれます。
+	 * @param outputFileName 格納ファイルのパス。
+	 * 読み書きできない場合や、配線表が大きすぎる場合や、NUL文字を出力し得る配線表の場合はエラー文が出力されます。
+	 */
+	static void writeContainerFile(Scrambler scrambler, PrintStream out, String inputFileName,
+			String outputFileName) {
+		try (BufferedReader reader = Files.newBufferedReader(Path.of(inputFileName))) {
+			long length = CipherContainer.write(scrambler, reader, Path.of(outputFileName));
+
+			if (length == -1) {
+				out.println("The wiring tables are too large to be stored in a container file.");
+			} else if (length == -2) {
+				out.println("Rotors or the reflector with duplicate characters cannot be stored in a container file.");
+			} else {
+				out.println(length + " character(s) stored from the rotor offset " + scrambler.getRotorsOffset() + ".");
+			}
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read or written.");
+		}
+	}
+
+	/**
+	 * 格納ファイルの指定の範囲のみを、格納時の配線表と位相で復号化して表示します。
+	 * 
+	 * @param out 出力先。
+	 * @param fileName 格納ファイルのパス。
+	 * 読み込めない場合や形式が不正な場合はエラー文が出力されます。
+	 * @param fromBuf 復号化する範囲の先頭の文字位置。
+	 * 0以上の数値以外が指定された場合はエラー文が出力されます。
+	 * @param countBuf 復号化する文字数。
+	 * 0以上の数値以外が指定された場合はエラー文が出力されます。
+	 */
+	static void readContainerFile(PrintStream out, String fileName, String fromBuf, String countBuf) {
+		if (!fromBuf.matches("^\\d{1,18}$") || !countBuf.matches("^\\d{1,10}$")
+				|| Long.parseLong(countBuf) > Integer.MAX_VALUE) {
+			out.println("The position and the count must be non-negative numbers.");
+
+			return;
+		}
+
+		try {
+			CipherContainer container = CipherContainer.open(Path.of(fileName));
+
+			if (container == null) {
+				out.println("The file is not a valid container file.");
+
+				return;
+			}
+
+			String text = container.read(Long.parseLong(fromBuf), Integer.parseInt(countBuf));
+
+			if (text == null) {
+				out.println("The position exceeds the length (" + container.length() + ").");
+			} else {
+				out.println(text);
+			}
+		} catch (IOException | InvalidPathException e) {
+			out.println("The file could not be read.");
 		}
 	}
 }
@@ -0,0 +1,368 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ジョブの実行管理
+ * 時間のかかる処理を固定数のスレッドでバックグラウンドに実行します。
+ * 待機中のジョブは優先度の高い順（同じ優先度の場合は投入順）に実行されます。
+ * 各ジョブの出力は標準出力へは書き込まれず、ジョブごとに保持されます。
+ */
+public class JobScheduler {
+	/** ジョブの状態：待機中 */
+	public static final int STATE_QUEUED = 0;
+	/** ジョブの状態：実行中 */
+	public static final int STATE_RUNNING = 1;
+	/** ジョブの状態：完了 */
+	public static final int STATE_DONE = 2;
+	/** ジョブの状態：異常終了 */
+	public static final int STATE_FAILED = 3;
+	/** ジョブの状態：取り消し */
+	public static final int STATE_CANCELLED = 4;
+	/** ジョブの状態の名前 */
+	private static final String[] STATE_NAMES = { "QUEUED", "RUNNING", "DONE", "FAILED", "CANCELLED" };
+
+	/** 実行するスレッド */
+	private final ThreadPoolExecutor executor;
+	/** 待機中のジョブの上限 */
+	private final int queueCapacity;
+	/** 投入された全てのジョブ（番号順） */
+	private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>();
+	/** 終了を通知していないジョブ */
+	private final List<Job> finishedJobs = new ArrayList<Job>();
+	/** 次のジョブの番号 */
+	private int nextId = 1;
+
+	/**
+	 * スレッドの個数と待機中のジョブの上限を基に生成します。
+	 * スレッドはデーモンスレッドであり、プログラムの終了を妨げません。
+	 * 
+	 * @param threadNum スレッドの個数。
+	 * @param queueCapacity 待機中のジョブの上限。
+	 */
+	public JobScheduler(int threadNum, int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+
+		executor = new ThreadPoolExecutor(threadNum, threadNum, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, "JobScheduler-Worker");
+
+					thread.setDaemon(true);
+
+					return thread;
+				});
+	}
+
+	/**
+	 * ジョブを投入します。
+	 * 
+	 * @param description ジョブの説明。
+	 * @param priority 優先度。
+	 * 大きいほど先に実行されます。
+	 * @param task 処理。
+	 * 引数はジョブの出力先です。
+	 * 中断を要求されると実行中のスレッドへ割り込みが発生します。
+	 * @return ジョブ。
+	 * 待機中のジョブが上限に達している場合はNULLが返されます。
+	 */
+	public synchronized Job submit(String description, int priority, Consumer<PrintStream> task) {
+		if (executor.getQueue().size() >= queueCapacity)
+			return null;
+
+		Job job = new Job(nextId++, description, priority, task);
+
+		jobs.put(job.id, job);
+		executor.execute(job);
+
+		return job;
+	}
+
+	/**
+	 * 全てのジョブを番号順に取得します。
+	 * 
+	 * @return ジョブの一覧。
+	 */
+	public synchronized List<Job> getJobs() {
+		return new ArrayList<Job>(jobs.values());
+	}
+
+	/**
+	 * ジョブを取得します。
+	 * 
+	 * @param id ジョブの番号。
+	 * @return ジョブ。
+	 * 存在しない場合はNULLが返されます。
+	 */
+	public synchronized Job getJob(int id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * 終了したジョブのうち、まだ取得されていないものを取得します。
+	 * 
+	 * @return 終了した順のジョブの一覧。
+	 */
+	public synchronized List<Job> pollFinishedJobs() {
+		List<Job> res = new ArrayList<Job>(finishedJobs);
+
+		finishedJobs.clear();
+
+		return res;
+	}
+
+	/**
+	 * ジョブを取り消します。
+	 * 待機中のジョブは実行されずに取り消されます。
+	 * 実行中のジョブは割り込みにより中断を要求され、処理が終了した時点で取り消しとなります。
+	 * 
+	 * @param id ジョブの番号。
+	 * 存在しない場合はエラーコード1が返されます。
+	 * 既に終了している場合はエラーコード2が返されます。
+	 * @return エラーコード。
+	 * 取り消された（中断を要求した）場合は0が返されます。
+	 */
+	public synchronized int cancel(int id) { // => error code
+		Job job = jobs.get(id);
+
+		if (job == null)
+			return 1;
+
+		if (job.state != STATE_QUEUED && job.state != STATE_RUNNING)
+			return 2;
+
+		job.cancelRequested = true;
+
+		if (executor.getQueue().remove(job)) {
+			finish(job, STATE_CANCELLED);
+		} else if (job.thread != null) {
+			job.thread.interrupt();
+		}
+
+		return 0;
+	}
+
+	/**
+	 * 待機中のジョブの優先度を変更します。
+	 * 
+	 * @param id ジョブの番号。
+	 * 存在しない場合はエラーコード1が返されます。
+	 * 待機中ではない場合はエラーコード2が返されます。
+	 * @param priority 新しい優先度。
+	 * @return エラーコード。
+	 * 正常に変更された場合は0が返されます。
+	 */
+	public synchronized int setPriority(int id, int priority) { // => error code
+		Job job = jobs.get(id);
+
+		if (job == null)
+			return 1;
+
+		// 優先度付きの待ち行列は要素の変更を検知しないため、取り出してから入れ直す
+
+		if (!executor.getQueue().remove(job))
+			return 2;
+
+		job.priority = priority;
+		executor.execute(job);
+
+		return 0;
+	}
+
+	/**
+	 * 待機中のジョブを全て取り消し、実行中のジョブへ割り込んで終了を待ちます。
+	 * 
+	 * @param timeoutMillis 実行中のジョブの終了を待つ時間（ミリ秒）。
+	 */
+	public void shutdown(long timeoutMillis) {
+		synchronized (this) {
+			for (Job job : jobs.values())
+				if (job.state == STATE_QUEUED || job.state == STATE_RUNNING)
+					job.cancelRequested = true;
+
+			for (Runnable runnable : executor.shutdownNow())
+				finish((Job) runnable, STATE_CANCELLED);
+		}
+
+		try {
+			executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * ジョブを終了させ、通知の対象に加えます。
+	 * 
+	 * @param job ジョブ。
+	 * @param state 終了時の状態。
+	 */
+	private synchronized void finish(Job job, int state) {
+		job.state = state;
+		job.finishedTime = System.nanoTime();
+		finishedJobs.add(job);
+	}
+
+	/**
+	 * ジョブ
+	 */
+	public class Job implements Runnable, Comparable<Job> {
+		/** 番号 */
+		private final int id;
+		/** 説明 */
+		private final String description;
+		/** 処理 */
+		private final Consumer<PrintStream> task;
+		/** 出力 */
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		/** 優先度 */
+		private volatile int priority;
+		/** 状態 */
+		private volatile int state = STATE_QUEUED;
+		/** 取り消しが要求された場合は真 */
+		private volatile boolean cancelRequested = false;
+		/** 実行中のスレッド */
+		private volatile Thread thread = null;
+		/** 開始した時刻（ナノ秒） */
+		private volatile long startedTime = 0;
+		/** 終了した時刻（ナノ秒） */
+		private volatile long finishedTime = 0;
+
+		/**
+		 * ジョブを生成します。
+		 * 
+		 * @param id 番号。
+		 * @param description 説明。
+		 * @param priority 優先度。
+		 * @param task 処理。
+		 */
+		private Job(int id, String description, int priority, Consumer<PrintStream> task) {
+			this.id = id;
+			this.description = description;
+			this.priority = priority;
+			this.task = task;
+		}
+
+		/**
+		 * 番号を取得します。
+		 * 
+		 * @return 番号。
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * 説明を取得します。
+		 * 
+		 * @return 説明。
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * 優先度を取得します。
+		 * 
+		 * @return 優先度。
+		 */
+		public int getPriority() {
+			return priority;
+		}
+
+		/**
+		 * 状態を取得します。
+		 * 
+		 * @return STATE_QUEUED、STATE_RUNNING、STATE_DONE、STATE_FAILED、STATE_CANCELLEDのいずれか。
+		 */
+		public int getState() {
+			return state;
+		}
+
+		/**
+		 * 状態の名前を取得します。
+		 * 
+		 * @return 状態の名前。
+		 */
+		public String getStateName() {
+			return STATE_NAMES[state];
+		}
+
+		/**
+		 * 実行時間を取得します。
+		 * 
+		 * @return 開始から終了（実行中の場合は現在）までのミリ秒数。
+		 * 開始していない場合は0が返されます。
+		 */
+		public long getElapsedMillis() {
+			if (startedTime == 0)
+				return 0;
+
+			return ((finishedTime != 0 ? finishedTime : System.nanoTime()) - startedTime) / 1000000;
+		}
+
+		/**
+		 * これまでの出力を取得します。
+		 * 
+		 * @return 出力された文字列。
+		 */
+		public String getOutput() {
+			return output.toString(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void run() {
+			synchronized (JobScheduler.this) {
+				if (state != STATE_QUEUED)
+					return;
+
+				// 待ち行列から取り出された後に取り消された場合
+
+				if (cancelRequested) {
+					finish(this, STATE_CANCELLED);
+
+					return;
+				}
+
+				state = STATE_RUNNING;
+				thread = Thread.currentThread();
+				startedTime = System.nanoTime();
+			}
+
+			int resultState = STATE_DONE;
+
+			try (PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8)) {
+				try {
+					task.accept(out);
+				} catch (RuntimeException e) {
+					out.println(e);
+					resultState = STATE_FAILED;
+				}
+			} finally {
+				synchronized (JobScheduler.this) {
+					thread = null;
+
+					// 割り込みの状態をスレッドに残さない
+
+					Thread.interrupted();
+					finish(this, cancelRequested ? STATE_CANCELLED : resultState);
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(Job job) {
+			if (priority != job.priority)
+				return Integer.compare(job.priority, priority);
+
+			return Integer.compare(id, job.id);
+		}
+	}
+}
@@ -0,0 +1,592 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 鍵の探索
+ * 鍵空間を区間ごとに並列に探索し、暗号文を復号した結果の得点が高い鍵を保持します。
+ * 探索済みの区間と得点の高い鍵は定期的にチェックポイントファイルへ保存され、中断後に再開できます。
+ */
+public class KeySearch {
+	/** チェックポイントファイルの識別子 */
+	private static final int CHECKPOINT_FILE_MAGIC = 0x454E4B53;
+	/** チェックポイントファイルの版数 */
+	private static final int CHECKPOINT_FILE_VERSION = 1;
+	/** 一度に割り当てる鍵の個数 */
+	private static final int BLOCK_SIZE = 1 << 12;
+	/** 進捗を報告する間隔（ミリ秒） */
+	private static final long REPORT_INTERVAL = 5000;
+	/** チェックポイントを保存する間隔（ミリ秒） */
+	private static final long CHECKPOINT_INTERVAL = 30000;
+	/** 候補の順位（得点の高い順、同点の場合は鍵の小さい順） */
+	private static final Comparator<Candidate> CANDIDATE_ORDER = Comparator.comparingDouble(Candidate::getScore)
+			.reversed().thenComparingLong(Candidate::getKey);
+
+	/**
+	 * 鍵の候補
+	 */
+	public static class Candidate {
+		/** 鍵 */
+		private final long key;
+		/** 得点 */
+		private final double score;
+
+		/**
+		 * 鍵と得点を基に候補を生成します。
+		 * 
+		 * @param key 鍵。
+		 * @param score 得点。
+		 */
+		Candidate(long key, double score) {
+			this.key = key;
+			this.score = score;
+		}
+
+		/**
+		 * 鍵を取得します。
+		 * 
+		 * @return 鍵。
+		 */
+		public long getKey() {
+			return key;
+		}
+
+		/**
+		 * 得点を取得します。
+		 * 
+		 * @return 得点。
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * 鍵と得点が候補より順位が高いかを判定します。
+		 * {@link KeySearch#CANDIDATE_ORDER}と同じ順位で判定されるため、同点の候補の採否が探索の順序に依存しません。
+		 * 
+		 * @param key 鍵。
+		 * @param score 得点。
+		 * @return 得点が高い場合や、同点かつ鍵が小さい場合は真。
+		 */
+		boolean isRankedBelow(long key, double score) {
+			int res = Double.compare(score, this.score);
+
+			return res > 0 || (res == 0 && key < this.key);
+		}
+	}
+
+	/** カーソル */
+	private final ScramblerCursor cursor;
+	/** 鍵空間 */
+	private final KeySpace keySpace;
+	/** 暗号文の文字セットの番地 */
+	private final int[] cipherSymbols;
+	/** クリブの文字セットの番地（一致指数で評価する場合はNULL） */
+	private final int[] cribSymbols;
+	/** 保持する候補の個数 */
+	private final int candidateNum;
+	/** チェックポイントファイルのパス */
+	private final Path checkpointPath;
+	/** 探索の識別値 */
+	private final long jobHash;
+
+	/** 探索済みの区間（始点から終点への対応） */
+	private final TreeMap<Long, Long> coveredRanges = new TreeMap<Long, Long>();
+	/** チェックポイントから読み込まれた、割り当てを省略する区間 */
+	private final TreeMap<Long, Long> skippedRanges = new TreeMap<Long, Long>();
+	/** 次に割り当てる鍵 */
+	private long nextKey = 0;
+	/** 順位の低い順に並んだ候補 */
+	private final PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>(CANDIDATE_ORDER.reversed());
+	/** 候補に加わるために順位で上回る必要がある候補（候補が保持する個数に満たない場合はNULL） */
+	private volatile Candidate lowestCandidate = null;
+	/** 中断が要求された場合は真 */
+	private volatile boolean cancelled = false;
+	/** ワーカーごとの探索済みの鍵の個数 */
+	private AtomicLongArray workerKeyCounts = new AtomicLongArray(0);
+
+	/**
+	 * 探索を生成します。
+	 * 
+	 * @param cursor 探索するスクランブラーのカーソル。
+	 * @param includeRotorOrder ローターの順序も探索する場合は真、位相のみの場合は偽。
+	 * @param ciphertext 暗号文。
+	 * 文字セットに存在しない文字は無視されます。
+	 * @param crib 暗号文の先頭に対応する平文。
+	 * 一致する文字の個数が得点になります。
+	 * NULLの場合は復号した文字列の一致指数が得点になります。
+	 * @param candidateNum 保持する候補の個数。
+	 * @param checkpointPath チェックポイントファイルのパス。
+	 * NULLの場合は保存されません。
+	 * @throws ArithmeticException 鍵の個数がlongで表現できない場合。
+	 */
+	public KeySearch(ScramblerCursor cursor, boolean includeRotorOrder, String ciphertext, String crib,
+			int candidateNum, Path checkpointPath) {
+		this.cursor = cursor.copy();
+		this.keySpace = new KeySpace(cursor, includeRotorOrder);
+		this.cipherSymbols = toSymbols(cursor, ciphertext);
+		this.cribSymbols = crib != null ? toSymbols(cursor, crib) : null;
+		this.candidateNum = candidateNum;
+		this.checkpointPath = checkpointPath;
+
+		long hash = cursor.getFingerprint() * 31 + (includeRotorOrder ? 1 : 0);
+
+		hash = hash * 31 + ciphertext.hashCode();
+		hash = hash * 31 + (crib != null ? crib.hashCode() : 0);
+		jobHash = hash;
+	}
+
+	/**
+	 * 文字列を文字セットの番地の配列へ変換します。
+	 * 
+	 * @param cursor カーソル。
+	 * @param text 文字列。
+	 * @return 文字セットに存在する文字のみの番地の配列。
+	 */
+	private static int[] toSymbols(ScramblerCursor cursor, String text) {
+		return text.chars().map(charCode -> cursor.getCharIndex((char) charCode)).filter(symbol -> symbol != -1)
+				.toArray();
+	}
+
+	/**
+	 * 鍵空間を取得します。
+	 * 
+	 * @return 鍵空間。
+	 */
+	public KeySpace getKeySpace() {
+		return keySpace;
+	}
+
+	// Checkpoint
+
+	/**
+	 * チェックポイントファイルが存在する場合は読み込み、探索済みの区間と候補を復元します。
+	 * 
+	 * @return エラーコード。
+	 * 読み込まれた場合やファイルが存在しない場合は0が返されます。
+	 * 識別子や版数が異なる場合はエラーコード1が返されます。
+	 * 異なるスクランブラーや暗号文の探索のファイルの場合はエラーコード2が返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public synchronized int loadCheckpoint() throws IOException { // => error code
+		if (checkpointPath == null || !Files.exists(checkpointPath))
+			return 0;
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(checkpointPath)))) {
+			if (in.readInt() != CHECKPOINT_FILE_MAGIC || in.readInt() != CHECKPOINT_FILE_VERSION)
+				return 1;
+
+			if (in.readLong() != jobHash || in.readLong() != keySpace.size())
+				return 2;
+
+			for (int i = in.readInt(); i > 0; i--) {
+				long start = in.readLong();
+
+				addRange(skippedRanges, start, in.readLong());
+			}
+
+			for (int i = in.readInt(); i > 0; i--) {
+				long key = in.readLong();
+
+				offer(key, in.readDouble());
+			}
+		}
+
+		coveredRanges.clear();
+		coveredRanges.putAll(skippedRanges);
+		nextKey = 0;
+
+		return 0;
+	}
+
+	/**
+	 * 探索済みの区間と候補をチェックポイントファイルへ保存します。
+	 * 一時ファイルへ書き込んでから置き換えるため、保存中に中断されても以前のファイルは壊れません。
+	 * 
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	public void saveCheckpoint() throws IOException {
+		if (checkpointPath == null)
+			return;
+
+		List<long[]> ranges = new ArrayList<long[]>();
+		List<Candidate> currentCandidates;
+
+		synchronized (this) {
+			for (Map.Entry<Long, Long> range : coveredRanges.entrySet())
+				ranges.add(new long[] { range.getKey(), range.getValue() });
+
+			currentCandidates = new ArrayList<Candidate>(candidates);
+		}
+
+		Path tempPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+			out.writeInt(CHECKPOINT_FILE_MAGIC);
+			out.writeInt(CHECKPOINT_FILE_VERSION);
+			out.writeLong(jobHash);
+			out.writeLong(keySpace.size());
+			out.writeInt(ranges.size());
+
+			for (long[] range : ranges) {
+				out.writeLong(range[0]);
+				out.writeLong(range[1]);
+			}
+
+			out.writeInt(currentCandidates.size());
+
+			for (Candidate candidate : currentCandidates) {
+				out.writeLong(candidate.getKey());
+				out.writeDouble(candidate.getScore());
+			}
+		}
+
+		Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// Function
+
+	/**
+	 * 探索を実行します。
+	 * 全ての鍵を探索するか中断されるまで戻りません。
+	 * 呼び出したスレッドが割り込まれた場合は探索を中断し、チェックポイントを保存してから戻ります。
+	 * 
+	 * @param workerNum ワーカーの個数。
+	 * @param out 進捗の出力先。
+	 * NULLの場合は出力されません。
+	 * @return 得点の高い順（同点の場合は鍵の小さい順）に並んだ候補。
+	 * @throws IOException チェックポイントの保存に失敗した場合。
+	 */
+	public List<Candidate> run(int workerNum, PrintStream out) throws IOException {
+		Thread[] workers = new Thread[workerNum];
+
+		initWorkerKeyCounts(workerNum);
+
+		for (int i = 0; i < workerNum; i++) {
+			int workerIndex = i;
+
+			workers[i] = new Thread(() -> work(workerIndex), "KeySearch-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+
+		long[] lastCounts = new long[workerNum];
+		long lastReportTime = System.nanoTime();
+		long lastCheckpointTime = lastReportTime;
+
+		try {
+			for (Thread worker : workers) {
+				while (worker.isAlive()) {
+					worker.join(REPORT_INTERVAL);
+
+					long now = System.nanoTime();
+
+					if (now - lastReportTime >= REPORT_INTERVAL * 1000000) {
+						report(out, lastCounts, now - lastReportTime);
+						lastReportTime = now;
+					}
+
+					if (now - lastCheckpointTime >= CHECKPOINT_INTERVAL * 1000000) {
+						saveCheckpoint();
+						lastCheckpointTime = now;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel();
+
+			for (Thread worker : workers) {
+				while (worker.isAlive()) {
+					try {
+						worker.join();
+					} catch (InterruptedException ignored) {
+						// 全てのワーカーの終了を待つ
+					}
+				}
+			}
+
+			Thread.currentThread().interrupt();
+		}
+
+		saveCheckpoint();
+		report(out, lastCounts, System.nanoTime() - lastReportTime);
+
+		return getCandidates();
+	}
+
+	/**
+	 * 区間の鍵を呼び出したスレッドで探索し、候補へ加えます。
+	 * 
+	 * @param start 区間の始点。
+	 * @param end 区間の終点。
+	 */
+	public void searchRange(long start, long end) {
+		scan(cursor.copy(), new int[cursor.getCharSet().length()], start, end);
+
+		synchronized (this) {
+			addRange(coveredRanges, start, end);
+		}
+	}
+
+	/**
+	 * 探索の中断を要求します。
+	 * 各ワーカーは割り当て済みの区間を探索し終えてから終了します。
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * 探索済みの鍵の個数を取得します。
+	 * 
+	 * @return 探索済みの鍵の個数。
+	 */
+	public synchronized long getCoveredKeyNum() {
+		long res = 0;
+
+		for (Map.Entry<Long, Long> range : coveredRanges.entrySet())
+			res += range.getValue() - range.getKey();
+
+		return res;
+	}
+
+	/**
+	 * 現在の候補を取得します。
+	 * 
+	 * @return 得点の高い順（同点の場合は鍵の小さい順）に並んだ候補。
+	 */
+	public synchronized List<Candidate> getCandidates() {
+		List<Candidate> res = new ArrayList<Candidate>(candidates);
+
+		res.sort(CANDIDATE_ORDER);
+
+		return res;
+	}
+
+	/**
+	 * 進捗を出力します。
+	 * 
+	 * @param out 出力先。
+	 * @param lastCounts 前回の報告時のワーカーごとの鍵の個数。
+	 * 今回の値に更新されます。
+	 * @param elapsedNanos 前回の報告からの経過時間（ナノ秒）。
+	 */
+	void report(PrintStream out, long[] lastCounts, long elapsedNanos) {
+		if (out == null)
+			return;
+
+		StringBuffer rates = new StringBuffer();
+
+		for (int i = 0; i < lastCounts.length; i++) {
+			long count = workerKeyCounts.get(i);
+
+			rates.append(String.format(" %.0f", (count - lastCounts[i]) * 1e9 / Math.max(1, elapsedNanos)));
+			lastCounts[i] = count;
+		}
+
+		long covered = getCoveredKeyNum();
+
+		out.println(String.format("%.2f%% (%d / %d keys), keys/s per worker:", 100.0 * covered / keySpace.size(),
+				covered, keySpace.size()) + rates);
+	}
+
+	/**
+	 * ワーカーとして区間の割り当てを受け、鍵を探索します。
+	 * 
+	 * @param workerIndex ワーカーの番地。
+	 */
+	private void work(int workerIndex) {
+		ScramblerCursor localCursor = cursor.copy();
+		int[] counts = new int[cursor.getCharSet().length()];
+		long[] block;
+
+		while (!cancelled && (block = nextBlock(BLOCK_SIZE)) != null) {
+			scan(localCursor, counts, block[0], block[1]);
+			completeBlock(workerIndex, block[0], block[1]);
+		}
+	}
+
+	/**
+	 * 区間の鍵を探索し、候補へ加えます。
+	 * 
+	 * @param localCursor 呼び出したスレッドのカーソル。
+	 * ローターの順序と位相は変更されます。
+	 * @param counts 一致指数の集計に使用する配列。
+	 * @param start 区間の始点。
+	 * @param end 区間の終点。
+	 */
+	private void scan(ScramblerCursor localCursor, int[] counts, long start, long end) {
+		long positionNum = keySpace.getPositionNum();
+
+		if (keySpace.isIncludeRotorOrder() && start < end)
+			localCursor.setRotorOrder(keySpace.getRotorOrder(start));
+
+		for (long key = start; key < end; key++) {
+			if (keySpace.isIncludeRotorOrder() && key % positionNum == 0)
+				localCursor.setRotorOrder(keySpace.getRotorOrder(key));
+
+			localCursor.setPosition(key % positionNum);
+
+			double score = score(localCursor, counts);
+			Candidate lowest = lowestCandidate;
+
+			if (lowest == null || lowest.isRankedBelow(key, score))
+				offer(key, score);
+		}
+	}
+
+	/**
+	 * カーソルの現在の位置から暗号文を復号し、得点を求めます。
+	 * 
+	 * @param localCursor カーソル。
+	 * 位相は変更されます。
+	 * @param counts 一致指数の集計に使用する配列。
+	 * @return 得点。
+	 */
+	private double score(ScramblerCursor localCursor, int[] counts) {
+		if (cribSymbols != null) {
+			int matchNum = 0;
+
+			for (int i = 0; i < cipherSymbols.length && i < cribSymbols.length; i++)
+				if (localCursor.convertIndex(cipherSymbols[i]) == cribSymbols[i])
+					matchNum++;
+
+			return matchNum;
+		}
+
+		if (cipherSymbols.length < 2)
+			return 0;
+
+		Arrays.fill(counts, 0);
+
+		for (int symbol : cipherSymbols) {
+			int plainSymbol = localCursor.convertIndex(symbol);
+
+			if (plainSymbol != -1)
+				counts[plainSymbol]++;
+		}
+
+		long sum = 0;
+
+		for (int count : counts)
+			sum += (long) count * (count - 1);
+
+		return (double) sum / ((long) cipherSymbols.length * (cipherSymbols.length - 1));
+	}
+
+	/**
+	 * 候補を追加します。
+	 * 保持する候補の個数を超える場合は順位の最も低い候補が取り除かれます。
+	 * 順位は得点と鍵のみで決まるため、候補が追加される順序に関わらず同じ候補が保持されます。
+	 * 
+	 * @param key 鍵。
+	 * @param score 得点。
+	 */
+	synchronized void offer(long key, double score) {
+		if (candidates.size() < candidateNum) {
+			candidates.add(new Candidate(key, score));
+		} else if (candidates.peek().isRankedBelow(key, score)) {
+			candidates.poll();
+			candidates.add(new Candidate(key, score));
+		}
+
+		if (candidates.size() >= candidateNum)
+			lowestCandidate = candidates.peek();
+	}
+
+	/**
+	 * 次に探索する区間を割り当てます。
+	 * チェックポイントで探索済みの区間は飛ばされます。
+	 * 
+	 * @param blockSize 区間の最大の長さ。
+	 * @return 区間の始点と終点の配列。
+	 * 全ての区間を割り当て終えた場合はNULLが返されます。
+	 */
+	synchronized long[] nextBlock(long blockSize) {
+		while (nextKey < keySpace.size()) {
+			Map.Entry<Long, Long> skipped = skippedRanges.floorEntry(nextKey);
+
+			if (skipped != null && skipped.getValue() > nextKey) {
+				nextKey = skipped.getValue();
+
+				continue;
+			}
+
+			long end = Math.min(keySpace.size(), nextKey + blockSize);
+			Long nextSkippedKey = skippedRanges.higherKey(nextKey);
+
+			if (nextSkippedKey != null)
+				end = Math.min(end, nextSkippedKey);
+
+			long[] res = { nextKey, end };
+
+			nextKey = end;
+
+			return res;
+		}
+
+		return null;
+	}
+
+	/**
+	 * ワーカーごとの探索済みの鍵の個数を初期化します。
+	 * 
+	 * @param workerNum ワーカーの個数。
+	 */
+	void initWorkerKeyCounts(int workerNum) {
+		workerKeyCounts = new AtomicLongArray(workerNum);
+	}
+
+	/**
+	 * 区間を探索済みとして記録します。
+	 * 
+	 * @param workerIndex 区間を探索したワーカーの番地。
+	 * @param start 区間の始点。
+	 * @param end 区間の終点。
+	 */
+	synchronized void completeBlock(int workerIndex, long start, long end) {
+		addRange(coveredRanges, start, end);
+		workerKeyCounts.addAndGet(workerIndex, end - start);
+	}
+
+	/**
+	 * 区間の集合へ区間を加え、隣接もしくは重複する区間を結合します。
+	 * 
+	 * @param ranges 区間の集合。
+	 * @param start 区間の始点。
+	 * @param end 区間の終点。
+	 */
+	private static void addRange(TreeMap<Long, Long> ranges, long start, long end) {
+		Map.Entry<Long, Long> floor = ranges.floorEntry(start);
+
+		if (floor != null && floor.getValue() >= start) {
+			start = floor.getKey();
+			end = Math.max(end, floor.getValue());
+			ranges.remove(floor.getKey());
+		}
+
+		for (Map.Entry<Long, Long> next = ranges.ceilingEntry(start); next != null
+				&& next.getKey() <= end; next = ranges.ceilingEntry(start)) {
+			end = Math.max(end, next.getValue());
+			ranges.remove(next.getKey());
+		}
+
+		ranges.put(start, end);
+	}
+}
@@ -0,0 +1,406 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 鍵の探索の調整役
+ * 鍵空間を区間に分割して複数のワーカープロセス（{@link KeySearchWorker}）へ割り当て、返された候補を集約します。
+ * 異常終了したワーカーに割り当てていた区間は他のワーカーへ再び割り当てられ、ワーカーは再起動されます。
+ * 探索済みの区間と候補の管理、チェックポイントの保存には{@link KeySearch}を使用します。
+ */
+public class KeySearchCoordinator {
+	/** 一度に割り当てる鍵の最小の個数 */
+	private static final long MIN_SHARD_SIZE = 1 << 12;
+	/** 一度に割り当てる鍵の最大の個数 */
+	private static final long MAX_SHARD_SIZE = 1 << 24;
+	/** ワーカーごとの再起動の上限 */
+	private static final int MAX_RESTART_NUM = 3;
+	/** 進捗を報告する間隔（ミリ秒） */
+	private static final long REPORT_INTERVAL = 5000;
+	/** チェックポイントを保存する間隔（ミリ秒） */
+	private static final long CHECKPOINT_INTERVAL = 30000;
+
+	/** 探索 */
+	private final KeySearch search;
+	/** ワーカーが読み込む配線表ファイルのパス */
+	private final Path wiringPath;
+	/** ローターの順序を含む場合は真 */
+	private final boolean includeRotorOrder;
+	/** 暗号文 */
+	private final String ciphertext;
+	/** クリブ */
+	private final String crib;
+	/** 保持する候補の個数 */
+	private final int candidateNum;
+	/** 配線表のハッシュ値 */
+	private final long fingerprint;
+
+	/** ワーカーからの通知 */
+	private final LinkedBlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+	/** 再び割り当てる区間 */
+	private final ArrayDeque<long[]> retryShards = new ArrayDeque<long[]>();
+
+	/**
+	 * 探索の調整役を生成します。
+	 * 
+	 * @param scrambler 探索するスクランブラー。
+	 * @param wiringPath ワーカーが読み込む配線表ファイルのパス。
+	 * スクランブラーの配線表が保存されます。
+	 * @param includeRotorOrder ローターの順序も探索する場合は真、位相のみの場合は偽。
+	 * @param ciphertext 暗号文。
+	 * @param crib 暗号文の先頭に対応する平文。
+	 * NULLの場合は復号した文字列の一致指数が得点になります。
+	 * @param candidateNum 保持する候補の個数。
+	 * @param checkpointPath チェックポイントファイルのパス。
+	 * @throws ArithmeticException 鍵の個数がlongで表現できない場合。
+	 * @throws IOException 配線表ファイルの書き込みに失敗した場合。
+	 */
+	public KeySearchCoordinator(Scrambler scrambler, Path wiringPath, boolean includeRotorOrder, String ciphertext,
+			String crib, int candidateNum, Path checkpointPath) throws IOException {
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		this.search = new KeySearch(cursor, includeRotorOrder, ciphertext, crib, candidateNum, checkpointPath);
+
+		// 鍵の個数がlongで表現できるローターの個数は配線表ファイルの上限を超えないため、保存はエラーにならない
+
+		scrambler.saveWiringTables(wiringPath);
+		this.wiringPath = wiringPath;
+		this.includeRotorOrder = includeRotorOrder;
+		this.ciphertext = ciphertext;
+		this.crib = crib;
+		this.candidateNum = candidateNum;
+		this.fingerprint = cursor.getFingerprint();
+	}
+
+	/**
+	 * 探索を取得します。
+	 * チェックポイントの読み込みや候補の取得に使用します。
+	 * 
+	 * @return 探索。
+	 */
+	public KeySearch getSearch() {
+		return search;
+	}
+
+	/**
+	 * ワーカープロセスを起動して探索を実行します。
+	 * 全ての鍵を探索するか、全てのワーカーが再起動の上限を超えて異常終了するまで戻りません。
+	 * 呼び出したスレッドが割り込まれた場合は全てのワーカーを終了させ、チェックポイントを保存してから戻ります。
+	 * 
+	 * @param processNum ワーカープロセスの個数。
+	 * @param threadNum ワーカーごとに同時に探索する区間の個数。
+	 * @param out 進捗の出力先。
+	 * NULLの場合は出力されません。
+	 * @return 得点の高い順（同点の場合は鍵の小さい順）に並んだ候補。
+	 * @throws IOException チェックポイントの保存に失敗した場合や、全てのワーカーが異常終了した場合。
+	 */
+	public List<KeySearch.Candidate> run(int processNum, int threadNum, PrintStream out) throws IOException {
+		long shardSize = Math.max(MIN_SHARD_SIZE,
+				Math.min(MAX_SHARD_SIZE, search.getKeySpace().size() / ((long) processNum * threadNum * 64)));
+		Worker[] workers = new Worker[processNum];
+		long[] lastCounts = new long[processNum];
+		long lastReportTime = System.nanoTime();
+		long lastCheckpointTime = lastReportTime;
+		boolean exhausted = false;
+
+		search.initWorkerKeyCounts(processNum);
+
+		try {
+			for (int i = 0; i < processNum; i++)
+				workers[i] = startWorker(i, threadNum);
+
+			while (true) {
+				// 空いているワーカーへ区間を割り当てる
+
+				for (Worker worker : workers) {
+					while (worker != null && worker.process.isAlive() && !exhausted
+							&& worker.shards.size() < threadNum * 2) {
+						long[] shard = !retryShards.isEmpty() ? retryShards.poll() : search.nextBlock(shardSize);
+
+						if (shard == null) {
+							exhausted = true;
+
+							break;
+						}
+
+						worker.dispatch(shard);
+					}
+				}
+
+				boolean busy = false;
+
+				for (Worker worker : workers)
+					busy |= worker != null && !worker.shards.isEmpty();
+
+				if (!busy && (exhausted || allStopped(workers)))
+					break;
+
+				Event event = events.poll(REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+
+				if (event != null) {
+					Worker worker = workers[event.workerIndex];
+
+					if (event.worker != worker) {
+						// 既に置き換えられたワーカーからの通知は無視する
+					} else if (event.shard != null) {
+						worker.shards.removeIf(shard -> shard[0] == event.shard[0] && shard[1] == event.shard[1]);
+
+						for (KeySearch.Candidate candidate : event.hits)
+							search.offer(candidate.getKey(), candidate.getScore());
+
+						search.completeBlock(event.workerIndex, event.shard[0], event.shard[1]);
+					} else {
+						retryShards.addAll(worker.shards);
+						worker.shards.clear();
+						exhausted &= retryShards.isEmpty();
+
+						if (worker.restartNum < MAX_RESTART_NUM) {
+							if (out != null)
+								out.println("Worker " + event.workerIndex + " terminated, restarting.");
+
+							workers[event.workerIndex] = startWorker(event.workerIndex, threadNum);
+							workers[event.workerIndex].restartNum = worker.restartNum + 1;
+						} else {
+							workers[event.workerIndex] = null;
+						}
+					}
+				}
+
+				long now = System.nanoTime();
+
+				if (now - lastReportTime >= REPORT_INTERVAL * 1000000) {
+					search.report(out, lastCounts, now - lastReportTime);
+					lastReportTime = now;
+				}
+
+				if (now - lastCheckpointTime >= CHECKPOINT_INTERVAL * 1000000) {
+					search.saveCheckpoint();
+					lastCheckpointTime = now;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for (Worker worker : workers)
+				if (worker != null)
+					worker.stop();
+		}
+
+		search.saveCheckpoint();
+		search.report(out, lastCounts, System.nanoTime() - lastReportTime);
+
+		if (!Thread.currentThread().isInterrupted() && !exhausted)
+			throw new IOException("All workers terminated.");
+
+		return search.getCandidates();
+	}
+
+	/**
+	 * 全てのワーカーが再起動の上限を超えて終了したか確認します。
+	 * 
+	 * @param workers ワーカー。
+	 * @return 全て終了した場合は真。
+	 */
+	private static boolean allStopped(Worker[] workers) {
+		for (Worker worker : workers)
+			if (worker != null)
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * ワーカープロセスを起動し、探索の条件を送ります。
+	 * 起動に失敗した場合も、終了の通知が送られるワーカーとして返されます。
+	 * 
+	 * @param workerIndex ワーカーの番地。
+	 * @param threadNum ワーカーごとに同時に探索する区間の個数。
+	 * @return ワーカー。
+	 */
+	private Worker startWorker(int workerIndex, int threadNum) {
+		Worker worker = new Worker(workerIndex);
+		ProcessBuilder builder = new ProcessBuilder(
+				Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-cp",
+				System.getProperty("java.class.path"), KeySearchWorker.class.getName(), String.valueOf(threadNum));
+
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		try {
+			worker.process = builder.start();
+			worker.out = new DataOutputStream(new BufferedOutputStream(worker.process.getOutputStream()));
+			worker.out.writeInt(KeySearchWorker.PROTOCOL_MAGIC);
+			worker.out.writeInt(KeySearchWorker.PROTOCOL_VERSION);
+			KeySearchWorker.writeString(worker.out, wiringPath.toAbsolutePath().toString());
+			worker.out.writeBoolean(includeRotorOrder);
+			KeySearchWorker.writeString(worker.out, ciphertext);
+			worker.out.writeBoolean(crib != null);
+
+			if (crib != null)
+				KeySearchWorker.writeString(worker.out, crib);
+
+			worker.out.writeInt(candidateNum);
+			worker.out.flush();
+		} catch (IOException e) {
+			if (worker.process != null)
+				worker.process.destroyForcibly();
+		}
+
+		Thread reader = new Thread(() -> worker.receive(), "KeySearchCoordinator-" + workerIndex);
+
+		reader.setDaemon(true);
+		reader.start();
+
+		return worker;
+	}
+
+	/**
+	 * ワーカーからの通知
+	 */
+	private static class Event {
+		/** ワーカーの番地 */
+		final int workerIndex;
+		/** 通知元のワーカー */
+		final Worker worker;
+		/** 探索を終えた区間（終了の通知の場合はNULL） */
+		final long[] shard;
+		/** 区間の候補 */
+		final List<KeySearch.Candidate> hits;
+
+		/**
+		 * 通知を生成します。
+		 * 
+		 * @param worker 通知元のワーカー。
+		 * @param shard 探索を終えた区間。
+		 * ワーカーが終了した場合はNULLです。
+		 * @param hits 区間の候補。
+		 */
+		Event(Worker worker, long[] shard, List<KeySearch.Candidate> hits) {
+			this.workerIndex = worker.workerIndex;
+			this.worker = worker;
+			this.shard = shard;
+			this.hits = hits;
+		}
+	}
+
+	/**
+	 * ワーカープロセス
+	 */
+	private class Worker {
+		/** ワーカーの番地 */
+		final int workerIndex;
+		/** 割り当て済みで探索を終えていない区間（調整役のスレッドのみが操作） */
+		final List<long[]> shards = new ArrayList<long[]>();
+		/** プロセス */
+		Process process;
+		/** プロセスの標準入力 */
+		DataOutputStream out;
+		/** 再起動した回数 */
+		int restartNum = 0;
+
+		/**
+		 * 番地を基にワーカーを生成します。
+		 * 
+		 * @param workerIndex ワーカーの番地。
+		 */
+		Worker(int workerIndex) {
+			this.workerIndex = workerIndex;
+		}
+
+		/**
+		 * 区間を割り当てます。
+		 * 送信に失敗した場合は終了の通知を待ちます。
+		 * 
+		 * @param shard 区間の始点と終点の配列。
+		 */
+		void dispatch(long[] shard) {
+			shards.add(shard);
+
+			try {
+				out.writeByte(KeySearchWorker.MESSAGE_SHARD);
+				out.writeLong(shard[0]);
+				out.writeLong(shard[1]);
+				out.flush();
+			} catch (IOException e) {
+				process.destroyForcibly();
+			}
+		}
+
+		/**
+		 * 探索の終了を送り、プロセスを終了させます。
+		 */
+		void stop() {
+			if (process == null)
+				return;
+
+			try {
+				out.writeByte(KeySearchWorker.MESSAGE_STOP);
+				out.close();
+			} catch (IOException ignored) {
+				// 既に終了している
+			}
+
+			process.destroyForcibly();
+		}
+
+		/**
+		 * プロセスの標準出力から応答を受信し、通知へ変換します。
+		 * 区間の候補は探索の完了と同時に通知されるため、途中で終了した区間の候補が重複して集約されることはありません。
+		 */
+		void receive() {
+			if (process != null) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+					if (in.readByte() != KeySearchWorker.MESSAGE_READY || in.readLong() != fingerprint)
+						throw new IOException("Wiring table mismatch.");
+
+					List<KeySearch.Candidate> hits = new ArrayList<KeySearch.Candidate>();
+
+					while (true) {
+						byte type = in.readByte();
+
+						if (type == KeySearchWorker.MESSAGE_HIT) {
+							long key = in.readLong();
+
+							hits.add(new KeySearch.Candidate(key, in.readDouble()));
+						} else if (type == KeySearchWorker.MESSAGE_DONE) {
+							long start = in.readLong();
+
+							events.add(new Event(this, new long[] { start, in.readLong() }, hits));
+							hits = new ArrayList<KeySearch.Candidate>();
+						} else {
+							throw new IOException("Unknown message.");
+						}
+					}
+				} catch (IOException e) {
+					process.destroyForcibly();
+				}
+			}
+
+			events.add(new Event(this, null, null));
+		}
+	}
+
+	/**
+	 * 一時的な配線表ファイルのパスを生成します。
+	 * 仮想マシンの終了時に削除されます。
+	 * 
+	 * @return パス。
+	 * @throws IOException 生成に失敗した場合。
+	 */
+	public static Path createTempWiringPath() throws IOException {
+		File file = File.createTempFile("enigma", ".wiring");
+
+		file.deleteOnExit();
+
+		return file.toPath();
+	}
+}
@@ -0,0 +1,174 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 鍵の探索のワーカー
+ * {@link KeySearchCoordinator}から起動される別プロセスとして、割り当てられた区間の鍵を探索し、得点の高い鍵を返します。
+ * 通信は入出力ストリーム上の二値形式の電文で行われるため、パイプ以外の経路にも載せられます。
+ */
+public class KeySearchWorker {
+	/** 通信の識別子 */
+	static final int PROTOCOL_MAGIC = 0x454E4B57;
+	/** 通信の版数 */
+	static final int PROTOCOL_VERSION = 1;
+	/** 電文の種類：区間の割り当て（始点、終点） */
+	static final byte MESSAGE_SHARD = 1;
+	/** 電文の種類：探索の終了 */
+	static final byte MESSAGE_STOP = 2;
+	/** 電文の種類：準備の完了（配線表のハッシュ値） */
+	static final byte MESSAGE_READY = 3;
+	/** 電文の種類：候補（鍵、得点） */
+	static final byte MESSAGE_HIT = 4;
+	/** 電文の種類：区間の探索の完了（始点、終点） */
+	static final byte MESSAGE_DONE = 5;
+
+	/**
+	 * 標準入出力で探索の要求に応答します。
+	 * 標準出力は通信に使用されるため、以降の出力は標準エラー出力へ送られます。
+	 * 
+	 * @param args 引数。
+	 * 1番目の引数は同時に探索する区間の個数（既定は1）です。
+	 */
+	public static void main(String[] args) {
+		OutputStream out = new FileOutputStream(FileDescriptor.out);
+
+		System.setOut(System.err);
+
+		try {
+			serve(System.in, out, args.length > 0 ? Math.max(1, Integer.parseInt(args[0])) : 1);
+		} catch (IOException | NumberFormatException | InterruptedException e) {
+			System.err.println(e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * 探索の要求に応答します。
+	 * 要求元が探索の終了を送るか、入力が終端に達するまで戻りません。
+	 * 
+	 * @param input 要求の入力元。
+	 * @param output 応答の出力先。
+	 * @param threadNum 同時に探索する区間の個数。
+	 * @throws IOException 通信に失敗した場合や、要求が不正な場合。
+	 * @throws InterruptedException 探索の終了を待つ間に割り込まれた場合。
+	 */
+	public static void serve(InputStream input, OutputStream output, int threadNum)
+			throws IOException, InterruptedException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+
+		if (in.readInt() != PROTOCOL_MAGIC || in.readInt() != PROTOCOL_VERSION)
+			throw new IOException("Unknown protocol.");
+
+		Path wiringPath = Path.of(readString(in));
+		boolean includeRotorOrder = in.readBoolean();
+		String ciphertext = readString(in);
+		String crib = in.readBoolean() ? readString(in) : null;
+		int candidateNum = in.readInt();
+		Scrambler scrambler = new Scrambler(0);
+
+		if (scrambler.loadWiringTables(wiringPath) != 0)
+			throw new IOException("Invalid wiring table file.");
+
+		ScramblerCursor cursor = scrambler.createCursor();
+
+		out.writeByte(MESSAGE_READY);
+		out.writeLong(cursor.getFingerprint());
+		out.flush();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadNum);
+
+		try {
+			while (true) {
+				byte type;
+
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+
+				if (type == MESSAGE_STOP)
+					break;
+
+				if (type != MESSAGE_SHARD)
+					throw new IOException("Unknown message.");
+
+				long start = in.readLong();
+				long end = in.readLong();
+
+				executor.execute(() -> {
+					KeySearch search = new KeySearch(cursor, includeRotorOrder, ciphertext, crib, candidateNum, null);
+
+					search.searchRange(start, end);
+
+					try {
+						synchronized (out) {
+							for (KeySearch.Candidate candidate : search.getCandidates()) {
+								out.writeByte(MESSAGE_HIT);
+								out.writeLong(candidate.getKey());
+								out.writeDouble(candidate.getScore());
+							}
+
+							out.writeByte(MESSAGE_DONE);
+							out.writeLong(start);
+							out.writeLong(end);
+							out.flush();
+						}
+					} catch (IOException e) {
+						// 要求元が存在しないため、残りの区間を探索せずに終了する
+						System.exit(1);
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * 長さに制限のない文字列を書き込みます。
+	 * 
+	 * @param out 出力先。
+	 * @param text 文字列。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	static void writeString(DataOutputStream out, String text) throws IOException {
+		out.writeInt(text.length());
+		out.writeChars(text);
+	}
+
+	/**
+	 * {@link #writeString(DataOutputStream, String)}で書き込まれた文字列を読み込みます。
+	 * 
+	 * @param in 入力元。
+	 * @return 文字列。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+
+		if (length < 0)
+			throw new IOException("Invalid string length.");
+
+		char[] res = new char[length];
+
+		for (int i = 0; i < length; i++)
+			res[i] = in.readChar();
+
+		return new String(res);
+	}
+}
@@ -0,0 +1,305 @@
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 鍵空間
+ * ローターの順序と位相の組み合わせを、0から始まる一つの整数値（鍵）で表します。
+ * 鍵の下位の桁は{@link ScramblerCursor#getPosition()}の位置、上位の桁はローターの順序の通し番号です。
+ * 全ての鍵は均等に分割できる{@link Spliterator.OfLong}として走査でき、並列のストリームの各スレッドは再利用できるカーソルで鍵を設定します。
+ */
+public class KeySpace {
+	/** ローターの個数 */
+	private final int rotorNum;
+	/** ローターの順序を含む場合は真 */
+	private final boolean includeRotorOrder;
+	/** 位置の個数 */
+	private final long positionNum;
+	/** 鍵の個数 */
+	private final long size;
+
+	/**
+	 * カーソルの構成を基に鍵空間を生成します。
+	 * 
+	 * @param cursor カーソル。
+	 * @param includeRotorOrder ローターの順序を含む場合は真、位相のみの場合は偽。
+	 * @throws ArithmeticException 鍵の個数がlongで表現できない場合。
+	 */
+	public KeySpace(ScramblerCursor cursor, boolean includeRotorOrder) {
+		this(cursor.getCharSet().length(), cursor.getRotorNum(), includeRotorOrder);
+	}
+
+	/**
+	 * 文字セットの長さとローターの個数を基に鍵空間を生成します。
+	 * 
+	 * @param charSetLength 文字セットの長さ。
+	 * @param rotorNum ローターの個数。
+	 * @param includeRotorOrder ローターの順序を含む場合は真、位相のみの場合は偽。
+	 * @throws ArithmeticException 鍵の個数がlongで表現できない場合。
+	 */
+	public KeySpace(int charSetLength, int rotorNum, boolean includeRotorOrder) {
+		this.rotorNum = rotorNum;
+		this.includeRotorOrder = includeRotorOrder;
+
+		long count = 1;
+
+		for (int i = 0; i < rotorNum; i++)
+			count = Math.multiplyExact(count, charSetLength);
+
+		positionNum = count;
+
+		if (includeRotorOrder)
+			for (int i = 2; i <= rotorNum; i++)
+				count = Math.multiplyExact(count, i);
+
+		size = count;
+	}
+
+	/**
+	 * 鍵の個数を取得します。
+	 * 
+	 * @return 鍵の個数。
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * 位置の個数を取得します。
+	 * 
+	 * @return 文字セットの長さのローターの個数乗。
+	 */
+	public long getPositionNum() {
+		return positionNum;
+	}
+
+	/**
+	 * ローターの順序を含むか確認します。
+	 * 
+	 * @return ローターの順序を含む場合は真。
+	 */
+	public boolean isIncludeRotorOrder() {
+		return includeRotorOrder;
+	}
+
+	/**
+	 * 鍵に対応するローターの順序と位相をカーソルへ設定します。
+	 * 
+	 * @param key 鍵。
+	 * 0以上、鍵の個数未満の値です。
+	 * @param cursor 鍵空間と同じ構成のカーソル。
+	 */
+	public void apply(long key, ScramblerCursor cursor) {
+		if (includeRotorOrder)
+			cursor.setRotorOrder(getRotorOrder(key));
+
+		cursor.setPosition(key % positionNum);
+	}
+
+	/**
+	 * 鍵に対応するローターの順序を取得します。
+	 * 
+	 * @param key 鍵。
+	 * @return 各位置に配置するローターの、スクランブラーにおける番地の配列。
+	 */
+	public int[] getRotorOrder(long key) {
+		int[] res = new int[rotorNum];
+		long orderIndex = includeRotorOrder ? key / positionNum : 0;
+		boolean[] used = new boolean[rotorNum];
+
+		// 階乗進法で順列を復元する
+
+		long factorial = 1;
+
+		for (int i = 2; i < rotorNum; i++)
+			factorial *= i;
+
+		for (int i = 0; i < rotorNum; i++) {
+			int rank = (int) (orderIndex / factorial);
+
+			orderIndex %= factorial;
+
+			if (rotorNum - 1 - i > 0)
+				factorial /= rotorNum - 1 - i;
+
+			for (int j = 0; j < rotorNum; j++) {
+				if (!used[j] && rank-- == 0) {
+					res[i] = j;
+					used[j] = true;
+
+					break;
+				}
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * 鍵を視覚的な文字列として取得します。
+	 * 
+	 * @param key 鍵。
+	 * @param cursor 鍵空間と同じ構成のカーソル。
+	 * 位相とローターの順序は変更されます。
+	 * @return ローターの順序（1から始まる番地）と位相の文字列。
+	 */
+	public String describe(long key, ScramblerCursor cursor) {
+		StringBuffer res = new StringBuffer();
+
+		if (includeRotorOrder) {
+			for (int rotorIndex : getRotorOrder(key))
+				res.append((res.length() > 0 ? "-" : "") + (rotorIndex + 1));
+
+			res.append(' ');
+		}
+
+		apply(key, cursor);
+		res.append(cursor.getOffsetText());
+
+		return res.toString();
+	}
+
+	/**
+	 * 全ての鍵を昇順に走査する分割可能なイテレーターを取得します。
+	 * 分割は残りの鍵の範囲を半分ずつに分けるため、並列のストリームの各スレッドへ鍵が均等に割り当てられます。
+	 * 
+	 * @return イテレーター。
+	 */
+	public Spliterator.OfLong spliterator() {
+		return new KeySpliterator(0, size);
+	}
+
+	/**
+	 * 全ての鍵のストリームを取得します。
+	 * 鍵はボックス化されずに受け渡されます。
+	 * 並列に処理する場合は{@link #createLocalCursors(ScramblerCursor)}のカーソルで鍵を設定します。
+	 * 
+	 * @return 鍵の順次のストリーム。
+	 */
+	public LongStream keys() {
+		return StreamSupport.longStream(spliterator(), false);
+	}
+
+	/**
+	 * スレッドごとに一つのカーソルを保持するスレッドローカルを生成します。
+	 * 各スレッドのカーソルは最初の取得時に複製され、以降は鍵の設定のみで再利用されます。
+	 * 
+	 * @param cursor 鍵空間と同じ構成のカーソル。
+	 * 複製の元になるため、走査中に変更してはいけません。
+	 * @return スレッドローカル。
+	 */
+	public ThreadLocal<KeyCursor> createLocalCursors(ScramblerCursor cursor) {
+		return ThreadLocal.withInitial(() -> new KeyCursor(cursor.copy()));
+	}
+
+	/**
+	 * 鍵を設定し直して再利用するカーソル
+	 * ローターの順序は通し番号が変わった場合のみ設定し直されるため、連続した鍵の設定では配列を生成しません。
+	 */
+	public class KeyCursor {
+		/** カーソル */
+		private final ScramblerCursor cursor;
+		/** 設定されているローターの順序の通し番号 */
+		private long orderIndex = -1;
+
+		/**
+		 * カーソルを基に生成します。
+		 * 
+		 * @param cursor 鍵空間と同じ構成のカーソル。
+		 * 共有されずに専有されます。
+		 */
+		private KeyCursor(ScramblerCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		/**
+		 * 鍵に対応するローターの順序と位相を設定します。
+		 * 
+		 * @param key 鍵。
+		 * 0以上、鍵の個数未満の値です。
+		 * @return 設定されたカーソル。
+		 */
+		public ScramblerCursor seek(long key) {
+			if (includeRotorOrder && key / positionNum != orderIndex) {
+				orderIndex = key / positionNum;
+				cursor.setRotorOrder(getRotorOrder(key));
+			}
+
+			cursor.setPosition(key % positionNum);
+
+			return cursor;
+		}
+	}
+
+	/**
+	 * 鍵の範囲の分割可能なイテレーター
+	 */
+	private static class KeySpliterator implements Spliterator.OfLong {
+		/** 次の鍵 */
+		private long origin;
+		/** 範囲の終点 */
+		private final long fence;
+
+		/**
+		 * 鍵の範囲を基に生成します。
+		 * 
+		 * @param origin 範囲の始点。
+		 * @param fence 範囲の終点。
+		 */
+		private KeySpliterator(long origin, long fence) {
+			this.origin = origin;
+			this.fence = fence;
+		}
+
+		@Override
+		public Spliterator.OfLong trySplit() {
+			long middle = origin + (fence - origin) / 2;
+
+			if (middle <= origin)
+				return null;
+
+			KeySpliterator res = new KeySpliterator(origin, middle);
+
+			origin = middle;
+
+			return res;
+		}
+
+		@Override
+		public boolean tryAdvance(LongConsumer action) {
+			if (origin >= fence)
+				return false;
+
+			action.accept(origin++);
+
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(LongConsumer action) {
+			long key = origin;
+
+			origin = fence;
+
+			for (; key < fence; key++)
+				action.accept(key);
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - origin;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+
+		@Override
+		public Comparator<? super Long> getComparator() {
+			return null;
+		}
+	}
+}
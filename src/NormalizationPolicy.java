@@ -0,0 +1,185 @@
+import java.text.Normalizer;
+
+/**
+ * 入力の正規化方針
+ * 大文字への変換、アクセント記号の除去、文字セットに存在しない文字の扱い（そのまま出力／削除／置換）を定めます。
+ * 方針は文字セットと組み合わせて一つの表へ変換され、変換時は1文字につき1回の表の参照のみで正規化されます。
+ * インスタンスは不変です。
+ */
+public class NormalizationPolicy {
+	/** 文字セットに存在しない文字の扱い：そのまま出力 */
+	public static final int RULE_PASS = 0;
+	/** 文字セットに存在しない文字の扱い：削除 */
+	public static final int RULE_DROP = 1;
+	/** 文字セットに存在しない文字の扱い：置換 */
+	public static final int RULE_REPLACE = 2;
+	/** 正規化の表における削除を示す要素 */
+	public static final int DROP = Integer.MIN_VALUE;
+
+	/** 小文字を大文字へ変換する場合は真 */
+	private final boolean caseFolding;
+	/** アクセント記号を除去する場合は真 */
+	private final boolean accentStripping;
+	/** 文字セットに存在しない文字の扱い */
+	private final int unknownRule;
+	/** 置換後の文字 */
+	private final char replacement;
+
+	/**
+	 * 何も正規化せず、文字セットに存在しない文字をそのまま出力する方針を生成します。
+	 */
+	public NormalizationPolicy() {
+		this(false, false, RULE_PASS, '\0');
+	}
+
+	/**
+	 * 方針を生成します。
+	 * 
+	 * @param caseFolding 小文字を大文字へ変換する場合は真。
+	 * @param accentStripping アクセント記号を除去する場合は真。
+	 * @param unknownRule 文字セットに存在しない文字の扱い（RULE_PASS、RULE_DROP、RULE_REPLACE）。
+	 * @param replacement 置換後の文字。
+	 * 文字セットに存在する文字の場合は置換後に変換されます。
+	 */
+	public NormalizationPolicy(boolean caseFolding, boolean accentStripping, int unknownRule, char replacement) {
+		this.caseFolding = caseFolding;
+		this.accentStripping = accentStripping;
+		this.unknownRule = unknownRule;
+		this.replacement = replacement;
+	}
+
+	/**
+	 * 小文字を大文字へ変換するか確認します。
+	 * 
+	 * @return 変換する場合は真。
+	 */
+	public boolean isCaseFolding() {
+		return caseFolding;
+	}
+
+	/**
+	 * 大文字への変換のみを変更した方針を取得します。
+	 * 
+	 * @param newCaseFolding 小文字を大文字へ変換する場合は真。
+	 * @return 新しい方針。
+	 */
+	public NormalizationPolicy withCaseFolding(boolean newCaseFolding) {
+		return new NormalizationPolicy(newCaseFolding, accentStripping, unknownRule, replacement);
+	}
+
+	/**
+	 * アクセント記号を除去するか確認します。
+	 * 
+	 * @return 除去する場合は真。
+	 */
+	public boolean isAccentStripping() {
+		return accentStripping;
+	}
+
+	/**
+	 * アクセント記号の除去のみを変更した方針を取得します。
+	 * 
+	 * @param newAccentStripping アクセント記号を除去する場合は真。
+	 * @return 新しい方針。
+	 */
+	public NormalizationPolicy withAccentStripping(boolean newAccentStripping) {
+		return new NormalizationPolicy(caseFolding, newAccentStripping, unknownRule, replacement);
+	}
+
+	/**
+	 * 文字セットに存在しない文字の扱いを取得します。
+	 * 
+	 * @return RULE_PASS、RULE_DROP、RULE_REPLACEのいずれか。
+	 */
+	public int getUnknownRule() {
+		return unknownRule;
+	}
+
+	/**
+	 * 置換後の文字を取得します。
+	 * 
+	 * @return 置換後の文字。
+	 */
+	public char getReplacement() {
+		return replacement;
+	}
+
+	/**
+	 * 文字セットに存在しない文字の扱いのみを変更した方針を取得します。
+	 * 
+	 * @param newUnknownRule 文字セットに存在しない文字の扱い（RULE_PASS、RULE_DROP、RULE_REPLACE）。
+	 * @param newReplacement 置換後の文字。
+	 * @return 新しい方針。
+	 */
+	public NormalizationPolicy withUnknownRule(int newUnknownRule, char newReplacement) {
+		return new NormalizationPolicy(caseFolding, accentStripping, newUnknownRule, newReplacement);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof NormalizationPolicy policy))
+			return false;
+
+		return caseFolding == policy.caseFolding && accentStripping == policy.accentStripping
+				&& unknownRule == policy.unknownRule && replacement == policy.replacement;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((Boolean.hashCode(caseFolding) * 31 + Boolean.hashCode(accentStripping)) * 31 + unknownRule) * 31
+				+ replacement;
+	}
+
+	/**
+	 * 方針と文字セットを基に正規化の表を生成します。
+	 * 
+	 * @param charSet 文字セット。
+	 * @return 全ての文字コードを添字とする表。
+	 * 正規化後に文字セットに存在する文字の要素は文字セットにおける番地（0以上）です。
+	 * 削除する文字の要素は{@link #DROP}です。
+	 * 変換せずに出力する文字の要素は、出力する文字のビット反転（負の値）です。
+	 */
+	public int[] compile(String charSet) {
+		int[] charIndexTable = Utility.createCharIndexTable(charSet);
+		int replacementIndex = Utility.getCharIndex(charIndexTable, replacement);
+		int[] res = new int[Character.MAX_VALUE + 1];
+
+		for (int i = 0; i < res.length; i++) {
+			char charCode = normalize((char) i);
+			int charSetIndex = Utility.getCharIndex(charIndexTable, charCode);
+
+			if (charSetIndex != -1) {
+				res[i] = charSetIndex;
+			} else if (unknownRule == RULE_DROP) {
+				res[i] = DROP;
+			} else if (unknownRule == RULE_REPLACE) {
+				res[i] = replacementIndex != -1 ? replacementIndex : ~replacement;
+			} else {
+				res[i] = ~charCode;
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * 1文字を正規化します。
+	 * 
+	 * @param charCode 文字。
+	 * @return アクセント記号の除去と大文字への変換を適用した文字。
+	 */
+	private char normalize(char charCode) {
+		if (accentStripping && charCode >= 0x80 && !Character.isSurrogate(charCode)) {
+			String decomposed = Normalizer.normalize(String.valueOf(charCode), Normalizer.Form.NFD);
+			boolean marksOnly = decomposed.length() > 1;
+
+			for (int i = 1; i < decomposed.length(); i++)
+				marksOnly &= Character.getType(decomposed.charAt(i)) == Character.NON_SPACING_MARK;
+
+			if (marksOnly)
+				charCode = decomposed.charAt(0);
+		}
+
+		return caseFolding ? Character.toUpperCase(charCode) : charCode;
+	}
+}
@@ -9,8 +9,8 @@ import java.util.stream.IntStream;
 public class Reflector {
 	/** リフレクターの入力文字セット */
 	private String charSet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-	/** リフレクターの出力文字セット */
-	private String charSetPair;
+	/** リフレクターの配線表 */
+	private WiringTable table;
 
 	/**
 	 * シード値を基に標準的な英字[A-Z]が設定されたリフレクターを生成します。
@@ -43,6 +43,18 @@ public class Reflector {
 		generateCharSetPair(seed);
 	}
 
+	/**
+	 * 配線表を基にリフレクターを生成します。
+	 * 配線表は複製されずに共有されます。
+	 * 
+	 * @param charSet 入力文字セット。
+	 * @param table 配線表。
+	 */
+	Reflector(String charSet, WiringTable table) {
+		this.charSet = charSet;
+		this.table = table;
+	}
+
 	// Char set
 
 	/**
@@ -54,6 +66,62 @@ public class Reflector {
 		return charSet;
 	}
 
+	/**
+	 * 入力文字セットを変更したリフレクターを生成します。
+	 * 新旧の文字セットに共通する文字同士の対応関係は維持され、残りの文字はシード値を基に対応付けられます。
+	 * 長さが等しく構成する文字が異なる場合は、配線表が番地の対応関係のまま共有されます。
+	 * 
+	 * @param newCharSet 新しい入力文字セット。
+	 * 長さが2以上かつ偶数の文字列です。
+	 * @param seed シード値。
+	 * 対応関係を維持できない文字の出力文字は一意に決定されます。
+	 * 負の値が指定された場合はランダムに決定されます。
+	 * @return 入力文字セットを変更したリフレクター。
+	 * 入力文字セットが変わらない場合はこのインスタンスが返されます。
+	 */
+	Reflector remap(String newCharSet, int seed) {
+		if (charSet.equals(newCharSet))
+			return this;
+
+		int[] newCharIndexTable = Utility.createCharIndexTable(newCharSet);
+		int n = newCharSet.length();
+		boolean isSameChars = n == charSet.length();
+
+		for (int i = 0; i < charSet.length() && isSameChars; i++)
+			isSameChars = Utility.getCharIndex(newCharIndexTable, charSet.charAt(i)) != -1;
+
+		if (!isSameChars && n == charSet.length())
+			return new Reflector(newCharSet, table);
+
+		int[] values = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			int oldIndex = charSet.indexOf(newCharSet.charAt(i));
+			int oldPairIndex = oldIndex != -1 ? table.get(oldIndex) : -1;
+
+			values[i] = oldPairIndex != -1 && table.get(oldPairIndex) == oldIndex
+					? Utility.getCharIndex(newCharIndexTable, charSet.charAt(oldPairIndex))
+					: -1;
+		}
+
+		Random random = seed >= 0 ? new Random(seed) : new Random();
+		List<Integer> unpairedIndexBuf = IntStream.range(0, n).filter(i -> values[i] == -1).boxed()
+				.collect(Collectors.toList());
+
+		while (unpairedIndexBuf.size() >= 2) {
+			int targetIndex = unpairedIndexBuf.remove(0);
+			int pickupIndex = unpairedIndexBuf.remove(random.nextInt(unpairedIndexBuf.size()));
+
+			values[targetIndex] = pickupIndex;
+			values[pickupIndex] = targetIndex;
+		}
+
+		for (int unpairedIndex : unpairedIndexBuf)
+			values[unpairedIndex] = unpairedIndex;
+
+		return new Reflector(newCharSet, WiringTable.of(values));
+	}
+
 	// Char set pair
 
 	/**
@@ -85,7 +153,7 @@ public class Reflector {
 			charSetPairBuf[pickupIndex] = charSet.charAt(i);
 		}
 
-		charSetPair = new String(charSetPairBuf);
+		table = WiringTable.of(charSet, new String(charSetPairBuf));
 	}
 
 	/**
@@ -94,7 +162,7 @@ public class Reflector {
 	 * @return 出力文字セット。
 	 */
 	public String getCharSetPair() {
-		return charSetPair;
+		return table.toCharSetPair(charSet);
 	}
 
 	/**
@@ -125,11 +193,22 @@ public class Reflector {
 
 		// Set
 
-		charSetPair = newCharSetPair;
+		table = WiringTable.of(charSet, newCharSetPair);
 
 		return 0;
 	}
 
+	// Wiring table
+
+	/**
+	 * 配線表を取得します。
+	 * 
+	 * @return 出力文字セットの各文字の入力文字セットにおける番地を要素とする配線表。
+	 */
+	WiringTable getTable() {
+		return table;
+	}
+
 	// Function
 
 	/**
@@ -140,12 +219,19 @@ public class Reflector {
 	 * @return 変換された文字。
 	 */
 	public char convertChar(char charCode) {
-		int charSetIndex = charSet.indexOf(charCode);
+		int charSetIndex = convertIndex(charSet.indexOf(charCode));
 
-		if (charSetIndex != -1) {
-			return charSetPair.charAt(charSetIndex);
-		} else {
-			return 0;
-		}
+		return charSetIndex != -1 ? charSet.charAt(charSetIndex) : 0;
+	}
+
+	/**
+	 * 文字セットの番地を変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * -1が指定された場合は-1が返されます。
+	 * @return 変換された文字の番地。
+	 */
+	public int convertIndex(int charSetIndex) {
+		return charSetIndex != -1 ? table.get(charSetIndex) : -1;
 	}
 }
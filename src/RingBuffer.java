@@ -0,0 +1,188 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * リングバッファー
+ * 一つの生産者スレッドと一つの消費者スレッドの間で、ロックを使用せずに要素を受け渡す固定長の待ち行列です。
+ * 待機するスレッドは短く回転した後に休止し、相手のスレッドが要素を追加もしくは取り出した時に起こされます。
+ * 
+ * @param <E> 要素の型。
+ */
+public class RingBuffer<E> {
+	/** 休止する前に回転する回数 */
+	private static final int SPIN_NUM = 128;
+	/** 回転の後、休止する前に他のスレッドへ実行を譲る回数（単一のプロセッサーで相手のスレッドに要素をまとめて処理させる） */
+	private static final int YIELD_NUM = 4;
+
+	/** 要素 */
+	private final Object[] elements;
+	/** 番地の剰余を求める際のマスク */
+	private final int mask;
+	/** 次に取り出す要素の通し番号（消費者のみが更新） */
+	private final AtomicLong head = new AtomicLong();
+	/** 次に追加する要素の通し番号（生産者のみが更新） */
+	private final AtomicLong tail = new AtomicLong();
+	/** 生産者が最後に読み取った取り出し位置 */
+	private long headCache = 0;
+	/** 消費者が最後に読み取った追加位置 */
+	private long tailCache = 0;
+	/** 空のために休止している消費者スレッド */
+	private final AtomicReference<Thread> waitingConsumer = new AtomicReference<Thread>();
+	/** 満杯のために休止している生産者スレッド */
+	private final AtomicReference<Thread> waitingProducer = new AtomicReference<Thread>();
+
+	/**
+	 * 容量を基にリングバッファーを生成します。
+	 * 
+	 * @param capacity 容量。
+	 * 2の累乗に切り上げられます。
+	 */
+	public RingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+		elements = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * 要素を追加します。
+	 * 生産者スレッドのみが呼び出せます。
+	 * 
+	 * @param element 要素。
+	 * NULL以外の値です。
+	 * @return 追加された場合は真、満杯の場合は偽。
+	 */
+	public boolean offer(E element) {
+		long currentTail = tail.get();
+
+		if (currentTail - headCache == elements.length) {
+			headCache = head.get();
+
+			if (currentTail - headCache == elements.length)
+				return false;
+		}
+
+		elements[(int) currentTail & mask] = element;
+		tail.set(currentTail + 1);
+		wake(waitingConsumer);
+
+		return true;
+	}
+
+	/**
+	 * 要素を取り出します。
+	 * 消費者スレッドのみが呼び出せます。
+	 * 
+	 * @return 要素。
+	 * 空の場合はNULLが返されます。
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long currentHead = head.get();
+
+		if (currentHead == tailCache) {
+			tailCache = tail.get();
+
+			if (currentHead == tailCache)
+				return null;
+		}
+
+		int index = (int) currentHead & mask;
+		E res = (E) elements[index];
+
+		elements[index] = null;
+		head.set(currentHead + 1);
+		wake(waitingProducer);
+
+		return res;
+	}
+
+	/**
+	 * 空きができるまで待機してから要素を追加します。
+	 * 
+	 * @param element 要素。
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public void put(E element) throws InterruptedException {
+		int count = 0;
+
+		while (!offer(element))
+			idle(count++, waitingProducer);
+
+		endIdle(count, waitingProducer);
+	}
+
+	/**
+	 * 要素が追加されるまで待機してから取り出します。
+	 * 
+	 * @return 要素。
+	 * @throws InterruptedException 待機中に割り込まれた場合。
+	 */
+	public E take() throws InterruptedException {
+		E res;
+		int count = 0;
+
+		while ((res = poll()) == null)
+			idle(count++, waitingConsumer);
+
+		endIdle(count, waitingConsumer);
+
+		return res;
+	}
+
+	/**
+	 * 待機の回数に応じて、回転、実行の譲渡、休止するスレッドとしての登録、休止のいずれかを行います。
+	 * 登録した直後は休止せずに戻るため、呼び出し元は登録後に条件を確認し直してから休止することになり、起こされる機会を逃しません。
+	 * 起こされると登録は解除されるため、条件が満たされていなければ再び登録してから休止します。
+	 * 
+	 * @param count 待機の回数。
+	 * @param waiter 休止するスレッドの登録先。
+	 * 条件を満たした側のスレッドが{@link #wake(AtomicReference)}で起こします。
+	 * @throws InterruptedException 割り込まれた場合。
+	 */
+	static void idle(int count, AtomicReference<Thread> waiter) throws InterruptedException {
+		if (count < SPIN_NUM) {
+			Thread.onSpinWait();
+		} else if (count < SPIN_NUM + YIELD_NUM) {
+			Thread.yield();
+		} else if (waiter.get() == null) {
+			waiter.set(Thread.currentThread());
+		} else {
+			LockSupport.park(waiter);
+
+			if (Thread.interrupted()) {
+				waiter.set(null);
+
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * 待機を終了し、休止するスレッドとしての登録を解除します。
+	 * 
+	 * @param count {@link #idle(int, AtomicReference)}を呼び出した回数。
+	 * @param waiter 休止するスレッドの登録先。
+	 */
+	static void endIdle(int count, AtomicReference<Thread> waiter) {
+		if (count > SPIN_NUM + YIELD_NUM && waiter.get() != null)
+			waiter.set(null);
+	}
+
+	/**
+	 * 休止しているスレッドが登録されていれば、登録を解除して起こします。
+	 * 登録がない場合は書き込みを行わないため、要素の受け渡しごとに呼び出しても負荷は小さく済みます。
+	 * 
+	 * @param waiter 休止するスレッドの登録先。
+	 */
+	static void wake(AtomicReference<Thread> waiter) {
+		if (waiter.get() == null)
+			return;
+
+		Thread thread = waiter.getAndSet(null);
+
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+}
@@ -9,8 +9,10 @@ import java.util.stream.IntStream;
 public class Rotor {
 	/** ローターの入力文字セット */
 	private String charSet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-	/** ローターの出力文字セット */
-	private String charSetPair;
+	/** ローターの配線表 */
+	private WiringTable forwardTable;
+	/** ローターの逆引きの配線表 */
+	private WiringTable reverseTable;
 	/** ローターの位相 */
 	private int offset = 0;
 
@@ -45,6 +47,20 @@ public class Rotor {
 		generateCharSetPair(seed);
 	}
 
+	/**
+	 * 配線表を基にローターを生成します。
+	 * 配線表は複製されずに共有されます。
+	 * 
+	 * @param charSet 入力文字セット。
+	 * @param forwardTable 配線表。
+	 * @param reverseTable 逆引きの配線表。
+	 */
+	Rotor(String charSet, WiringTable forwardTable, WiringTable reverseTable) {
+		this.charSet = charSet;
+		this.forwardTable = forwardTable;
+		this.reverseTable = reverseTable;
+	}
+
 	// Char set
 
 	/**
@@ -56,6 +72,72 @@ public class Rotor {
 		return charSet;
 	}
 
+	/**
+	 * 入力文字セットを変更したローターを生成します。
+	 * 新旧の文字セットに共通する文字の対応関係は維持され、残りの文字はシード値を基に対応付けられます。
+	 * 長さが等しく構成する文字が異なる場合は、配線表が番地の対応関係のまま共有されます。
+	 * 位相は対応する文字が新しい文字セットに存在する場合に維持され、存在しない場合は初期化されます。
+	 * 
+	 * @param newCharSet 新しい入力文字セット。
+	 * @param seed シード値。
+	 * 対応関係を維持できない文字の出力文字は一意に決定されます。
+	 * 負の値が指定された場合はランダムに決定されます。
+	 * @return 入力文字セットを変更したローター。
+	 * 入力文字セットが変わらない場合はこのインスタンスが返されます。
+	 */
+	Rotor remap(String newCharSet, int seed) {
+		if (charSet.equals(newCharSet))
+			return this;
+
+		int[] newCharIndexTable = Utility.createCharIndexTable(newCharSet);
+		int n = newCharSet.length();
+		int newOffset = Utility.getCharIndex(newCharIndexTable, charSet.charAt(offset));
+		boolean isSameChars = n == charSet.length();
+
+		for (int i = 0; i < charSet.length() && isSameChars; i++)
+			isSameChars = Utility.getCharIndex(newCharIndexTable, charSet.charAt(i)) != -1;
+
+		if (!isSameChars && n == charSet.length()) {
+			Rotor res = new Rotor(newCharSet, forwardTable, reverseTable);
+
+			res.offset = offset;
+
+			return res;
+		}
+
+		int[] values = new int[n];
+		boolean[] used = new boolean[n];
+
+		for (int i = 0; i < n; i++) {
+			int oldIndex = charSet.indexOf(newCharSet.charAt(i));
+			int newPairIndex = oldIndex != -1
+					? Utility.getCharIndex(newCharIndexTable, charSet.charAt(forwardTable.get(oldIndex)))
+					: -1;
+
+			if (newPairIndex != -1 && !used[newPairIndex]) {
+				values[i] = newPairIndex;
+				used[newPairIndex] = true;
+			} else {
+				values[i] = -1;
+			}
+		}
+
+		Random random = seed >= 0 ? new Random(seed) : new Random();
+		List<Integer> unusedIndexBuf = IntStream.range(0, n).filter(i -> !used[i]).boxed()
+				.collect(Collectors.toList());
+
+		for (int i = 0; i < n; i++)
+			if (values[i] == -1)
+				values[i] = unusedIndexBuf.remove(random.nextInt(unusedIndexBuf.size()));
+
+		Rotor res = new Rotor(newCharSet, null, null);
+
+		res.setWiringTable(WiringTable.of(values));
+		res.offset = newOffset != -1 ? newOffset : 0;
+
+		return res;
+	}
+
 	// Char set pair
 
 	/**
@@ -76,7 +158,7 @@ public class Rotor {
 			charSetPairBuf.append(charSet
 					.charAt(charSetPairCombineIndexBuf.remove(random.nextInt(charSetPairCombineIndexBuf.size()))));
 
-		charSetPair = charSetPairBuf.toString();
+		setWiringTable(WiringTable.of(charSet, charSetPairBuf.toString()));
 	}
 
 	/**
@@ -85,7 +167,7 @@ public class Rotor {
 	 * @return 出力文字セット。
 	 */
 	public String getCharSetPair() {
-		return charSetPair;
+		return forwardTable.toCharSetPair(charSet);
 	}
 
 	/**
@@ -109,11 +191,42 @@ public class Rotor {
 
 		// Set
 
-		charSetPair = newCharSetPair;
+		setWiringTable(WiringTable.of(charSet, newCharSetPair));
 
 		return 0;
 	}
 
+	// Wiring table
+
+	/**
+	 * 配線表を取得します。
+	 * 
+	 * @return 出力文字セットの各文字の入力文字セットにおける番地を要素とする配線表。
+	 */
+	WiringTable getForwardTable() {
+		return forwardTable;
+	}
+
+	/**
+	 * 逆引きの配線表を取得します。
+	 * 
+	 * @return 入力文字セットの各文字の出力文字セットにおける番地を要素とする配線表。
+	 */
+	WiringTable getReverseTable() {
+		return reverseTable;
+	}
+
+	/**
+	 * 配線表を設定します。
+	 * 逆引きの配線表は自動的に生成されます。
+	 * 
+	 * @param newForwardTable 新しい配線表。
+	 */
+	private void setWiringTable(WiringTable newForwardTable) {
+		forwardTable = newForwardTable;
+		reverseTable = newForwardTable.inverse();
+	}
+
 	// Offset
 
 	/**
@@ -196,15 +309,9 @@ public class Rotor {
 	 * @return 変換された文字。
 	 */
 	public char convertChar(char charCode) {
-		int charSetIndex = charSet.indexOf(charCode);
+		int charSetIndex = convertIndex(charSet.indexOf(charCode));
 
-		if (charSetIndex != -1) {
-			int charSetPairIndex = Utility.getCycleInt(charSetIndex + offset, charSetPair.length());
-
-			return charSetPair.charAt(charSetPairIndex);
-		} else {
-			return 0;
-		}
+		return charSetIndex != -1 ? charSet.charAt(charSetIndex) : 0;
 	}
 
 	/**
@@ -215,14 +322,41 @@ public class Rotor {
 	 * @return 変換された文字。
 	 */
 	public char convertReverseChar(char charCode) {
-		int charSetIndex = charSetPair.indexOf(charCode);
+		int charSetIndex = convertReverseIndex(charSet.indexOf(charCode));
 
-		if (charSetIndex != -1) {
-			int charSetPairIndex = Utility.getCycleInt(charSetIndex - offset, charSetPair.length());
+		return charSetIndex != -1 ? charSet.charAt(charSetIndex) : 0;
+	}
 
-			return charSet.charAt(charSetPairIndex);
-		} else {
-			return 0;
-		}
+	/**
+	 * 文字セットの番地を変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * -1が指定された場合は-1が返されます。
+	 * @return 変換された文字の番地。
+	 */
+	public int convertIndex(int charSetIndex) {
+		if (charSetIndex == -1)
+			return -1;
+
+		int charSetPairIndex = charSetIndex + offset;
+
+		return forwardTable.get(charSetPairIndex < charSet.length() ? charSetPairIndex
+				: charSetPairIndex - charSet.length());
+	}
+
+	/**
+	 * 文字セットの番地を逆変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * -1が指定された場合や対応する文字が存在しない場合は-1が返されます。
+	 * @return 変換された文字の番地。
+	 */
+	public int convertReverseIndex(int charSetIndex) {
+		if (charSetIndex == -1 || (charSetIndex = reverseTable.get(charSetIndex)) == -1)
+			return -1;
+
+		int charSetPairIndex = charSetIndex - offset;
+
+		return charSetPairIndex >= 0 ? charSetPairIndex : charSetPairIndex + charSet.length();
 	}
 }
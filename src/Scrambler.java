@@ -1,13 +1,64 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
 /**
  * スクランブラー
  */
 public class Scrambler {
+	/** 配線表ファイルの識別子 */
+	private static final int WIRING_FILE_MAGIC = 0x454E4754;
+	/** 配線表ファイルの版数 */
+	private static final int WIRING_FILE_VERSION = 1;
+	/** 配線表ファイルに格納できるローターの最大の個数（リフレクターと合わせた配線表の個数が配列の上限を超えない） */
+	private static final int MAX_WIRING_ROTOR_NUM = (Integer.MAX_VALUE - 1) / 2 - 1;
+	/** 配線表ファイルの先頭（識別子、版数、文字セットの長さ、ローターの個数）の長さ（バイト） */
+	private static final int WIRING_FILE_HEADER_SIZE = Integer.BYTES * 4;
+	/** 状態の識別子 */
+	private static final int STATE_MAGIC = 0x454E4753;
+	/** 状態の版数 */
+	private static final byte STATE_VERSION = 1;
+	/** 状態のフラグ：配線表を含む */
+	private static final int STATE_FLAG_INLINE_WIRING = 1;
+	/** 状態のフラグ：小文字を大文字へ変換する */
+	private static final int STATE_FLAG_CASE_FOLDING = 1 << 1;
+	/** 状態のフラグ：アクセント記号を除去する */
+	private static final int STATE_FLAG_ACCENT_STRIPPING = 1 << 2;
+	/** 配線表の鍵の長さ（バイト） */
+	private static final int WIRING_KEY_SIZE = 32;
+	/** メモリー使用量の概算：オブジェクト1個あたりの長さ（64ビットのJVMのヘッダーと数個の参照のフィールド、バイト） */
+	private static final int ESTIMATED_OBJECT_SIZE = 64;
+	/** メモリー使用量の概算：配列のヘッダーの長さ（バイト） */
+	private static final int ESTIMATED_ARRAY_HEADER_SIZE = 16;
+	/** メモリー使用量の概算：参照の長さ（圧縮されない場合、バイト） */
+	private static final int ESTIMATED_REFERENCE_SIZE = 8;
+
 	/** ローターとリフレクターの文字セット */
 	private String charSet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	/** 文字セットの逆引きの表 */
+	private int[] charIndexTable;
+	/** 入力の正規化方針 */
+	private NormalizationPolicy normalizationPolicy = new NormalizationPolicy();
+	/** 正規化の表 */
+	private int[] normalizationTable;
 	/** ローター */
 	private Rotor[] rotors;
 	/** リフレクター */
 	private Reflector reflector;
+	/** 変換方式（構成の変更後、次の変換時に選択） */
+	private ConversionEngine engine = null;
+	/** 最後に較正で選択された変換方式 */
+	private ConversionEngine calibratedEngine = null;
+	/** 展開した表のキャッシュ（NULLの場合は使用しない） */
+	private TableCache tableCache = null;
 
 	/**
 	 * 標準的な英字[A-Z]が設定されたスクランブラーを生成します。
@@ -35,6 +86,40 @@ public class Scrambler {
 		setScramblerKit(rotorNum);
 	}
 
+	/**
+	 * 配線表を共有し、位相と正規化方針を複製したスクランブラーを生成します。
+	 * 変換方式が選択済みの場合は、表と較正の結果も共有されます。
+	 * 
+	 * @param source 複製元のスクランブラー。
+	 */
+	private Scrambler(Scrambler source) {
+		charSet = source.charSet;
+		charIndexTable = source.charIndexTable;
+		normalizationPolicy = source.normalizationPolicy;
+		normalizationTable = source.normalizationTable;
+		rotors = new Rotor[source.rotors.length];
+		reflector = new Reflector(charSet, source.reflector.getTable());
+		tableCache = source.tableCache;
+		engine = source.engine != null ? source.engine.fork() : null;
+		calibratedEngine = source.calibratedEngine;
+
+		for (int i = 0; i < rotors.length; i++) {
+			rotors[i] = new Rotor(charSet, source.rotors[i].getForwardTable(), source.rotors[i].getReverseTable());
+			rotors[i].setOffset(source.rotors[i].getOffset());
+		}
+	}
+
+	/**
+	 * 現在の構成の複製を取得します。
+	 * 配線表は読み取り専用で共有されるため、複製の構成や位相を変更しても元のスクランブラーには影響しません。
+	 * 変換方式が選択済みの場合は、較正をやり直さずに表を共有します。
+	 * 
+	 * @return 複製されたスクランブラー。
+	 */
+	public Scrambler copy() {
+		return new Scrambler(this);
+	}
+
 	// Char set
 
 	/**
@@ -48,6 +133,8 @@ public class Scrambler {
 
 	/**
 	 * 文字セットを設定します。
+	 * 既存のローターとリフレクターの対応関係は、新旧の文字セットに共通する文字について維持されます。
+	 * 長さが等しく構成する文字が異なる場合は、番地の対応関係がそのまま維持されます。
 	 * 
 	 * @param newCharSet 新しい文字セット。
 	 * 重複した文字が存在しない、長さが2以上かつ偶数の文字列です。
@@ -68,12 +155,40 @@ public class Scrambler {
 			return 3;
 
 		charSet = newCharSet;
+		charIndexTable = Utility.createCharIndexTable(charSet);
+		normalizationTable = normalizationPolicy.compile(charSet);
+
+		for (int i = 0; i < rotors.length; i++)
+			rotors[i] = rotors[i].remap(charSet, i + 1);
 
-		setScramblerKit(rotors.length);
+		reflector = reflector.remap(charSet, 0);
+		engine = null;
 
 		return 0;
 	}
 
+	// Normalization
+
+	/**
+	 * 入力の正規化方針を取得します。
+	 * 
+	 * @return 正規化方針。
+	 */
+	public NormalizationPolicy getNormalizationPolicy() {
+		return normalizationPolicy;
+	}
+
+	/**
+	 * 入力の正規化方針を設定します。
+	 * 方針は文字セットと組み合わせた表へ変換され、{@link #convertText(String)}で参照されます。
+	 * 
+	 * @param newNormalizationPolicy 新しい正規化方針。
+	 */
+	public void setNormalizationPolicy(NormalizationPolicy newNormalizationPolicy) {
+		normalizationPolicy = newNormalizationPolicy;
+		normalizationTable = normalizationPolicy.compile(charSet);
+	}
+
 	// Char set pair
 
 	/**
@@ -113,6 +228,8 @@ public class Scrambler {
 	 */
 	public int setRotorCharSetPair(int rotorIndex, String charSetPair) { // => error code
 		if (rotorIndex >= 0 && rotorIndex < rotors.length) {
+			engine = null;
+
 			return rotors[rotorIndex].setCharSetPair(charSetPair);
 		} else {
 			return 3;
@@ -130,6 +247,8 @@ public class Scrambler {
 	 * 正常に設定された場合は0が返されます。
 	 */
 	public int setReflectorCharSetPair(String charSetPair) { // => error code
+		engine = null;
+
 		return reflector.setCharSetPair(charSetPair);
 	}
 
@@ -160,7 +279,7 @@ public class Scrambler {
 
 	/**
 	 * ローターの個数を（再）設定します。
-	 * このメソッドが実行されると全てのローターとリフレクターが初期化されます。
+	 * 既存のローターとリフレクターは維持され、増えたローターのみが生成されます。
 	 * 
 	 * @param newRotorNum ローターの個数。
 	 * 0の場合はリフレクターのみで構成された単一換字式暗号機になります。
@@ -172,7 +291,13 @@ public class Scrambler {
 		if (newRotorNum < 0)
 			return 1;
 
-		setScramblerKit(newRotorNum);
+		Rotor[] newRotors = Arrays.copyOf(rotors, newRotorNum);
+
+		for (int i = rotors.length; i < newRotorNum; i++)
+			newRotors[i] = new Rotor(i + 1, charSet);
+
+		rotors = newRotors;
+		engine = null;
 
 		return 0;
 	}
@@ -204,6 +329,680 @@ public class Scrambler {
 		return errorFlag ? 3 : 0;
 	}
 
+	// Wiring table
+
+	/**
+	 * 全ての入力に出力が対応するかを判定します。
+	 * 出力文字セットに重複した文字を含むローターやリフレクターがある場合、変換後の文字に対応する文字が存在せずNUL文字が出力されることがあります。
+	 * 
+	 * @return リフレクターと全てのローターの配線表（逆引きを含む）の全ての要素が対応する場合は真。
+	 */
+	public boolean isBijective() {
+		if (!reflector.getTable().isComplete())
+			return false;
+
+		for (Rotor rotor : rotors)
+			if (!rotor.getForwardTable().isComplete() || !rotor.getReverseTable().isComplete())
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * 文字セットと全てのローター／リフレクターの配線表をファイルへ保存します。
+	 * 保存されたファイルは{@link #loadWiringTables(Path)}で複数のプロセスから共有できます。
+	 * 
+	 * @param path 保存先のパス。
+	 * ローターの個数が配線表ファイルに格納できる上限を超える場合はエラーコード1が返され、ファイルは作成されません。
+	 * @return エラーコード。
+	 * 正常に保存された場合は0が返されます。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	public int saveWiringTables(Path path) throws IOException { // => error code
+		if (rotors.length > MAX_WIRING_ROTOR_NUM)
+			return 1;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeWiringTables(channel);
+		}
+
+		return 0;
+	}
+
+	/**
+	 * 配線表ファイルの長さを取得します。
+	 * 
+	 * @return 長さ（バイト）。
+	 */
+	long getWiringTablesSize() {
+		return WIRING_FILE_HEADER_SIZE + (long) Integer.BYTES * charSet.length() * (2 + 2L * rotors.length);
+	}
+
+	/**
+	 * 文字セットと全てのローター／リフレクターの配線表を、配線表ファイルと同じ形式でチャンネルの現在の位置へ書き込みます。
+	 * 配線表は1つずつ書き込まれるため、全体の長さに比例するバッファーは確保されません。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	void writeWiringTables(FileChannel channel) throws IOException {
+		int n = charSet.length();
+		ByteBuffer buf = ByteBuffer.allocate(WIRING_FILE_HEADER_SIZE + Integer.BYTES * n);
+
+		buf.putInt(WIRING_FILE_MAGIC).putInt(WIRING_FILE_VERSION).putInt(n).putInt(rotors.length);
+
+		for (int i = 0; i < n; i++)
+			buf.putInt(charSet.charAt(i));
+
+		writeFully(channel, buf.flip());
+
+		ByteBuffer tableBuf = ByteBuffer.allocate(Integer.BYTES * n);
+
+		writeTable(channel, reflector.getTable(), tableBuf);
+
+		for (Rotor rotor : rotors) {
+			writeTable(channel, rotor.getForwardTable(), tableBuf);
+			writeTable(channel, rotor.getReverseTable(), tableBuf);
+		}
+	}
+
+	/**
+	 * 配線表を作業用のバッファーを介してチャンネルへ書き込みます。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @param table 配線表。
+	 * @param buf 配線表の長さの作業用のバッファー。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	private static void writeTable(FileChannel channel, WiringTable table, ByteBuffer buf) throws IOException {
+		buf.clear();
+		table.writeTo(buf);
+		writeFully(channel, buf.flip());
+	}
+
+	/**
+	 * バッファーの内容を全てチャンネルへ書き込みます。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @param buf 書き込むバッファー。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+
+	/**
+	 * {@link #saveWiringTables(Path)}で保存されたファイルを読み取り専用でメモリーマップし、スクランブラーを再構成します。
+	 * 配線表はヒープへ複製されずにファイルと共有されます。
+	 * 出力文字セットが再設定されたローター／リフレクターのみ、新しい配線表がヒープ外へ生成されます。
+	 * 全てのローターの位相は初期化されます。
+	 * 
+	 * @param path 読み込むファイルのパス。
+	 * 識別子や版数が異なる場合はエラーコード1が返されます。
+	 * ファイルの長さや文字セットが不正な場合はエラーコード2が返されます。
+	 * 配線表が不正な場合（対応する出力が存在しない入力、逆引きの配線表の不一致、対合でないリフレクター）はエラーコード3が返されます。
+	 * @return エラーコード。
+	 * 正常に読み込まれた場合は0が返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public int loadWiringTables(Path path) throws IOException { // => error code
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return loadWiringTables(channel, 0, channel.size());
+		}
+	}
+
+	/**
+	 * ファイルの一部に格納された配線表ファイルと同じ形式の領域を基にスクランブラーを再構成します。
+	 * 配線表は2GiBを超えない範囲でまとめて読み取り専用でメモリーマップされ、複製されずにファイルと共有されます。
+	 * マップされた領域はチャンネルを閉じた後も使用できます。
+	 * 全てのローターの位相は初期化されます。
+	 * 
+	 * @param channel ファイルのチャンネル。
+	 * @param position 領域の始点のバイト位置。
+	 * @param size 領域の長さ（バイト）。
+	 * 識別子や版数が異なる場合はエラーコード1が返されます。
+	 * 長さや文字セットが不正な場合はエラーコード2が返されます。
+	 * 配線表が不正な場合（対応する出力が存在しない入力、逆引きの配線表の不一致、対合でないリフレクター）はエラーコード3が返されます。
+	 * @return エラーコード。
+	 * 正常に読み込まれた場合は0が返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	int loadWiringTables(FileChannel channel, long position, long size) throws IOException { // => error code
+		if (size < WIRING_FILE_HEADER_SIZE)
+			return 1;
+
+		ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, position, WIRING_FILE_HEADER_SIZE);
+
+		if (head.getInt() != WIRING_FILE_MAGIC || head.getInt() != WIRING_FILE_VERSION)
+			return 1;
+
+		int n = head.getInt();
+		int rotorNum = head.getInt();
+
+		if (n <= 0 || n % 2 != 0 || n > Character.MAX_VALUE + 1 || rotorNum < 0 || rotorNum > MAX_WIRING_ROTOR_NUM
+				|| size != WIRING_FILE_HEADER_SIZE + (long) Integer.BYTES * n * (2 + 2L * rotorNum))
+			return 2;
+
+		int tableBytes = Integer.BYTES * n;
+		long tablePosition = position + WIRING_FILE_HEADER_SIZE;
+		ByteBuffer charSetBuf = channel.map(FileChannel.MapMode.READ_ONLY, tablePosition, tableBytes);
+		char[] charSetChars = new char[n];
+
+		for (int i = 0; i < n; i++)
+			charSetChars[i] = (char) charSetBuf.getInt();
+
+		String newCharSet = new String(charSetChars);
+
+		if (!Utility.isNonDuplicateString(newCharSet))
+			return 2;
+
+		// 配線表ごとにマップすると小さな文字セットで領域の個数が膨らむため、2GiBを超えない範囲の配線表をまとめてマップする
+
+		WiringTable[] tables = new WiringTable[1 + 2 * rotorNum];
+		int regionTableNum = Integer.MAX_VALUE / tableBytes;
+		ByteBuffer region = null;
+
+		tablePosition += tableBytes;
+
+		for (int i = 0; i < tables.length; i++) {
+			int regionIndex = i % regionTableNum;
+
+			if (regionIndex == 0)
+				region = channel.map(FileChannel.MapMode.READ_ONLY, tablePosition + (long) tableBytes * i,
+						(long) tableBytes * Math.min(regionTableNum, tables.length - i));
+
+			tables[i] = WiringTable.wrap(region, tableBytes * regionIndex, n);
+		}
+
+		if (!tables[0].isInvolution())
+			return 3;
+
+		Reflector newReflector = new Reflector(newCharSet, tables[0]);
+		Rotor[] newRotors = new Rotor[rotorNum];
+
+		for (int i = 0; i < rotorNum; i++) {
+			WiringTable forwardTable = tables[1 + i * 2];
+			WiringTable reverseTable = tables[2 + i * 2];
+
+			if (!forwardTable.isComplete() || !reverseTable.isInverseOf(forwardTable))
+				return 3;
+
+			newRotors[i] = new Rotor(newCharSet, forwardTable, reverseTable);
+		}
+
+		charSet = newCharSet;
+		charIndexTable = Utility.createCharIndexTable(charSet);
+		normalizationTable = normalizationPolicy.compile(charSet);
+		rotors = newRotors;
+		reflector = newReflector;
+		engine = null;
+
+		return 0;
+	}
+
+	// Cursor
+
+	/**
+	 * 現在の配線表と位相を基にカーソルを生成します。
+	 * 配線表は共有されるため、カーソルの生成後にスクランブラーの位相や出力文字セットを変更してもカーソルには影響しません。
+	 * 
+	 * @return カーソル。
+	 */
+	public ScramblerCursor createCursor() {
+		WiringTable[] forwardTables = new WiringTable[rotors.length];
+		WiringTable[] reverseTables = new WiringTable[rotors.length];
+		int[] offsets = new int[rotors.length];
+
+		for (int i = 0; i < rotors.length; i++) {
+			forwardTables[i] = rotors[i].getForwardTable();
+			reverseTables[i] = rotors[i].getReverseTable();
+			offsets[i] = rotors[i].getOffset();
+		}
+
+		return new ScramblerCursor(charSet, charIndexTable, normalizationTable, reflector.getTable(), forwardTables, reverseTables,
+				offsets);
+	}
+
+	// State
+
+	/**
+	 * 文字セットと全てのローター／リフレクターの配線表の鍵を取得します。
+	 * 同じ配線のスクランブラーは同じ鍵になります。
+	 * 
+	 * @return SHA-256のハッシュ値の16進数の文字列。
+	 */
+	public String getWiringKey() {
+		WiringTable[] forwardTables = new WiringTable[rotors.length];
+
+		for (int i = 0; i < rotors.length; i++)
+			forwardTables[i] = rotors[i].getForwardTable();
+
+		return TableCache.createKey("WIRING", charSet, reflector.getTable(), forwardTables);
+	}
+
+	/**
+	 * 正規化方針と位相を、配線表もしくは配線表の鍵と共に圧縮した状態へ書き込みます。
+	 * 位相は文字セットの長さを表せる最小のビット数で詰めて書き込まれます。
+	 * 配線表は出力側の逆引きを省き、文字セットの長さに応じて1～4バイトの要素で書き込まれます。
+	 * 
+	 * @param inlineWiring 配線表を含める場合は真、鍵のみを含める場合は偽。
+	 * 鍵のみの状態は、同じ配線のスクランブラーを雛形として{@link #decodeState(ByteBuffer, Map)}で復元できます。
+	 * @return 読み込み可能な状態のバッファー。
+	 */
+	public ByteBuffer encodeState(boolean inlineWiring) {
+		return encodeState(inlineWiring ? null : getWiringKey());
+	}
+
+	/**
+	 * 正規化方針と位相を、配線表もしくは既知の配線表の鍵と共に圧縮した状態へ書き込みます。
+	 * 
+	 * @param wiringKey 配線表の鍵。
+	 * NULLの場合は配線表が書き込まれます。
+	 * @return 読み込み可能な状態のバッファー。
+	 */
+	ByteBuffer encodeState(String wiringKey) {
+		boolean inlineWiring = wiringKey == null;
+		int n = charSet.length();
+		int elementSize = getStateElementSize(n);
+		int offsetBits = getStateOffsetBits(n);
+		int wiringSize = inlineWiring ? Integer.BYTES * 2 + Character.BYTES * n + elementSize * n * (1 + rotors.length)
+				: WIRING_KEY_SIZE;
+		ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + Byte.BYTES * 3 + Character.BYTES + wiringSize
+				+ (rotors.length * offsetBits + 7) / 8);
+		int flags = (inlineWiring ? STATE_FLAG_INLINE_WIRING : 0)
+				| (normalizationPolicy.isCaseFolding() ? STATE_FLAG_CASE_FOLDING : 0)
+				| (normalizationPolicy.isAccentStripping() ? STATE_FLAG_ACCENT_STRIPPING : 0);
+
+		buf.putInt(STATE_MAGIC).put(STATE_VERSION).put((byte) flags).put((byte) normalizationPolicy.getUnknownRule())
+				.putChar(normalizationPolicy.getReplacement());
+
+		if (inlineWiring) {
+			buf.putInt(n).putInt(rotors.length);
+
+			for (int i = 0; i < n; i++)
+				buf.putChar(charSet.charAt(i));
+
+			putStateTable(buf, reflector.getTable(), elementSize);
+
+			for (Rotor rotor : rotors)
+				putStateTable(buf, rotor.getForwardTable(), elementSize);
+		} else {
+			buf.put(HexFormat.of().parseHex(wiringKey));
+		}
+
+		// 位相を1番目のローターから順に下位のビットへ詰める
+
+		long bits = 0;
+		int bitNum = 0;
+
+		for (Rotor rotor : rotors) {
+			bits |= (long) rotor.getOffset() << bitNum;
+			bitNum += offsetBits;
+
+			while (bitNum >= 8) {
+				buf.put((byte) bits);
+				bits >>>= 8;
+				bitNum -= 8;
+			}
+		}
+
+		if (bitNum > 0)
+			buf.put((byte) bits);
+
+		return buf.flip();
+	}
+
+	/**
+	 * {@link #encodeState(boolean)}で書き込まれた状態からスクランブラーを復元します。
+	 * 鍵のみの状態は、雛形の配線表、正規化の表（正規化方針が同じ場合）、変換方式を共有した複製として復元されるため、表の生成や較正は行われません。
+	 * 
+	 * @param buf 状態のバッファー。
+	 * 位置から上限までが読み込まれます。
+	 * @param templates 配線表の鍵を鍵とする雛形のスクランブラー。
+	 * 雛形は変更されません。
+	 * @return 復元されたスクランブラー。
+	 * 形式が不正な場合や、雛形が存在しない場合はNULLが返されます。
+	 */
+	public static Scrambler decodeState(ByteBuffer buf, Map<String, Scrambler> templates) {
+		buf = buf.duplicate();
+
+		if (buf.remaining() < Integer.BYTES + Byte.BYTES * 3 + Character.BYTES || buf.getInt() != STATE_MAGIC
+				|| buf.get() != STATE_VERSION)
+			return null;
+
+		int flags = buf.get();
+		NormalizationPolicy policy = new NormalizationPolicy((flags & STATE_FLAG_CASE_FOLDING) != 0,
+				(flags & STATE_FLAG_ACCENT_STRIPPING) != 0, buf.get(), buf.getChar());
+		Scrambler res;
+
+		if ((flags & STATE_FLAG_INLINE_WIRING) != 0) {
+			res = decodeStateWiring(buf);
+
+			if (res == null)
+				return null;
+		} else {
+			if (buf.remaining() < WIRING_KEY_SIZE)
+				return null;
+
+			byte[] key = new byte[WIRING_KEY_SIZE];
+
+			buf.get(key);
+
+			Scrambler template = templates.get(HexFormat.of().formatHex(key));
+
+			if (template == null)
+				return null;
+
+			res = template.copy();
+		}
+
+		int n = res.charSet.length();
+		int offsetBits = getStateOffsetBits(n);
+
+		if (buf.remaining() != (res.rotors.length * offsetBits + 7) / 8)
+			return null;
+
+		long bits = 0;
+		int bitNum = 0;
+
+		for (Rotor rotor : res.rotors) {
+			while (bitNum < offsetBits) {
+				bits |= (buf.get() & 0xFFL) << bitNum;
+				bitNum += 8;
+			}
+
+			int offset = (int) (bits & ((1L << offsetBits) - 1));
+
+			if (offset >= n)
+				return null;
+
+			rotor.setOffset(offset);
+			bits >>>= offsetBits;
+			bitNum -= offsetBits;
+		}
+
+		if (!policy.equals(res.normalizationPolicy))
+			res.setNormalizationPolicy(policy);
+
+		return res;
+	}
+
+	/**
+	 * 状態に含まれる配線表からスクランブラーを生成します。
+	 * 
+	 * @param buf 状態のバッファー。
+	 * 文字セットの長さの位置から読み込まれます。
+	 * @return 全ての位相が初期化されたスクランブラー。
+	 * 形式が不正な場合はNULLが返されます。
+	 */
+	private static Scrambler decodeStateWiring(ByteBuffer buf) {
+		if (buf.remaining() < Integer.BYTES * 2)
+			return null;
+
+		int n = buf.getInt();
+		int rotorNum = buf.getInt();
+
+		if (n <= 0 || n % 2 != 0 || rotorNum < 0 || buf.remaining() < Character.BYTES * (long) n
+				+ (long) getStateElementSize(n) * n * (1 + (long) rotorNum))
+			return null;
+
+		char[] charSetBuf = new char[n];
+
+		for (int i = 0; i < n; i++)
+			charSetBuf[i] = buf.getChar();
+
+		String newCharSet = new String(charSetBuf);
+
+		if (!Utility.isNonDuplicateString(newCharSet))
+			return null;
+
+		WiringTable reflectorTable = getStateTable(buf, n);
+		Rotor[] newRotors = new Rotor[rotorNum];
+
+		if (reflectorTable == null || !reflectorTable.isInvolution())
+			return null;
+
+		for (int i = 0; i < rotorNum; i++) {
+			WiringTable forwardTable = getStateTable(buf, n);
+
+			if (forwardTable == null || !forwardTable.isComplete())
+				return null;
+
+			newRotors[i] = new Rotor(newCharSet, forwardTable, forwardTable.inverse());
+		}
+
+		Scrambler res = new Scrambler(0, newCharSet);
+
+		res.rotors = newRotors;
+		res.reflector = new Reflector(newCharSet, reflectorTable);
+
+		return res;
+	}
+
+	/**
+	 * 状態における配線表の要素の長さを取得します。
+	 * 
+	 * @param n 文字セットの長さ。
+	 * @return 要素に1を加えた値（0～文字セットの長さ）を表せる最小のバイト数。
+	 */
+	private static int getStateElementSize(int n) {
+		return n < 1 << 8 ? Byte.BYTES : n < 1 << 16 ? Short.BYTES : Integer.BYTES;
+	}
+
+	/**
+	 * 状態における位相のビット数を取得します。
+	 * 
+	 * @param n 文字セットの長さ。
+	 * @return 0～文字セットの長さ-1を表せる最小のビット数。
+	 */
+	private static int getStateOffsetBits(int n) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+	}
+
+	/**
+	 * 配線表を状態へ書き込みます。
+	 * 
+	 * @param buf 書き込み先のバッファー。
+	 * @param table 配線表。
+	 * @param elementSize 要素の長さ（バイト）。
+	 */
+	private static void putStateTable(ByteBuffer buf, WiringTable table, int elementSize) {
+		for (int i = 0; i < table.length(); i++) {
+			int value = table.get(i) + 1;
+
+			switch (elementSize) {
+			case Byte.BYTES -> buf.put((byte) value);
+			case Short.BYTES -> buf.putShort((short) value);
+			default -> buf.putInt(value);
+			}
+		}
+	}
+
+	/**
+	 * 状態から配線表を読み込みます。
+	 * 
+	 * @param buf 読み込むバッファー。
+	 * @param n 文字セットの長さ。
+	 * @return 配線表。
+	 * 範囲外の要素が存在する場合はNULLが返されます。
+	 */
+	private static WiringTable getStateTable(ByteBuffer buf, int n) {
+		int elementSize = getStateElementSize(n);
+		int[] values = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			int value = switch (elementSize) {
+			case Byte.BYTES -> buf.get() & 0xFF;
+			case Short.BYTES -> buf.getShort() & 0xFFFF;
+			default -> buf.getInt();
+			};
+
+			if (value < 0 || value > n)
+				return null;
+
+			values[i] = value - 1;
+		}
+
+		return WiringTable.of(values);
+	}
+
+	/**
+	 * 雛形と同じ配線表のインスタンスを共有しているか確認します。
+	 * 鍵を求めずに確認できるため、雛形から複製したスクランブラーの判別に使用します。
+	 * 
+	 * @param template 雛形のスクランブラー。
+	 * @return 文字セットと全ての配線表を共有している場合は真。
+	 */
+	boolean sharesWiring(Scrambler template) {
+		if (reflector.getTable() != template.reflector.getTable() || rotors.length != template.rotors.length
+				|| !charSet.equals(template.charSet))
+			return false;
+
+		for (int i = 0; i < rotors.length; i++)
+			if (rotors[i].getForwardTable() != template.rotors[i].getForwardTable())
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * 雛形と共有していない表と状態のおおよそのメモリー使用量を取得します。
+	 * スクランブラー、リフレクター、各ローターのオブジェクトとローターの配列は常に数えられ、
+	 * 文字セットの逆引きの表、正規化の表、配線表、変換方式は雛形と共有していない場合のみ数えられます。
+	 * 
+	 * @param template 雛形のスクランブラー。
+	 * NULLの場合は全ての表が数えられます。
+	 * @return バイト数。
+	 */
+	long getUnsharedMemorySize(Scrambler template) {
+		long res = (long) ESTIMATED_OBJECT_SIZE * (2 + rotors.length) + ESTIMATED_ARRAY_HEADER_SIZE
+				+ (long) ESTIMATED_REFERENCE_SIZE * rotors.length;
+
+		if (template == null || charIndexTable != template.charIndexTable)
+			res += ESTIMATED_ARRAY_HEADER_SIZE + (long) Integer.BYTES * charIndexTable.length;
+
+		if (template == null || normalizationTable != template.normalizationTable)
+			res += ESTIMATED_ARRAY_HEADER_SIZE + (long) Integer.BYTES * normalizationTable.length;
+
+		if (template == null || reflector.getTable() != template.reflector.getTable())
+			res += (long) Integer.BYTES * charSet.length() * (1 + 2 * rotors.length);
+
+		if (engine != null && (template == null || engine != template.engine))
+			res += engine.getMemorySize();
+
+		return res;
+	}
+
+	// Solver
+
+	/**
+	 * 一つのローターの配線を平文と暗号文の組から復元する問題を生成します。
+	 * 他のローターとリフレクターの現在の配線表が使用されます。
+	 * 
+	 * @param rotorIndex 配線が未知のローターの番地。
+	 * @return 配線の復元。
+	 * 存在しない番地が指定された場合はNULLが返されます。
+	 */
+	public WiringSolver createWiringSolver(int rotorIndex) {
+		if (rotorIndex < 0 || rotorIndex >= rotors.length)
+			return null;
+
+		WiringTable[] forwardTables = new WiringTable[rotors.length];
+		WiringTable[] reverseTables = new WiringTable[rotors.length];
+
+		for (int i = 0; i < rotors.length; i++) {
+			forwardTables[i] = rotors[i].getForwardTable();
+			reverseTables[i] = rotors[i].getReverseTable();
+		}
+
+		return new WiringSolver(charSet, reflector.getTable(), forwardTables, reverseTables, rotorIndex);
+	}
+
+	// Engine
+
+	/**
+	 * 変換方式を取得します。
+	 * 構成の変更後に初めて呼び出された場合は、較正により変換方式が選択されます。
+	 * ただし配線が前回の較正時と等しい場合は、較正をやり直さずに前回の変換方式が再利用されます。
+	 * 
+	 * @return 変換方式。
+	 * 位置の個数がlongで表現できない構成の場合はNULLが返されます。
+	 */
+	public ConversionEngine getEngine() {
+		if (engine == null) {
+			WiringTable[] forwardTables = new WiringTable[rotors.length];
+			WiringTable[] reverseTables = new WiringTable[rotors.length];
+
+			for (int i = 0; i < rotors.length; i++) {
+				forwardTables[i] = rotors[i].getForwardTable();
+				reverseTables[i] = rotors[i].getReverseTable();
+			}
+
+			// 配線が変わらない構成の変更（正規化方針や同じ配線の再設定など）では、前回の較正の結果を再利用する
+
+			if (calibratedEngine != null && calibratedEngine.hasSameWiring(charSet.length(), reflector.getTable(),
+					forwardTables)) {
+				engine = calibratedEngine.fork();
+			} else {
+				engine = calibratedEngine = ConversionEngine.select(charSet, reflector.getTable(), forwardTables,
+						reverseTables, ConversionEngine.DEFAULT_MEMORY_BUDGET, tableCache);
+			}
+		}
+
+		return engine;
+	}
+
+	/**
+	 * 展開した表のキャッシュを取得します。
+	 * 
+	 * @return キャッシュ。
+	 * 使用しない場合はNULLが返されます。
+	 */
+	public TableCache getTableCache() {
+		return tableCache;
+	}
+
+	/**
+	 * 展開した表のキャッシュを設定します。
+	 * 次の変換時に変換方式が選択し直されます。
+	 * 
+	 * @param newTableCache キャッシュ。
+	 * NULLの場合は使用されません。
+	 */
+	public void setTableCache(TableCache newTableCache) {
+		tableCache = newTableCache;
+		engine = null;
+		calibratedEngine = null;
+	}
+
+	/**
+	 * 全てのローターの位相を位置として取得します。
+	 * 
+	 * @return 1番目のローターを最下位の桁とする位置。
+	 */
+	private long getPosition() {
+		long res = 0;
+
+		for (int i = rotors.length - 1; i >= 0; i--)
+			res = res * charSet.length() + rotors[i].getOffset();
+
+		return res;
+	}
+
+	/**
+	 * 位置を全てのローターの位相へ設定します。
+	 * 
+	 * @param position 1番目のローターを最下位の桁とする位置。
+	 */
+	private void setPosition(long position) {
+		for (int i = 0; i < rotors.length; i++) {
+			rotors[i].setOffset((int) (position % charSet.length()));
+			position /= charSet.length();
+		}
+	}
+
 	// Function
 
 	/**
@@ -216,45 +1015,83 @@ public class Scrambler {
 	public String getStatus() {
 		StringBuffer res = new StringBuffer();
 
-		for (int i = 0; i < rotors.length; i++)
-			res.append("Rotor " + (i + 1) + ":\n" + getRotorStatus(i) + "\n\n");
-
-		res.append("Reflector:\n" + getReflectorStatus());
+		try {
+			writeStatus(res, 0, rotors.length, true);
+		} catch (IOException e) {
+			// StringBufferへの書き込みは失敗しない
+			throw new UncheckedIOException(e);
+		}
 
 		return res.toString();
 	}
 
 	/**
-	 * ローターの状況を視覚的な文字列として取得します。
+	 * 指定の範囲のローター（とリフレクター）の状況を出力先へ順に書き込みます。
+	 * 全体を一つの文字列にまとめないため、ローターが多い場合もメモリーの使用量は1つのローター分に収まります。
+	 * 
+	 * @param out 出力先。
+	 * @param fromRotorIndex 最初のローターの番地。
+	 * @param toRotorIndex 最後のローターの次の番地。
+	 * 範囲はローターの個数に収まるように切り詰められます。
+	 * @param includeReflector リフレクターも書き込む場合は真。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	public void writeStatus(Appendable out, int fromRotorIndex, int toRotorIndex, boolean includeReflector)
+			throws IOException {
+		String charSetConnecter = "|".repeat(charSet.length());
+
+		fromRotorIndex = Math.max(0, fromRotorIndex);
+		toRotorIndex = Math.min(rotors.length, toRotorIndex);
+
+		for (int i = fromRotorIndex; i < toRotorIndex; i++) {
+			out.append("Rotor " + (i + 1) + ":\n");
+			writeRotorStatus(out, i, charSetConnecter);
+
+			if (i + 1 < toRotorIndex || includeReflector)
+				out.append("\n\n");
+		}
+
+		if (includeReflector) {
+			out.append("Reflector:\n");
+			writeReflectorStatus(out, charSetConnecter);
+		}
+	}
+
+	/**
+	 * ローターの状況を視覚的な文字列として書き込みます。
 	 * 1行目に入力文字セットが表示されます。
 	 * 3行目に対応する出力文字セットが表示されます。
 	 * 4行目に対応する位相の地点が表示されます。
 	 * 
+	 * @param out 出力先。
 	 * @param rotorIndex ローターの番地。
-	 * @return ローターの状況。
+	 * @param charSetConnecter 2行目の文字列。
+	 * @throws IOException 書き込みに失敗した場合。
 	 */
-	private String getRotorStatus(int rotorIndex) {
-		String charSet = rotors[rotorIndex].getCharSet();
-		String charSetConnecter = "|".repeat(charSet.length());
-		String charSetPair = rotors[rotorIndex].getCharSetPair();
-		String currentOffset = "-".repeat(rotors[rotorIndex].getOffset()) + "@";
+	private void writeRotorStatus(Appendable out, int rotorIndex, String charSetConnecter) throws IOException {
+		out.append(rotors[rotorIndex].getCharSet()).append('\n');
+		out.append(charSetConnecter).append('\n');
+		out.append(rotors[rotorIndex].getCharSetPair()).append('\n');
 
-		return charSet + "\n" + charSetConnecter + "\n" + charSetPair + "\n" + currentOffset;
+		for (int i = 0; i < rotors[rotorIndex].getOffset(); i++)
+			out.append('-');
+
+		out.append('@');
 	}
 
 	/**
-	 * リフレクターの状況を視覚的な文字列として取得します。
+	 * リフレクターの状況を視覚的な文字列として書き込みます。
 	 * 1行目に入力文字セットが表示されます。
 	 * 3行目に対応する出力文字セットが表示されます。
 	 * 
-	 * @return リフレクターの状況。
+	 * @param out 出力先。
+	 * @param charSetConnecter 2行目の文字列。
+	 * @throws IOException 書き込みに失敗した場合。
 	 */
-	private String getReflectorStatus() {
-		String charSet = reflector.getCharSet();
-		String charSetConnecter = "|".repeat(charSet.length());
-		String charSetPair = reflector.getCharSetPair();
-
-		return charSet + "\n" + charSetConnecter + "\n" + charSetPair;
+	private void writeReflectorStatus(Appendable out, String charSetConnecter) throws IOException {
+		out.append(reflector.getCharSet()).append('\n');
+		out.append(charSetConnecter).append('\n');
+		out.append(reflector.getCharSetPair());
 	}
 
 	/**
@@ -265,54 +1102,154 @@ public class Scrambler {
 	 * 0の場合はリフレクターのみで構成された単一換字式暗号機になります。
 	 */
 	private void setScramblerKit(int rotorNum) {
+		charIndexTable = Utility.createCharIndexTable(charSet);
+		normalizationTable = normalizationPolicy.compile(charSet);
 		rotors = new Rotor[rotorNum];
 
 		for (int i = 0; i < rotorNum; i++)
 			rotors[i] = new Rotor(i + 1, charSet);
 
 		reflector = new Reflector(0, charSet);
+		engine = null;
 	}
 
 	/**
-	 * 文字列を暗号化もしくは復号化します。
+	 * 文字列を正規化方針に従って正規化し、暗号化もしくは復号化します。
+	 * 正規化は表の参照のみで行われ、文字列の前処理は不要です。
 	 * 
 	 * @param text 変換する文字列。
-	 * 文字セットに存在しない文字は変換されずに返されます。
+	 * 正規化後に文字セットに存在しない文字は、正規化方針に従ってそのまま出力されるか、削除されるか、置換されます。
 	 * 文字が変換されると自動的にローターが回転します。
 	 * @return 変換された文字列。
 	 */
 	public String convertText(String text) {
-		StringBuffer res = new StringBuffer();
+		ConversionEngine currentEngine = getEngine();
+		char[] res = new char[text.length()];
+		int length = 0;
 
-		for (int i = 0; i < text.length(); i++)
-			res.append(convertChar(text.charAt(i)));
+		if (currentEngine == null) {
+			for (int i = 0; i < text.length(); i++) {
+				int value = normalizationTable[text.charAt(i)];
 
-		return res.toString();
+				if (value >= 0) {
+					value = convertIndex(value);
+					res[length++] = value != -1 ? charSet.charAt(value) : 0;
+				} else if (value != NormalizationPolicy.DROP) {
+					res[length++] = (char) ~value;
+				}
+			}
+
+			return new String(res, 0, length);
+		}
+
+		// 位置は変換の前後でのみローターと同期する
+
+		long positionNum = currentEngine.getPositionNum();
+		long position = getPosition();
+
+		for (int i = 0; i < text.length(); i++) {
+			int value = normalizationTable[text.charAt(i)];
+
+			if (value >= 0) {
+				if (++position == positionNum)
+					position = 0;
+
+				value = currentEngine.substitute(position, value);
+				res[length++] = value != -1 ? charSet.charAt(value) : 0;
+			} else if (value != NormalizationPolicy.DROP) {
+				res[length++] = (char) ~value;
+			}
+		}
+
+		setPosition(position);
+
+		return new String(res, 0, length);
 	}
 
 	/**
-	 * 文字を暗号化もしくは復号化します。
+	 * 文字を正規化方針に従って正規化し、暗号化もしくは復号化します。
+	 * 削除する方針以外では、1文字の文字列を{@link #convertText(String)}で変換した場合と同じ結果になります。
 	 * 
 	 * @param charCode 変換する文字。
-	 * 文字セットに存在しない文字が指定された場合は変換されずに返されます。
-	 * 変換されると自動的にローターが回転します。
+	 * 正規化後に文字セットに存在しない文字は、正規化方針に従ってそのまま返されるか置換されます。
+	 * 削除する方針の場合は、戻り値で削除を表せないため変換されずにそのまま返され、ローターは回転しません。
+	 * 文字が変換されると自動的にローターが回転します。
 	 * @return 変換された文字。
 	 */
 	public char convertChar(char charCode) {
-		if (charSet.indexOf(charCode) != -1) {
-			for (int i = 0; i < rotors.length; i++)
-				if (!rotors[i].rotate())
-					break;
+		int value = normalizationTable[charCode];
 
-			for (int i = 0; i < rotors.length; i++)
-				charCode = rotors[i].convertChar(charCode);
+		if (value >= 0) {
+			value = convertIndex(value);
 
-			charCode = reflector.convertChar(charCode);
+			return value != -1 ? charSet.charAt(value) : 0;
+		}
 
-			for (int i = rotors.length - 1; i >= 0; i--)
-				charCode = rotors[i].convertReverseChar(charCode);
+		return value != NormalizationPolicy.DROP ? (char) ~value : charCode;
+	}
+
+	/**
+	 * ローターを回転させてから文字セットの番地を変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * @return 変換された文字の番地。
+	 * 対応する文字が存在しない場合は-1が返されます。
+	 */
+	private int convertIndex(int charSetIndex) {
+		ConversionEngine currentEngine = getEngine();
+
+		if (currentEngine != null) {
+			long position = getPosition() + 1;
+
+			if (position == currentEngine.getPositionNum())
+				position = 0;
+
+			setPosition(position);
+
+			return currentEngine.substitute(position, charSetIndex);
 		}
 
-		return charCode;
+		for (int i = 0; i < rotors.length; i++)
+			if (!rotors[i].rotate())
+				break;
+
+		for (int i = 0; i < rotors.length; i++)
+			charSetIndex = rotors[i].convertIndex(charSetIndex);
+
+		charSetIndex = reflector.convertIndex(charSetIndex);
+
+		for (int i = rotors.length - 1; i >= 0; i--)
+			charSetIndex = rotors[i].convertReverseIndex(charSetIndex);
+
+		return charSetIndex;
+	}
+
+	/**
+	 * 複数の文字列をそれぞれの位相から並列に暗号化もしくは復号化します。
+	 * 配線表は全ての文字列で読み取り専用で共有され、位相はスレッドごとのカーソルで保持されます。
+	 * スクランブラー自身の位相は変更されません。
+	 * 
+	 * @param offsetTexts 文字列ごとの位相に対応する文字セットの文字列。
+	 * @param texts 変換する文字列。
+	 * 位相と同じ個数の文字列です。
+	 * @return 入力と同じ順序の変換された文字列。
+	 * 位相が不正な文字列の要素はNULLです。
+	 * 位相と文字列の個数が異なる場合はNULLが返されます。
+	 */
+	public List<String> convertBatch(List<String> offsetTexts, List<String> texts) {
+		if (offsetTexts.size() != texts.size())
+			return null;
+
+		ThreadLocal<ScramblerCursor> cursors = ThreadLocal.withInitial(createCursor()::copy);
+		String[] res = new String[texts.size()];
+
+		IntStream.range(0, res.length).parallel().forEach(i -> {
+			ScramblerCursor cursor = cursors.get();
+
+			if (cursor.setOffsetText(offsetTexts.get(i)) == 0)
+				res[i] = cursor.convertText(texts.get(i));
+		});
+
+		return Arrays.asList(res);
 	}
 }
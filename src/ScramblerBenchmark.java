@@ -0,0 +1,259 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * スクランブラーの性能測定
+ * スクランブラーの複製を使用して、1文字ずつの変換と文字列の変換の処理速度、区画ごとの遅延、1文字あたりのメモリー割り当て量を測定します。
+ * 元のスクランブラーの位相は変更されません。
+ */
+public class ScramblerBenchmark {
+	/** 測定の方式：1文字ずつの変換 */
+	public static final int MODE_CHAR = 0;
+	/** 測定の方式：文字列の変換 */
+	public static final int MODE_TEXT = 1;
+	/** 測定の方式の名前 */
+	private static final String[] MODE_NAMES = { "CHAR", "TEXT" };
+	/** 遅延を測定する区画の文字数 */
+	public static final int BATCH_SIZE = 256;
+	/** ウォームアップの文字数の上限 */
+	private static final int WARMUP_CHAR_NUM = 1 << 20;
+
+	/** 測定に使用するスクランブラー */
+	private final Scrambler snapshot;
+	/** 測定用の文字列の区画 */
+	private final String[] batches;
+
+	/**
+	 * スクランブラーの現在の構成と位相の複製を基に生成します。
+	 * 文字列は文字セットの文字を固定の乱数列で並べたものです。
+	 * 
+	 * @param scrambler 測定するスクランブラー。
+	 * @param charNum 1スレッドあたりの測定の文字数。
+	 * 区画の文字数の倍数へ切り上げられます。
+	 */
+	public ScramblerBenchmark(Scrambler scrambler, int charNum) {
+		snapshot = scrambler.copy();
+
+		String charSet = snapshot.getCharSet();
+		Random random = new Random(charSet.length());
+		char[] batch = new char[BATCH_SIZE];
+
+		batches = new String[Math.max(1, (charNum + BATCH_SIZE - 1) / BATCH_SIZE)];
+
+		for (int i = 0; i < batches.length; i++) {
+			for (int j = 0; j < BATCH_SIZE; j++)
+				batch[j] = charSet.charAt(random.nextInt(charSet.length()));
+
+			batches[i] = new String(batch);
+		}
+	}
+
+	/**
+	 * 1スレッドあたりの測定の文字数を取得します。
+	 * 
+	 * @return 文字数。
+	 */
+	public long getCharNum() {
+		return (long) batches.length * BATCH_SIZE;
+	}
+
+	/**
+	 * ウォームアップの後に測定します。
+	 * 各スレッドは独自のスクランブラーの複製を使用し、全てのスレッドが同時に測定を開始します。
+	 * 
+	 * @param mode MODE_CHAR、MODE_TEXTのいずれか。
+	 * @param threadNum スレッドの個数。
+	 * @return 測定の結果。
+	 * 割り込まれた場合はNULLが返されます。
+	 */
+	public Result run(int mode, int threadNum) {
+		Scrambler[] scramblers = new Scrambler[threadNum];
+		long[][] latencies = new long[threadNum][];
+		long[] allocatedBytes = new long[threadNum];
+		long[] startTime = new long[1];
+		long[] endTimes = new long[threadNum];
+		Thread[] threads = new Thread[threadNum];
+
+		// 最も遅いスレッドのウォームアップの完了を開始時刻とする
+
+		CyclicBarrier barrier = new CyclicBarrier(threadNum, () -> startTime[0] = System.nanoTime());
+
+		for (int i = 0; i < threadNum; i++)
+			scramblers[i] = snapshot.copy();
+
+		for (int i = 0; i < threadNum; i++) {
+			int threadIndex = i;
+
+			threads[i] = new Thread(() -> {
+				Scrambler scrambler = scramblers[threadIndex];
+				long[] batchNanos = new long[batches.length];
+				int warmupBatchNum = Math.min(batches.length, WARMUP_CHAR_NUM / BATCH_SIZE);
+
+				for (int j = 0; j < warmupBatchNum; j++)
+					convert(scrambler, mode, batches[j]);
+
+				try {
+					barrier.await();
+				} catch (Exception e) {
+					return;
+				}
+
+				long allocatedStart = getAllocatedBytes();
+
+				for (int j = 0; j < batches.length; j++) {
+					long start = System.nanoTime();
+
+					convert(scrambler, mode, batches[j]);
+					batchNanos[j] = System.nanoTime() - start;
+				}
+
+				endTimes[threadIndex] = System.nanoTime();
+				allocatedBytes[threadIndex] = allocatedStart < 0 ? -1 : getAllocatedBytes() - allocatedStart;
+				latencies[threadIndex] = batchNanos;
+			}, "ScramblerBenchmark-" + i);
+		}
+
+		try {
+			for (Thread thread : threads)
+				thread.start();
+
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			for (Thread thread : threads)
+				thread.interrupt();
+
+			Thread.currentThread().interrupt();
+
+			return null;
+		}
+
+		if (Arrays.asList(latencies).contains(null))
+			return null;
+
+		long endTime = Arrays.stream(endTimes).max().getAsLong();
+		long[] allLatencies = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+		long totalAllocatedBytes = Arrays.stream(allocatedBytes).anyMatch(value -> value < 0) ? -1
+				: Arrays.stream(allocatedBytes).sum();
+
+		return new Result(mode, threadNum, getCharNum() * threadNum, endTime - startTime[0], allLatencies,
+				totalAllocatedBytes);
+	}
+
+	/**
+	 * 1区画を変換します。
+	 * 
+	 * @param scrambler 使用するスクランブラー。
+	 * @param mode MODE_CHAR、MODE_TEXTのいずれか。
+	 * @param batch 区画の文字列。
+	 * @return 変換された文字の合計（最適化による除去の防止）。
+	 */
+	private static int convert(Scrambler scrambler, int mode, String batch) {
+		if (mode == MODE_TEXT)
+			return scrambler.convertText(batch).length();
+
+		int res = 0;
+
+		for (int i = 0; i < batch.length(); i++)
+			res += scrambler.convertChar(batch.charAt(i));
+
+		return res;
+	}
+
+	/**
+	 * 現在のスレッドが割り当てたメモリーの合計を取得します。
+	 * 
+	 * @return バイト数。
+	 * 測定できないJVMの場合は-1が返されます。
+	 */
+	private static long getAllocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean
+				&& threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled())
+			return threadMXBean.getCurrentThreadAllocatedBytes();
+
+		return -1;
+	}
+
+	/**
+	 * 測定の結果
+	 */
+	public static class Result {
+		/** 測定の方式 */
+		private final int mode;
+		/** スレッドの個数 */
+		private final int threadNum;
+		/** 全てのスレッドで変換した文字数 */
+		private final long charNum;
+		/** 経過時間（ナノ秒） */
+		private final long elapsedNanos;
+		/** 昇順に並べた区画ごとの遅延（ナノ秒） */
+		private final long[] latencies;
+		/** 全てのスレッドで割り当てたメモリー（バイト） */
+		private final long allocatedBytes;
+
+		/**
+		 * 測定の結果を生成します。
+		 * 
+		 * @param mode 測定の方式。
+		 * @param threadNum スレッドの個数。
+		 * @param charNum 全てのスレッドで変換した文字数。
+		 * @param elapsedNanos 経過時間（ナノ秒）。
+		 * @param latencies 昇順に並べた区画ごとの遅延（ナノ秒）。
+		 * @param allocatedBytes 全てのスレッドで割り当てたメモリー（バイト）。
+		 * 測定できない場合は-1です。
+		 */
+		private Result(int mode, int threadNum, long charNum, long elapsedNanos, long[] latencies,
+				long allocatedBytes) {
+			this.mode = mode;
+			this.threadNum = threadNum;
+			this.charNum = charNum;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = latencies;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		/**
+		 * 1秒あたりの変換の文字数を取得します。
+		 * 
+		 * @return 文字数。
+		 */
+		public double getCharsPerSecond() {
+			return charNum * 1e9 / Math.max(1, elapsedNanos);
+		}
+
+		/**
+		 * 区画ごとの遅延のパーセンタイルを取得します。
+		 * 
+		 * @param percentile パーセンタイル（0～100）。
+		 * @return 遅延（ナノ秒）。
+		 */
+		public long getLatency(double percentile) {
+			if (latencies.length == 0)
+				return 0;
+
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+
+			return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+		}
+
+		/**
+		 * 1文字あたりのメモリーの割り当て量を取得します。
+		 * 
+		 * @return バイト数。
+		 * 測定できない場合は負の値が返されます。
+		 */
+		public double getAllocatedBytesPerChar() {
+			return allocatedBytes < 0 ? -1 : (double) allocatedBytes / Math.max(1, charNum);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-4s %3d thread(s): %,14.0f chars/s, latency per %d chars p50 %,d ns / p99 %,d ns / p99.9 %,d ns, %s",
+					MODE_NAMES[mode], threadNum, getCharsPerSecond(), BATCH_SIZE, getLatency(50), getLatency(99),
+					getLatency(99.9), allocatedBytes < 0 ? "allocation not measurable"
+							: String.format("%.2f bytes/char allocated", getAllocatedBytesPerChar()));
+		}
+	}
+}
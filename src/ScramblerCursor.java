@@ -0,0 +1,387 @@
+/**
+ * スクランブラーのカーソル
+ * スクランブラーの配線表を読み取り専用で共有し、ローターの位相のみを独自に保持します。
+ * 一つのカーソルを複数のスレッドから同時に使用することはできませんが、複製したカーソルは並列に使用できます。
+ */
+public class ScramblerCursor {
+	/** 文字セット */
+	private final String charSet;
+	/** 文字セットの逆引きの表 */
+	private final int[] charIndexTable;
+	/** 正規化の表 */
+	private final int[] normalizationTable;
+	/** リフレクターの配線表 */
+	private final WiringTable reflectorTable;
+	/** スクランブラーにおける順序のローターの配線表 */
+	private final WiringTable[] rotorForwardTables;
+	/** スクランブラーにおける順序のローターの逆引きの配線表 */
+	private final WiringTable[] rotorReverseTables;
+	/** 現在の順序のローターの配線表 */
+	private final WiringTable[] forwardTables;
+	/** 現在の順序のローターの逆引きの配線表 */
+	private final WiringTable[] reverseTables;
+	/** ローターの位相 */
+	private final int[] offsets;
+
+	/**
+	 * 配線表と位相を基にカーソルを生成します。
+	 * 配線表と逆引きの表は複製されずに共有されます。
+	 * 
+	 * @param charSet 文字セット。
+	 * @param charIndexTable 文字セットの逆引きの表。
+	 * @param normalizationTable 正規化の表。
+	 * @param reflectorTable リフレクターの配線表。
+	 * @param forwardTables ローターの配線表。
+	 * @param reverseTables ローターの逆引きの配線表。
+	 * @param offsets ローターの位相。
+	 */
+	ScramblerCursor(String charSet, int[] charIndexTable, int[] normalizationTable, WiringTable reflectorTable,
+			WiringTable[] forwardTables, WiringTable[] reverseTables, int[] offsets) {
+		this.charSet = charSet;
+		this.charIndexTable = charIndexTable;
+		this.normalizationTable = normalizationTable;
+		this.reflectorTable = reflectorTable;
+		this.rotorForwardTables = forwardTables;
+		this.rotorReverseTables = reverseTables;
+		this.forwardTables = forwardTables.clone();
+		this.reverseTables = reverseTables.clone();
+		this.offsets = offsets;
+	}
+
+	/**
+	 * 配線表を共有し、ローターの順序と位相を複製したカーソルを生成します。
+	 * 
+	 * @return 複製されたカーソル。
+	 */
+	public ScramblerCursor copy() {
+		ScramblerCursor res = new ScramblerCursor(charSet, charIndexTable, normalizationTable, reflectorTable,
+				rotorForwardTables, rotorReverseTables, offsets.clone());
+
+		System.arraycopy(forwardTables, 0, res.forwardTables, 0, forwardTables.length);
+		System.arraycopy(reverseTables, 0, res.reverseTables, 0, reverseTables.length);
+
+		return res;
+	}
+
+	// Char set
+
+	/**
+	 * 文字セットを取得します。
+	 * 
+	 * @return 文字セット。
+	 */
+	public String getCharSet() {
+		return charSet;
+	}
+
+	/**
+	 * 文字の番地を取得します。
+	 * 
+	 * @param charCode 文字。
+	 * @return 文字セットにおける番地。
+	 * 文字セットに存在しない文字の場合は-1が返されます。
+	 */
+	public int getCharIndex(char charCode) {
+		return Utility.getCharIndex(charIndexTable, charCode);
+	}
+
+	/**
+	 * 生成元のスクランブラーの正規化方針に従って、UTF-8のバイト列と番地を直接変換する変換器を生成します。
+	 * {@link #convertIndex(int)}と組み合わせると{@link #convertText(String)}と同じ結果になります（不正なバイト列を除く）。
+	 * 
+	 * @return 変換器。
+	 */
+	public Utf8SymbolCodec createCodec() {
+		return new Utf8SymbolCodec(charSet, normalizationTable);
+	}
+
+	// Rotor
+
+	/**
+	 * ローターの個数を取得します。
+	 * 
+	 * @return ローターの個数。
+	 */
+	public int getRotorNum() {
+		return offsets.length;
+	}
+
+	/**
+	 * ローターの位相を取得します。
+	 * 
+	 * @param rotorIndex ローターの番地。
+	 * @return 位相。
+	 */
+	public int getOffset(int rotorIndex) {
+		return offsets[rotorIndex];
+	}
+
+	/**
+	 * 全てのローターの位相を文字列（ラベル）で取得します。
+	 * 
+	 * @return 位相に対応する文字セットの文字列。
+	 */
+	public String getOffsetText() {
+		char[] res = new char[offsets.length];
+
+		for (int i = 0; i < offsets.length; i++)
+			res[i] = charSet.charAt(offsets[i]);
+
+		return new String(res);
+	}
+
+	/**
+	 * 全てのローターの位相を文字列（ラベル）で設定します。
+	 * 
+	 * @param offsetText 位相に対応する文字セットの文字列。
+	 * NULLやローターの個数と異なる長さの文字列が指定された場合はエラーコード1が返されます。
+	 * 文字セットに存在しない文字が指定された場合はエラーコード2が返されます。
+	 * @return エラーコード。
+	 * 正常に設定された場合は0が返されます。
+	 */
+	public int setOffsetText(String offsetText) { // => error code
+		if (offsetText == null || offsetText.length() != offsets.length)
+			return 1;
+
+		for (int i = 0; i < offsetText.length(); i++)
+			if (getCharIndex(offsetText.charAt(i)) == -1)
+				return 2;
+
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = getCharIndex(offsetText.charAt(i));
+
+		return 0;
+	}
+
+	/**
+	 * ローターの順序を設定します。
+	 * 
+	 * @param order 各位置に配置するローターの、スクランブラーにおける番地の配列。
+	 * ローターの個数と同じ長さの順列です。
+	 */
+	public void setRotorOrder(int[] order) {
+		for (int i = 0; i < order.length; i++) {
+			forwardTables[i] = rotorForwardTables[order[i]];
+			reverseTables[i] = rotorReverseTables[order[i]];
+		}
+	}
+
+	// Position
+
+	/**
+	 * 全ての位相の組み合わせの個数を取得します。
+	 * 
+	 * @return 文字セットの長さのローターの個数乗。
+	 * longで表現できない場合は-1が返されます。
+	 */
+	public long getPositionNum() {
+		long res = 1;
+
+		for (int i = 0; i < offsets.length; i++) {
+			if (res > Long.MAX_VALUE / charSet.length())
+				return -1;
+
+			res *= charSet.length();
+		}
+
+		return res;
+	}
+
+	/**
+	 * 全てのローターの位相を一つの整数値（位置）で取得します。
+	 * 位置は1番目のローターを最下位の桁とする、文字セットの長さを基数とした値です。
+	 * 
+	 * @return 位置。
+	 */
+	public long getPosition() {
+		long res = 0;
+
+		for (int i = offsets.length - 1; i >= 0; i--)
+			res = res * charSet.length() + offsets[i];
+
+		return res;
+	}
+
+	/**
+	 * 全てのローターの位相を一つの整数値（位置）で設定します。
+	 * 
+	 * @param position 位置。
+	 * 0以上の値です。
+	 */
+	public void setPosition(long position) {
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = (int) (position % charSet.length());
+			position /= charSet.length();
+		}
+	}
+
+	/**
+	 * ローターを指定の回数だけ回転させます。
+	 * 文字を変換した場合と同じく、1番目のローターが一周すると次のローターが回転します。
+	 * 
+	 * @param steps 回転させる回数。
+	 * 0以上の値です。
+	 */
+	public void advance(long steps) {
+		int n = charSet.length();
+
+		for (int i = 0; i < offsets.length && steps > 0; i++) {
+			long sum = offsets[i] + steps % n;
+
+			offsets[i] = (int) (sum % n);
+			steps = steps / n + sum / n;
+		}
+	}
+
+	/**
+	 * ローターを1回回転させます。
+	 */
+	public void step() {
+		for (int i = 0; i < offsets.length; i++) {
+			if (++offsets[i] < charSet.length())
+				break;
+
+			offsets[i] = 0;
+		}
+	}
+
+	/**
+	 * 文字セットと、スクランブラーにおける順序の全ての配線表のハッシュ値を取得します。
+	 * 同じ構成のスクランブラーから生成されたカーソルは同じ値になります。
+	 * 
+	 * @return ハッシュ値。
+	 */
+	public long getFingerprint() {
+		long res = 0xCBF29CE484222325L;
+
+		for (int i = 0; i < charSet.length(); i++)
+			res = (res ^ charSet.charAt(i)) * 0x100000001B3L;
+
+		res = (res ^ offsets.length) * 0x100000001B3L;
+
+		for (int i = 0; i <= rotorForwardTables.length; i++) {
+			WiringTable table = i < rotorForwardTables.length ? rotorForwardTables[i] : reflectorTable;
+
+			for (int j = 0; j < table.length(); j++)
+				res = (res ^ table.get(j)) * 0x100000001B3L;
+		}
+
+		return res;
+	}
+
+	// Function
+
+	/**
+	 * ローターを回転させずに、現在の位相における文字セットの番地を変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * @return 変換された文字の番地。
+	 * 対応する文字が存在しない場合は-1が返されます。
+	 */
+	public int substitute(int charSetIndex) {
+		int n = charSet.length();
+
+		for (int i = 0; i < offsets.length; i++) {
+			if (charSetIndex == -1)
+				return -1;
+
+			int charSetPairIndex = charSetIndex + offsets[i];
+
+			charSetIndex = forwardTables[i].get(charSetPairIndex < n ? charSetPairIndex : charSetPairIndex - n);
+		}
+
+		if (charSetIndex == -1)
+			return -1;
+
+		charSetIndex = reflectorTable.get(charSetIndex);
+
+		for (int i = offsets.length - 1; i >= 0; i--) {
+			if (charSetIndex == -1 || (charSetIndex = reverseTables[i].get(charSetIndex)) == -1)
+				return -1;
+
+			charSetIndex -= offsets[i];
+
+			if (charSetIndex < 0)
+				charSetIndex += n;
+		}
+
+		return charSetIndex;
+	}
+
+	/**
+	 * ローターを回転させてから文字セットの番地を変換します。
+	 * 
+	 * @param charSetIndex 変換する文字の番地。
+	 * @return 変換された文字の番地。
+	 * 対応する文字が存在しない場合は-1が返されます。
+	 */
+	public int convertIndex(int charSetIndex) {
+		step();
+
+		return substitute(charSetIndex);
+	}
+
+	/**
+	 * 文字を生成元のスクランブラーの正規化方針に従って正規化し、暗号化もしくは復号化します。
+	 * {@link Scrambler#convertChar(char)}と同じ結果になります。
+	 * 
+	 * @param charCode 変換する文字。
+	 * 正規化後に文字セットに存在しない文字は、正規化方針に従ってそのまま返されるか置換されます。
+	 * 削除する方針の場合は、戻り値で削除を表せないため変換されずにそのまま返され、ローターは回転しません。
+	 * 文字が変換されると自動的にローターが回転します。
+	 * @return 変換された文字。
+	 */
+	public char convertChar(char charCode) {
+		int value = normalizationTable[charCode];
+
+		if (value >= 0) {
+			value = convertIndex(value);
+
+			return value != -1 ? charSet.charAt(value) : 0;
+		}
+
+		return value != NormalizationPolicy.DROP ? (char) ~value : charCode;
+	}
+
+	/**
+	 * 文字列を生成元のスクランブラーの正規化方針に従って正規化し、暗号化もしくは復号化します。
+	 * {@link Scrambler#convertText(String)}と同じ結果になります。
+	 * 
+	 * @param text 変換する文字列。
+	 * @return 変換された文字列。
+	 */
+	public String convertText(String text) {
+		char[] res = new char[text.length()];
+		int length = 0;
+
+		for (int i = 0; i < text.length(); i++) {
+			int value = normalizationTable[text.charAt(i)];
+
+			if (value >= 0) {
+				value = convertIndex(value);
+				res[length++] = value != -1 ? charSet.charAt(value) : 0;
+			} else if (value != NormalizationPolicy.DROP) {
+				res[length++] = (char) ~value;
+			}
+		}
+
+		return new String(res, 0, length);
+	}
+
+	/**
+	 * 文字列を{@link #convertText(String)}で変換した場合にローターが回転する回数を取得します。
+	 * 変換後の文字に対応する文字が存在せずNUL文字が出力される場合も、ローターの回転として数えられます。
+	 * 
+	 * @param text 変換前の文字列。
+	 * @return 正規化後に文字セットに存在する文字の個数。
+	 */
+	public int countSteps(CharSequence text) {
+		int res = 0;
+
+		for (int i = 0; i < text.length(); i++)
+			if (normalizationTable[text.charAt(i)] >= 0)
+				res++;
+
+		return res;
+	}
+}
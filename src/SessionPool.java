@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * セッションの保管庫
+ * 利用者ごとのスクランブラーをセッションの名前で保持します。
+ * 稼働中のセッションの推定メモリー使用量が上限を超えた場合は、最後に使用された日時が古いセッションから圧縮した状態（{@link Scrambler#encodeState(boolean)}）へ退避します。
+ * 退避先はメモリーもしくはディレクトリーです。
+ * 配線が登録済みの雛形と同じセッションは配線表の鍵のみで退避され、次の取得時に雛形の表と変換方式を共有して復元されます。
+ */
+public class SessionPool {
+	/** 雛形の個数の上限の既定値 */
+	public static final int DEFAULT_TEMPLATE_LIMIT = 16;
+	/** 退避ファイルの拡張子 */
+	private static final String SESSION_FILE_SUFFIX = ".ses";
+
+	/** 稼働中のセッションの推定メモリー使用量の上限（バイト） */
+	private final long memoryLimit;
+	/** 退避先のディレクトリー（NULLの場合はメモリー） */
+	private final Path directory;
+	/** 雛形の個数の上限 */
+	private final int templateLimit;
+	/** 配線表の鍵を鍵とする雛形 */
+	private final Map<String, Scrambler> templates = new HashMap<String, Scrambler>();
+	/** 稼働中のセッション（使用された順） */
+	private final LinkedHashMap<String, Scrambler> liveSessions = new LinkedHashMap<String, Scrambler>(16, 0.75f,
+			true);
+	/** 稼働中のセッションの推定メモリー使用量 */
+	private final Map<String, Long> liveSizes = new HashMap<String, Long>();
+	/** メモリーへ退避したセッションの状態 */
+	private final Map<String, byte[]> storedSessions = new HashMap<String, byte[]>();
+	/** ディレクトリーへ退避したセッションのファイル */
+	private final Map<String, Path> spilledSessions = new HashMap<String, Path>();
+	/** 稼働中のセッションの推定メモリー使用量の合計 */
+	private long liveMemorySize = 0;
+	/** 次の退避ファイルの番号 */
+	private long nextFileId = 0;
+
+	/**
+	 * 上限と退避先を基に生成します。
+	 * 
+	 * @param memoryLimit 稼働中のセッションの推定メモリー使用量の上限（バイト）。
+	 * 直前に使用されたセッションは上限を超えても退避されません。
+	 * @param directory 退避先のディレクトリー。
+	 * NULLの場合はメモリーへ退避されます。
+	 * ディレクトリーは最初の退避時に作成されます。
+	 */
+	public SessionPool(long memoryLimit, Path directory) {
+		this(memoryLimit, directory, DEFAULT_TEMPLATE_LIMIT);
+	}
+
+	/**
+	 * 上限、退避先、雛形の個数の上限を基に生成します。
+	 * 
+	 * @param memoryLimit 稼働中のセッションの推定メモリー使用量の上限（バイト）。
+	 * @param directory 退避先のディレクトリー。
+	 * NULLの場合はメモリーへ退避されます。
+	 * @param templateLimit 雛形の個数の上限。
+	 * 上限に達した後に追加された配線のセッションは、配線表を含めて退避されます。
+	 */
+	public SessionPool(long memoryLimit, Path directory, int templateLimit) {
+		this.memoryLimit = memoryLimit;
+		this.directory = directory;
+		this.templateLimit = templateLimit;
+	}
+
+	/**
+	 * セッションを追加もしくは置き換えます。
+	 * セッションの配線が未登録で、雛形の個数が上限に達していない場合は、複製が雛形として登録されます。
+	 * 
+	 * @param name セッションの名前。
+	 * @param scrambler スクランブラー。
+	 * 追加後も呼び出し元で使用できます（退避されるまでは同じインスタンスが取得されます）。
+	 * @throws IOException 他のセッションのディレクトリーへの退避に失敗した場合。
+	 */
+	public synchronized void put(String name, Scrambler scrambler) throws IOException {
+		String wiringKey = scrambler.getWiringKey();
+
+		if (!templates.containsKey(wiringKey) && templates.size() < templateLimit) {
+			// 複製の前に変換方式を選択しておき、セッション、雛形、復元したセッションで共有する
+
+			scrambler.getEngine();
+			templates.put(wiringKey, scrambler.copy());
+		}
+
+		discard(name);
+		setLive(name, scrambler, templates.get(wiringKey));
+		evict();
+	}
+
+	/**
+	 * セッションを取得します。
+	 * 退避されたセッションは復元され、稼働中のセッションになります。
+	 * 
+	 * @param name セッションの名前。
+	 * @return スクランブラー。
+	 * 存在しない場合や、退避した状態が壊れている場合はNULLが返されます。
+	 * @throws IOException 退避ファイルの読み込み、もしくは他のセッションの退避に失敗した場合。
+	 */
+	public synchronized Scrambler get(String name) throws IOException {
+		Scrambler res = liveSessions.get(name);
+
+		if (res != null)
+			return res;
+
+		byte[] state = storedSessions.remove(name);
+		Path path = spilledSessions.remove(name);
+
+		if (path != null) {
+			state = Files.readAllBytes(path);
+			Files.deleteIfExists(path);
+		}
+
+		if (state == null || (res = Scrambler.decodeState(ByteBuffer.wrap(state), templates)) == null)
+			return null;
+
+		setLive(name, res, findTemplate(res).getValue());
+		evict();
+
+		return res;
+	}
+
+	/**
+	 * セッションを削除します。
+	 * 
+	 * @param name セッションの名前。
+	 * @return 削除された場合は真、存在しない場合は偽。
+	 * @throws IOException 退避ファイルの削除に失敗した場合。
+	 */
+	public synchronized boolean remove(String name) throws IOException {
+		return discard(name);
+	}
+
+	/**
+	 * 稼働中のセッションの個数を取得します。
+	 * 
+	 * @return 個数。
+	 */
+	public synchronized int getLiveSessionNum() {
+		return liveSessions.size();
+	}
+
+	/**
+	 * 退避したセッションの個数を取得します。
+	 * 
+	 * @return 個数。
+	 */
+	public synchronized int getStoredSessionNum() {
+		return storedSessions.size() + spilledSessions.size();
+	}
+
+	/**
+	 * 稼働中のセッションの推定メモリー使用量の合計を取得します。
+	 * 雛形と共有している表は含まれません。
+	 * 
+	 * @return バイト数。
+	 */
+	public synchronized long getLiveMemorySize() {
+		return liveMemorySize;
+	}
+
+	/**
+	 * 雛形の個数を取得します。
+	 * 
+	 * @return 個数。
+	 */
+	public synchronized int getTemplateNum() {
+		return templates.size();
+	}
+
+	/**
+	 * スクランブラーと同じ配線の雛形を探します。
+	 * 雛形から複製された配線表はインスタンスの比較のみで判別され、それ以外は配線表の鍵で判別されます。
+	 * 
+	 * @param scrambler スクランブラー。
+	 * @return 配線表の鍵と雛形の組。
+	 * 雛形が存在しない場合は、雛形がNULLの組が返されます。
+	 */
+	private Map.Entry<String, Scrambler> findTemplate(Scrambler scrambler) {
+		for (Map.Entry<String, Scrambler> entry : templates.entrySet())
+			if (scrambler.sharesWiring(entry.getValue()))
+				return entry;
+
+		String wiringKey = scrambler.getWiringKey();
+
+		return new AbstractMap.SimpleEntry<String, Scrambler>(wiringKey, templates.get(wiringKey));
+	}
+
+	/**
+	 * セッションを稼働中として登録します。
+	 * 
+	 * @param name セッションの名前。
+	 * @param scrambler スクランブラー。
+	 * @param template 同じ配線の雛形（存在しない場合はNULL）。
+	 */
+	private void setLive(String name, Scrambler scrambler, Scrambler template) {
+		long size = scrambler.getUnsharedMemorySize(template);
+
+		liveSessions.put(name, scrambler);
+		liveSizes.put(name, size);
+		liveMemorySize += size;
+	}
+
+	/**
+	 * セッションを稼働中と退避先の両方から削除します。
+	 * 
+	 * @param name セッションの名前。
+	 * @return 削除された場合は真、存在しない場合は偽。
+	 * @throws IOException 退避ファイルの削除に失敗した場合。
+	 */
+	private boolean discard(String name) throws IOException {
+		boolean res = false;
+
+		if (liveSessions.remove(name) != null) {
+			liveMemorySize -= liveSizes.remove(name);
+			res = true;
+		}
+
+		res |= storedSessions.remove(name) != null;
+
+		Path path = spilledSessions.remove(name);
+
+		if (path != null) {
+			Files.deleteIfExists(path);
+			res = true;
+		}
+
+		return res;
+	}
+
+	/**
+	 * 推定メモリー使用量の合計が上限以下になるまで、最後に使用された日時が古いセッションから退避します。
+	 * 直前に使用されたセッションは退避されません。
+	 * 
+	 * @throws IOException ディレクトリーへの書き込みに失敗した場合。
+	 */
+	private void evict() throws IOException {
+		Iterator<Map.Entry<String, Scrambler>> iterator = liveSessions.entrySet().iterator();
+
+		while (liveMemorySize > memoryLimit && liveSessions.size() > 1) {
+			Map.Entry<String, Scrambler> entry = iterator.next();
+			String name = entry.getKey();
+			Scrambler scrambler = entry.getValue();
+
+			// 退避までに配線が変更されている場合があるため、雛形は退避の時点で探す
+
+			Map.Entry<String, Scrambler> template = findTemplate(scrambler);
+			ByteBuffer state = scrambler.encodeState(template.getValue() != null ? template.getKey() : null);
+
+			if (directory != null) {
+				Files.createDirectories(directory);
+
+				Path path = directory.resolve((nextFileId++) + SESSION_FILE_SUFFIX);
+
+				Files.write(path, state.array());
+				spilledSessions.put(name, path);
+			} else {
+				storedSessions.put(name, state.array());
+			}
+
+			iterator.remove();
+			liveMemorySize -= liveSizes.remove(name);
+		}
+	}
+}
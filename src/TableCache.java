@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 展開した表のディスクキャッシュ
+ * 文字セット、配線表、ローターの個数のハッシュ値を鍵として、展開した表をディレクトリーへ保存します。
+ * 保存された表はメモリーマップで読み込まれるため、再起動後も表を展開し直す必要がありません。
+ * 合計の大きさが上限を超えた場合は、最後に使用された日時が古い表から削除されます。
+ * 複数のプロセスで一つのディレクトリーを共有できます。
+ * 作成したディレクトリーには、POSIXのファイルシステムでは所有者のみが読み書きできる権限が与えられます。
+ */
+public class TableCache {
+	/** 表のファイルの識別子 */
+	private static final int TABLE_FILE_MAGIC = 0x454E5443;
+	/** 表のファイルの版数 */
+	private static final int TABLE_FILE_VERSION = 1;
+	/** 表のファイルの拡張子 */
+	private static final String TABLE_FILE_SUFFIX = ".tbl";
+	/** 先頭の長さ（バイト） */
+	private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+	/** 書き込みのバッファーの長さ（バイト） */
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	/** 保存先のディレクトリー */
+	private final Path directory;
+	/** 合計の大きさの上限（バイト） */
+	private final long sizeLimit;
+
+	/**
+	 * ディレクトリーと上限を基にキャッシュを生成します。
+	 * ディレクトリーは最初の保存時に作成されます。
+	 * 
+	 * @param directory 保存先のディレクトリー。
+	 * @param sizeLimit 合計の大きさの上限（バイト）。
+	 */
+	public TableCache(Path directory, long sizeLimit) {
+		this.directory = directory;
+		this.sizeLimit = sizeLimit;
+	}
+
+	/**
+	 * 保存先のディレクトリーを取得します。
+	 * 
+	 * @return ディレクトリー。
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * 合計の大きさの上限を取得します。
+	 * 
+	 * @return バイト数。
+	 */
+	public long getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/**
+	 * 構成を基に鍵を生成します。
+	 * 
+	 * @param kind 表の種類。
+	 * @param charSet 文字セット。
+	 * @param reflectorTable リフレクターの配線表。
+	 * @param forwardTables ローターの配線表。
+	 * @return SHA-256のハッシュ値の16進数の文字列。
+	 */
+	public static String createKey(String kind, String charSet, WiringTable reflectorTable,
+			WiringTable[] forwardTables) {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * (3 + charSet.length() * (2 + forwardTables.length)));
+
+		buf.putInt(TABLE_FILE_VERSION).putInt(charSet.length()).putInt(forwardTables.length);
+
+		for (int i = 0; i < charSet.length(); i++)
+			buf.putInt(charSet.charAt(i));
+
+		reflectorTable.writeTo(buf);
+
+		for (WiringTable forwardTable : forwardTables)
+			forwardTable.writeTo(buf);
+
+		digest.update(kind.getBytes(StandardCharsets.UTF_8));
+		digest.update(buf.flip());
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * 保存された表をメモリーマップで読み込みます。
+	 * 読み込まれた表は最後に使用された日時が更新されます。
+	 * 
+	 * @param key 鍵。
+	 * @param length 表の要素数。
+	 * @return 表。
+	 * 保存されていない場合や、識別子、版数、要素数が異なる場合はNULLが返されます。
+	 * @throws IOException 読み込みに失敗した場合。
+	 */
+	public WiringTable load(String key, long length) throws IOException {
+		Path path = directory.resolve(key + TABLE_FILE_SUFFIX);
+
+		if (!Files.isRegularFile(path))
+			return null;
+
+		ByteBuffer buf = WiringTable.map(path).order(ByteOrder.nativeOrder());
+
+		// バイト順が異なる環境で保存された表は識別子が一致しない
+
+		if (buf.limit() != HEADER_SIZE + length * Integer.BYTES || buf.getInt(0) != TABLE_FILE_MAGIC
+				|| buf.getInt(Integer.BYTES) != TABLE_FILE_VERSION || buf.getLong(Integer.BYTES * 2) != length)
+			return null;
+
+		Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+
+		return WiringTable.wrap(buf, HEADER_SIZE, (int) length);
+	}
+
+	/**
+	 * 表を保存し、合計の大きさが上限を超えた場合は古い表を削除します。
+	 * 一時ファイルへ書き込んでから置き換えるため、読み込み中の他のプロセスが不完全な表を参照することはありません。
+	 * 
+	 * @param key 鍵。
+	 * @param table 表。
+	 * @return 保存された場合は真、表が上限より大きい場合は偽。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	public boolean store(String key, WiringTable table) throws IOException {
+		long size = HEADER_SIZE + (long) table.length() * Integer.BYTES;
+
+		if (size > sizeLimit)
+			return false;
+
+		createDirectory();
+
+		Path path = directory.resolve(key + TABLE_FILE_SUFFIX);
+		Path tempPath = Files.createTempFile(directory, key, ".tmp");
+
+		try {
+			try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+				ByteBuffer buf = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+
+				buf.putInt(TABLE_FILE_MAGIC).putInt(TABLE_FILE_VERSION).putLong(table.length());
+
+				for (int i = 0; i < table.length(); i++) {
+					if (!buf.hasRemaining())
+						writeFully(channel, buf);
+
+					buf.putInt(table.get(i));
+				}
+
+				writeFully(channel, buf);
+			}
+
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+
+		evict(path);
+
+		return true;
+	}
+
+	/**
+	 * 保存先のディレクトリーが存在しない場合は作成します。
+	 * POSIXのファイルシステムでは、他のユーザーが表を読み書きできないよう所有者のみに権限を与えます。
+	 * 
+	 * @throws IOException 作成に失敗した場合。
+	 */
+	private void createDirectory() throws IOException {
+		if (Files.isDirectory(directory))
+			return;
+
+		if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createDirectories(directory,
+					PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		} else {
+			Files.createDirectories(directory);
+		}
+	}
+
+	/**
+	 * バッファーの内容を全てチャンネルへ書き込み、バッファーを空にします。
+	 * 
+	 * @param channel 書き込み先のチャンネル。
+	 * @param buf 書き込むバッファー。
+	 * @throws IOException 書き込みに失敗した場合。
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+
+		while (buf.hasRemaining())
+			channel.write(buf);
+
+		buf.clear();
+	}
+
+	/**
+	 * 合計の大きさが上限以下になるまで、最後に使用された日時が古い表から削除します。
+	 * 
+	 * @param keepPath 削除しない表のパス。
+	 * @throws IOException ディレクトリーの読み込みに失敗した場合。
+	 */
+	private void evict(Path keepPath) throws IOException {
+		List<Path> paths = new ArrayList<Path>();
+		Map<Path, FileTime> lastUsedTimes = new HashMap<Path, FileTime>();
+		long totalSize = 0;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TABLE_FILE_SUFFIX)) {
+			for (Path path : stream) {
+				try {
+					lastUsedTimes.put(path, Files.getLastModifiedTime(path));
+					totalSize += Files.size(path);
+					paths.add(path);
+				} catch (IOException e) {
+					continue;
+				}
+			}
+		}
+
+		paths.sort(Comparator.comparing(lastUsedTimes::get));
+
+		for (Path path : paths) {
+			if (totalSize <= sizeLimit)
+				break;
+
+			if (path.equals(keepPath))
+				continue;
+
+			// 他のプロセスが削除済みの場合や、マップ中で削除できない場合は無視する
+
+			try {
+				long size = Files.size(path);
+
+				if (Files.deleteIfExists(path))
+					totalSize -= size;
+			} catch (IOException e) {
+				continue;
+			}
+		}
+	}
+}
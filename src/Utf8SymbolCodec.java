@@ -0,0 +1,331 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * UTF-8と文字セットの番地の相互変換
+ * UTF-8のバイト列を文字列へ復号せずに1文字ずつ読み取り、文字コードを添字とする表から直接番地へ変換します。
+ * 変換後の番地は事前に符号化したバイト列として直接書き込まれるため、中間の文字配列や文字列を生成しません。
+ * 文字セットに存在しない文字と不正なバイト列は、元のバイト列のまま出力されます。
+ * 生成後は変更されないため、複数のスレッドから同時に使用できます。
+ */
+public class Utf8SymbolCodec {
+	/** 1文字（サロゲートペアの場合は2文字）の変換で出力される最大の長さ（バイト） */
+	private static final int MAX_OUTPUT_SIZE = 6;
+	/** 読み取りの結果：バイト列が途中で終わっている */
+	private static final int UNDERFLOW = -1;
+	/** 読み取りの結果：不正なバイト列 */
+	private static final int MALFORMED = -2;
+	/** 不正なバイト列を番地へ変換する場合の代替文字 */
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+	/** 読み書きのバッファーの長さ（バイト） */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** 文字コードを添字とする表 */
+	private final int[] codeTable;
+	/** 番地を添字とする、UTF-8の符号（下位3バイト）と長さ（最上位バイト） */
+	private final int[] symbolCodes;
+
+	/**
+	 * 文字セットと表を基に生成します。
+	 * 
+	 * @param charSet 文字セット。
+	 * @param codeTable 文字コードを添字とする表。
+	 * 要素が0以上の文字は文字セットにおける番地として変換されます。
+	 * {@link NormalizationPolicy#DROP}の文字は削除されます。
+	 * その他の負の値の文字は、値のビット反転の文字として出力されます（元の文字と同じ場合は元のバイト列のまま）。
+	 * 表の範囲外の文字は元のバイト列のまま出力されます。
+	 * 番地を変換して書き込む場合は{@link NormalizationPolicy#compile(String)}で生成された表を、
+	 * 番地の列の読み取りのみに使用する場合は{@link Utility#createCharIndexTable(String)}で生成された表も指定できます。
+	 */
+	public Utf8SymbolCodec(String charSet, int[] codeTable) {
+		this.codeTable = codeTable;
+
+		symbolCodes = new int[charSet.length()];
+
+		for (int i = 0; i < charSet.length(); i++)
+			symbolCodes[i] = encodeChar(charSet.charAt(i));
+	}
+
+	/**
+	 * バイト列を読み取って番地へ変換し、変換後の番地をバイト列として書き込みます。
+	 * 入力の末尾で文字が途中で終わっている場合は、そのバイト列を読み取らずに残します。
+	 * 出力の残りが少ない場合は、入力を全て読み取る前に終了します。
+	 * 
+	 * @param in 入力のバッファー。
+	 * @param out 出力のバッファー。
+	 * @param converter 番地の変換。
+	 * 対応する文字が存在しない場合は-1を返します。
+	 * @param endOfInput 入力が最後の場合は真。
+	 * 末尾の不完全なバイト列は不正なバイト列として出力されます。
+	 * @return 変換された番地の個数。
+	 */
+	public int transcode(ByteBuffer in, ByteBuffer out, IntUnaryOperator converter, boolean endOfInput) {
+		int res = 0;
+
+		while (in.hasRemaining() && out.remaining() >= MAX_OUTPUT_SIZE) {
+			int start = in.position();
+			int codePoint = next(in, endOfInput);
+
+			if (codePoint == UNDERFLOW)
+				break;
+
+			if (codePoint == MALFORMED) {
+				out.put(in.get(start));
+			} else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				int value = lookup(codePoint);
+
+				if (value == ~codePoint) {
+					copy(in, start, out);
+				} else {
+					res += put(out, value, converter);
+				}
+			} else {
+				char high = Character.highSurrogate(codePoint), low = Character.lowSurrogate(codePoint);
+				int highValue = lookup(high), lowValue = lookup(low);
+
+				if (highValue == ~high && lowValue == ~low) {
+					copy(in, start, out);
+				} else {
+					res += put(out, highValue, converter);
+					res += put(out, lowValue, converter);
+				}
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * チャンネルの末尾までバイト列を読み取って番地へ変換し、変換後のバイト列を別のチャンネルへ書き込みます。
+	 * 
+	 * @param in 入力のチャンネル。
+	 * @param out 出力のチャンネル。
+	 * @param converter 番地の変換。
+	 * 対応する文字が存在しない場合は-1を返します。
+	 * @return 変換された番地の個数。
+	 * @throws IOException 読み書きに失敗した場合。
+	 */
+	public long transcode(ReadableByteChannel in, WritableByteChannel out, IntUnaryOperator converter)
+			throws IOException {
+		ByteBuffer inBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		ByteBuffer outBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		boolean endOfInput = false;
+		long res = 0;
+
+		while (true) {
+			if (!endOfInput && in.read(inBuf) == -1)
+				endOfInput = true;
+
+			inBuf.flip();
+			res += transcode(inBuf, outBuf, converter, endOfInput);
+
+			boolean drained = !inBuf.hasRemaining();
+
+			inBuf.compact();
+			outBuf.flip();
+
+			while (outBuf.hasRemaining())
+				out.write(outBuf);
+
+			outBuf.clear();
+
+			if (endOfInput && drained)
+				break;
+		}
+
+		return res;
+	}
+
+	/**
+	 * バイト列を読み取り、文字セットに存在する文字のみを番地の配列へ格納します。
+	 * 文字セットに存在しない文字は読み飛ばされ、不正なバイト列は代替文字（U+FFFD）として扱われます。
+	 * 入力の末尾で文字が途中で終わっている場合は、そのバイト列を読み取らずに残します。
+	 * 
+	 * @param in 入力のバッファー。
+	 * @param symbols 番地の配列。
+	 * @param length 番地の配列の有効な要素数。
+	 * 配列が一杯になった場合は、入力を全て読み取る前に終了します。
+	 * @param endOfInput 入力が最後の場合は真。
+	 * @return 格納後の有効な要素数。
+	 */
+	public int decodeSymbols(ByteBuffer in, int[] symbols, int length, boolean endOfInput) {
+		while (in.hasRemaining() && length < symbols.length - 1) {
+			int codePoint = next(in, endOfInput);
+
+			if (codePoint == UNDERFLOW)
+				break;
+
+			if (codePoint == MALFORMED)
+				codePoint = REPLACEMENT_CHAR;
+
+			if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				int value = lookup(codePoint);
+
+				if (value >= 0)
+					symbols[length++] = value;
+			} else {
+				int highValue = lookup(Character.highSurrogate(codePoint));
+				int lowValue = lookup(Character.lowSurrogate(codePoint));
+
+				if (highValue >= 0)
+					symbols[length++] = highValue;
+
+				if (lowValue >= 0)
+					symbols[length++] = lowValue;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * 文字コードを表から引きます。
+	 * 
+	 * @param charCode 文字コード。
+	 * @return 表の要素。
+	 * 表の範囲外の場合は文字コードのビット反転が返されます。
+	 */
+	private int lookup(int charCode) {
+		return charCode < codeTable.length ? codeTable[charCode] : ~charCode;
+	}
+
+	/**
+	 * 表の要素に従って1文字を書き込みます。
+	 * 
+	 * @param out 出力のバッファー。
+	 * @param value 表の要素。
+	 * @param converter 番地の変換。
+	 * @return 番地を変換した場合は1、それ以外は0。
+	 */
+	private int put(ByteBuffer out, int value, IntUnaryOperator converter) {
+		if (value >= 0) {
+			int charSetIndex = converter.applyAsInt(value);
+
+			// 対応する文字が存在しない場合は文字列の変換と同じくNUL文字を出力する
+
+			put(out, charSetIndex != -1 ? symbolCodes[charSetIndex] : encodeChar('\0'));
+
+			return 1;
+		}
+
+		if (value != NormalizationPolicy.DROP)
+			put(out, encodeChar((char) ~value));
+
+		return 0;
+	}
+
+	/**
+	 * 符号化された文字を書き込みます。
+	 * 
+	 * @param out 出力のバッファー。
+	 * @param code {@link #encodeChar(char)}で符号化された文字。
+	 */
+	private static void put(ByteBuffer out, int code) {
+		for (int shift = ((code >>> 24) - 1) * 8; shift >= 0; shift -= 8)
+			out.put((byte) (code >>> shift));
+	}
+
+	/**
+	 * 入力の指定の位置から現在の位置までのバイト列をそのまま書き込みます。
+	 * 
+	 * @param in 入力のバッファー。
+	 * @param start 始点。
+	 * @param out 出力のバッファー。
+	 */
+	private static void copy(ByteBuffer in, int start, ByteBuffer out) {
+		for (int i = start; i < in.position(); i++)
+			out.put(in.get(i));
+	}
+
+	/**
+	 * 1文字をUTF-8で符号化します。
+	 * 単独のサロゲートは{@link java.nio.charset.StandardCharsets#UTF_8}と同じく"?"へ置換されます。
+	 * 
+	 * @param charCode 文字。
+	 * @return 下位3バイトに符号、最上位バイトに長さを格納した値。
+	 */
+	private static int encodeChar(char charCode) {
+		if (charCode < 0x80)
+			return 1 << 24 | charCode;
+
+		if (charCode < 0x800)
+			return 2 << 24 | (0xC0 | charCode >> 6) << 8 | 0x80 | charCode & 0x3F;
+
+		if (Character.isSurrogate(charCode))
+			return 1 << 24 | '?';
+
+		return 3 << 24 | (0xE0 | charCode >> 12) << 16 | (0x80 | charCode >> 6 & 0x3F) << 8 | 0x80 | charCode & 0x3F;
+	}
+
+	/**
+	 * 入力の現在の位置から1文字を読み取ります。
+	 * 先頭のバイトから後続のバイトの個数と2番目のバイトの範囲を決め、冗長な符号、サロゲート、範囲外の文字を不正なバイト列とします。
+	 * 
+	 * @param in 入力のバッファー。
+	 * 読み取った文字の長さだけ位置が進みます。
+	 * 不正なバイト列の場合は1バイトだけ進みます。
+	 * @param endOfInput 入力が最後の場合は真。
+	 * @return 文字コード。
+	 * 文字が途中で終わっている場合はUNDERFLOW（位置は進みません）、不正なバイト列の場合はMALFORMEDが返されます。
+	 */
+	private static int next(ByteBuffer in, boolean endOfInput) {
+		int start = in.position();
+		int lead = in.get(start) & 0xFF;
+
+		if (lead < 0x80) {
+			in.position(start + 1);
+
+			return lead;
+		}
+
+		int length, codePoint;
+
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			length = 2;
+			codePoint = lead & 0x1F;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			length = 3;
+			codePoint = lead & 0x0F;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			length = 4;
+			codePoint = lead & 0x07;
+		} else {
+			in.position(start + 1);
+
+			return MALFORMED;
+		}
+
+		int min = lead == 0xE0 ? 0xA0 : lead == 0xF0 ? 0x90 : 0x80;
+		int max = lead == 0xED ? 0x9F : lead == 0xF4 ? 0x8F : 0xBF;
+
+		for (int i = 1; i < length; i++) {
+			if (start + i >= in.limit()) {
+				if (!endOfInput)
+					return UNDERFLOW;
+
+				in.position(start + 1);
+
+				return MALFORMED;
+			}
+
+			int value = in.get(start + i) & 0xFF;
+
+			if (value < min || value > max) {
+				in.position(start + 1);
+
+				return MALFORMED;
+			}
+
+			codePoint = codePoint << 6 | value & 0x3F;
+			min = 0x80;
+			max = 0xBF;
+		}
+
+		in.position(start + length);
+
+		return codePoint;
+	}
+}
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -24,6 +25,42 @@ public class Utility {
 		return res >= 0 ? res : cycle + res;
 	}
 
+	/**
+	 * 文字セットの各文字を番地へ対応させる逆引きの表を生成します。
+	 * 表の長さは文字セットに含まれる最大の文字コードに1を加えた値です。
+	 * 
+	 * @param charSet 文字セット。
+	 * @return 文字コードを添字とし、文字セットにおける番地を要素とする表。
+	 * 文字セットに存在しない文字の要素は-1です。
+	 */
+	public static int[] createCharIndexTable(String charSet) {
+		int maxCharCode = 0;
+
+		for (int i = 0; i < charSet.length(); i++)
+			maxCharCode = Math.max(maxCharCode, charSet.charAt(i));
+
+		int[] res = new int[maxCharCode + 1];
+
+		Arrays.fill(res, -1);
+
+		for (int i = charSet.length() - 1; i >= 0; i--)
+			res[charSet.charAt(i)] = i;
+
+		return res;
+	}
+
+	/**
+	 * 逆引きの表を基に文字の番地を取得します。
+	 * 
+	 * @param charIndexTable {@link #createCharIndexTable(String)}で生成された表。
+	 * @param charCode 文字。
+	 * @return 文字セットにおける番地。
+	 * 文字セットに存在しない文字の場合は-1が返されます。
+	 */
+	public static int getCharIndex(int[] charIndexTable, char charCode) {
+		return charCode < charIndexTable.length ? charIndexTable[charCode] : -1;
+	}
+
 	/**
 	 * 文字列に重複した（2つ以上の）文字が存在しないか確認します。
 	 * 
@@ -0,0 +1,646 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 配線の復元
+ * 既知の平文と暗号文の組から、一つのローターの未知の配線（出力文字セット）を求めます。
+ * 他のローターとリフレクターの配線、各組の開始時の位相は既知である必要があります。
+ * 未知のローターの配線の各番地を変数とし、文字セットの長さのビット集合を定義域とする制約充足問題として、
+ * 制約伝播とバックトラックで解きます。
+ * 未知のローターの位相のずれ（リングの設定）は桁上がりの時期を変えるため、ずれの仮説ごとに並列に解きます。
+ */
+public class WiringSolver {
+	/** 1つの仮説で探索する節点の上限 */
+	private static final int NODE_LIMIT = 1 << 20;
+
+	/** 文字セット */
+	private final String charSet;
+	/** 文字セットの逆引きの表 */
+	private final int[] charIndexTable;
+	/** リフレクターの配線表 */
+	private final WiringTable reflectorTable;
+	/** ローターの配線表 */
+	private final WiringTable[] forwardTables;
+	/** ローターの逆引きの配線表 */
+	private final WiringTable[] reverseTables;
+	/** 未知のローターの番地 */
+	private final int rotorIndex;
+	/** 組ごとの開始時の位相 */
+	private final List<int[]> startOffsetsList = new ArrayList<int[]>();
+	/** 組ごとの平文の番地 */
+	private final List<int[]> plainIndexesList = new ArrayList<int[]>();
+	/** 組ごとの暗号文の番地 */
+	private final List<int[]> cipherIndexesList = new ArrayList<int[]>();
+
+	/**
+	 * 配線表を基に生成します。
+	 * 未知のローターの配線表は使用されません。
+	 * 
+	 * @param charSet 文字セット。
+	 * @param reflectorTable リフレクターの配線表。
+	 * @param forwardTables ローターの配線表。
+	 * @param reverseTables ローターの逆引きの配線表。
+	 * @param rotorIndex 未知のローターの番地。
+	 */
+	WiringSolver(String charSet, WiringTable reflectorTable, WiringTable[] forwardTables, WiringTable[] reverseTables,
+			int rotorIndex) {
+		this.charSet = charSet;
+		this.charIndexTable = Utility.createCharIndexTable(charSet);
+		this.reflectorTable = reflectorTable;
+		this.forwardTables = forwardTables;
+		this.reverseTables = reverseTables;
+		this.rotorIndex = rotorIndex;
+	}
+
+	/**
+	 * 平文と暗号文の組を追加します。
+	 * 文字セットに存在しない文字はローターを回転させないため、両方の同じ位置に同じ文字が存在する必要があります。
+	 * 
+	 * @param offsetText 開始時の位相に対応する文字セットの文字列。
+	 * ローターの個数と異なる長さの場合や文字セットに存在しない文字が含まれる場合はエラーコード1が返されます。
+	 * @param plaintext 平文。
+	 * @param ciphertext 暗号文。
+	 * 平文と長さが異なる場合や文字セットに存在しない文字の位置が一致しない場合はエラーコード2が返されます。
+	 * @return エラーコード。
+	 * 正常に追加された場合は0が返されます。
+	 */
+	public int addPair(String offsetText, String plaintext, String ciphertext) { // => error code
+		if (offsetText.length() != forwardTables.length)
+			return 1;
+
+		int[] startOffsets = new int[forwardTables.length];
+
+		for (int i = 0; i < startOffsets.length; i++)
+			if ((startOffsets[i] = Utility.getCharIndex(charIndexTable, offsetText.charAt(i))) == -1)
+				return 1;
+
+		if (plaintext.length() != ciphertext.length())
+			return 2;
+
+		int[] plainIndexes = new int[plaintext.length()];
+		int[] cipherIndexes = new int[ciphertext.length()];
+		int length = 0;
+
+		for (int i = 0; i < plaintext.length(); i++) {
+			int plainIndex = Utility.getCharIndex(charIndexTable, plaintext.charAt(i));
+			int cipherIndex = Utility.getCharIndex(charIndexTable, ciphertext.charAt(i));
+
+			if (plainIndex == -1 && cipherIndex == -1)
+				continue;
+
+			if (plainIndex == -1 || cipherIndex == -1)
+				return 2;
+
+			plainIndexes[length] = plainIndex;
+			cipherIndexes[length++] = cipherIndex;
+		}
+
+		startOffsetsList.add(startOffsets);
+		plainIndexesList.add(Arrays.copyOf(plainIndexes, length));
+		cipherIndexesList.add(Arrays.copyOf(cipherIndexes, length));
+
+		return 0;
+	}
+
+	/**
+	 * 全ての位相のずれの仮説について並列に配線を求めます。
+	 * 
+	 * @return 矛盾のない解が存在した仮説の解（ずれの昇順）。
+	 */
+	public List<Solution> solve() {
+		return IntStream.range(0, charSet.length()).parallel().mapToObj(this::solve).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * 位相のずれの仮説について配線を求めます。
+	 * 
+	 * @param shift 各組の開始時の位相に対する未知のローターの実際の位相のずれ。
+	 * @return 解。
+	 * 矛盾する場合や探索の上限に達した場合はNULLが返されます。
+	 */
+	public Solution solve(int shift) {
+		Problem problem = new Problem(shift);
+		long[][] domains = problem.createDomains();
+
+		if (!problem.propagate(domains, allVariables()))
+			return null;
+
+		int determinedNum = 0;
+
+		for (long[] domain : domains)
+			if (cardinality(domain) == 1)
+				determinedNum++;
+
+		problem.search(domains);
+
+		if (problem.firstSolution == null)
+			return null;
+
+		char[] charSetPair = new char[charSet.length()];
+
+		for (int i = 0; i < charSetPair.length; i++)
+			charSetPair[i] = charSet.charAt(problem.firstSolution[i]);
+
+		return new Solution(shift, new String(charSetPair), problem.solutionNum == 1, determinedNum,
+				problem.nodeNum >= NODE_LIMIT);
+	}
+
+	/**
+	 * 全ての変数の番地を取得します。
+	 * 
+	 * @return 0から文字セットの長さ未満の番地の配列。
+	 */
+	private int[] allVariables() {
+		return IntStream.range(0, charSet.length()).toArray();
+	}
+
+	/**
+	 * ビット集合の要素数を取得します。
+	 * 
+	 * @param domain ビット集合。
+	 * @return 要素数。
+	 */
+	private static int cardinality(long[] domain) {
+		int res = 0;
+
+		for (long word : domain)
+			res += Long.bitCount(word);
+
+		return res;
+	}
+
+	/**
+	 * ビット集合の最小の要素を取得します。
+	 * 
+	 * @param domain ビット集合。
+	 * @return 最小の要素。
+	 * 空の場合は-1が返されます。
+	 */
+	private static int first(long[] domain) {
+		for (int i = 0; i < domain.length; i++)
+			if (domain[i] != 0)
+				return i * Long.SIZE + Long.numberOfTrailingZeros(domain[i]);
+
+		return -1;
+	}
+
+	/**
+	 * 仮説ごとの制約充足問題
+	 * 各文字について、未知の配線Wと、未知のローター以外の経路による置換Mから、W(v) = M(W(u))の制約が得られます。
+	 */
+	private class Problem {
+		/** 文字セットの長さ */
+		private final int n;
+		/** ビット集合の語数 */
+		private final int wordNum;
+		/** 制約の番地u */
+		private final int[] sources;
+		/** 制約の番地v */
+		private final int[] targets;
+		/** 制約の置換Mの番地 */
+		private final int[] mappingIndexes;
+		/** 置換M（未知のローターより後ろの経路） */
+		private final List<int[]> mappings = new ArrayList<int[]>();
+		/** 置換Mの逆置換 */
+		private final List<int[]> inverseMappings = new ArrayList<int[]>();
+		/** 変数ごとの制約の番地 */
+		private final int[][] constraintsByVariable;
+		/** 最初に見つかった解 */
+		private int[] firstSolution = null;
+		/** 見つかった解の個数（2で打ち切り） */
+		private int solutionNum = 0;
+		/** 探索した節点の個数 */
+		private int nodeNum = 0;
+
+		/**
+		 * 全ての組の各文字から制約を生成します。
+		 * 
+		 * @param shift 未知のローターの位相のずれ。
+		 */
+		Problem(int shift) {
+			n = charSet.length();
+			wordNum = (n + Long.SIZE - 1) / Long.SIZE;
+
+			List<int[]> constraints = new ArrayList<int[]>();
+			Map<String, Integer> mappingIndexMap = new HashMap<String, Integer>();
+
+			for (int pairIndex = 0; pairIndex < startOffsetsList.size(); pairIndex++) {
+				int[] offsets = startOffsetsList.get(pairIndex).clone();
+				int[] plainIndexes = plainIndexesList.get(pairIndex);
+				int[] cipherIndexes = cipherIndexesList.get(pairIndex);
+
+				offsets[rotorIndex] = (offsets[rotorIndex] + shift) % n;
+
+				for (int i = 0; i < plainIndexes.length; i++) {
+					for (int j = 0; j < offsets.length && ++offsets[j] == n; j++)
+						offsets[j] = 0;
+
+					int source = forwardBefore(offsets, plainIndexes[i]);
+					int target = forwardBefore(offsets, cipherIndexes[i]);
+
+					if (source == -1 || target == -1)
+						continue;
+
+					// 未知のローターより後ろの位相が同じ文字は置換Mを共有する
+
+					String upperOffsets = Arrays.toString(Arrays.copyOfRange(offsets, rotorIndex + 1, offsets.length));
+					Integer mappingIndex = mappingIndexMap.get(upperOffsets);
+
+					if (mappingIndex == null) {
+						int[] mapping = new int[n];
+						int[] inverseMapping = new int[n];
+
+						Arrays.fill(inverseMapping, -1);
+
+						for (int y = 0; y < n; y++)
+							if ((mapping[y] = middle(offsets, y)) != -1)
+								inverseMapping[mapping[y]] = y;
+
+						mappingIndex = mappings.size();
+						mappings.add(mapping);
+						inverseMappings.add(inverseMapping);
+						mappingIndexMap.put(upperOffsets, mappingIndex);
+					}
+
+					int offset = offsets[rotorIndex];
+
+					constraints.add(new int[] { (source + offset) % n, (target + offset) % n, mappingIndex });
+				}
+			}
+
+			sources = new int[constraints.size()];
+			targets = new int[constraints.size()];
+			mappingIndexes = new int[constraints.size()];
+
+			List<List<Integer>> byVariable = new ArrayList<List<Integer>>();
+
+			for (int i = 0; i < n; i++)
+				byVariable.add(new ArrayList<Integer>());
+
+			for (int i = 0; i < constraints.size(); i++) {
+				sources[i] = constraints.get(i)[0];
+				targets[i] = constraints.get(i)[1];
+				mappingIndexes[i] = constraints.get(i)[2];
+				byVariable.get(sources[i]).add(i);
+
+				if (targets[i] != sources[i])
+					byVariable.get(targets[i]).add(i);
+			}
+
+			constraintsByVariable = new int[n][];
+
+			for (int i = 0; i < n; i++)
+				constraintsByVariable[i] = byVariable.get(i).stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * 未知のローターより前のローターを順方向に通過させます。
+		 * 
+		 * @param offsets 全てのローターの位相。
+		 * @param charSetIndex 文字の番地。
+		 * @return 未知のローターへ入力される番地。
+		 * 対応する文字が存在しない場合は-1が返されます。
+		 */
+		private int forwardBefore(int[] offsets, int charSetIndex) {
+			for (int i = 0; i < rotorIndex && charSetIndex != -1; i++)
+				charSetIndex = forwardTables[i].get((charSetIndex + offsets[i]) % n);
+
+			return charSetIndex;
+		}
+
+		/**
+		 * 未知のローターより後ろのローター、リフレクター、逆方向のローターを通過させます。
+		 * 
+		 * @param offsets 全てのローターの位相。
+		 * @param charSetIndex 未知のローターから出力された番地。
+		 * @return 未知のローターへ逆方向に入力される番地。
+		 * 対応する文字が存在しない場合は-1が返されます。
+		 */
+		private int middle(int[] offsets, int charSetIndex) {
+			for (int i = rotorIndex + 1; i < forwardTables.length && charSetIndex != -1; i++)
+				charSetIndex = forwardTables[i].get((charSetIndex + offsets[i]) % n);
+
+			if (charSetIndex == -1 || (charSetIndex = reflectorTable.get(charSetIndex)) == -1)
+				return -1;
+
+			for (int i = forwardTables.length - 1; i > rotorIndex; i--) {
+				if ((charSetIndex = reverseTables[i].get(charSetIndex)) == -1)
+					return -1;
+
+				charSetIndex = (charSetIndex - offsets[i] + n) % n;
+			}
+
+			return charSetIndex;
+		}
+
+		/**
+		 * 全ての値を含む定義域を生成します。
+		 * 
+		 * @return 変数ごとのビット集合。
+		 */
+		long[][] createDomains() {
+			long[][] res = new long[n][wordNum];
+
+			for (long[] domain : res) {
+				Arrays.fill(domain, -1L);
+
+				if (n % Long.SIZE != 0)
+					domain[wordNum - 1] = (1L << (n % Long.SIZE)) - 1;
+			}
+
+			return res;
+		}
+
+		/**
+		 * 置換をビット集合へ適用します。
+		 * 
+		 * @param mapping 置換。
+		 * @param domain ビット集合。
+		 * @return 各要素を置換したビット集合。
+		 */
+		private long[] map(int[] mapping, long[] domain) {
+			long[] res = new long[wordNum];
+
+			for (int i = 0; i < wordNum; i++) {
+				for (long word = domain[i]; word != 0; word &= word - 1) {
+					int value = mapping[i * Long.SIZE + Long.numberOfTrailingZeros(word)];
+
+					if (value != -1)
+						res[value / Long.SIZE] |= 1L << (value % Long.SIZE);
+				}
+			}
+
+			return res;
+		}
+
+		/**
+		 * 定義域を制約の積集合へ絞り込みます。
+		 * 
+		 * @param domain 絞り込む定義域。
+		 * @param mask 制約から得られたビット集合。
+		 * @return 変化した場合は1、変化しなかった場合は0、空になった場合は-1。
+		 */
+		private int restrict(long[] domain, long[] mask) {
+			boolean changed = false;
+			boolean empty = true;
+
+			for (int i = 0; i < wordNum; i++) {
+				long word = domain[i] & mask[i];
+
+				changed |= word != domain[i];
+				empty &= word == 0;
+				domain[i] = word;
+			}
+
+			return empty ? -1 : changed ? 1 : 0;
+		}
+
+		/**
+		 * 変数の定義域を、他の変数の定義域を置換したビット集合との積集合へ絞り込みます。
+		 * 
+		 * @param domains 変数ごとの定義域。
+		 * @param variable 絞り込む変数。
+		 * @param mapping 置換。
+		 * @param otherVariable 置換する定義域の変数。
+		 * @param queue 定義域が変化した変数の待ち行列。
+		 * @param queued 待ち行列に存在する変数は真。
+		 * @return 定義域が空にならない場合は真。
+		 */
+		private boolean revise(long[][] domains, int variable, int[] mapping, int otherVariable,
+				ArrayDeque<Integer> queue, boolean[] queued) {
+			int result = restrict(domains[variable], map(mapping, domains[otherVariable]));
+
+			if (result == 1 && !queued[variable]) {
+				queue.add(variable);
+				queued[variable] = true;
+			}
+
+			return result != -1;
+		}
+
+		/**
+		 * 制約と全単射の条件を不動点まで伝播させます。
+		 * 
+		 * @param domains 変数ごとの定義域。
+		 * 絞り込まれます。
+		 * @param changedVariables 定義域が変化した変数。
+		 * @return 矛盾しない場合は真。
+		 */
+		boolean propagate(long[][] domains, int[] changedVariables) {
+			ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+			boolean[] queued = new boolean[n];
+
+			for (int variable : changedVariables) {
+				queue.add(variable);
+				queued[variable] = true;
+			}
+
+			while (!queue.isEmpty()) {
+				while (!queue.isEmpty()) {
+					int variable = queue.poll();
+
+					queued[variable] = false;
+
+					// W(v) ∈ M(D(u))かつW(u) ∈ M^-1(D(v))
+
+					for (int constraintIndex : constraintsByVariable[variable]) {
+						int source = sources[constraintIndex];
+						int target = targets[constraintIndex];
+						int mappingIndex = mappingIndexes[constraintIndex];
+
+						if (!revise(domains, target, mappings.get(mappingIndex), source, queue, queued)
+								|| !revise(domains, source, inverseMappings.get(mappingIndex), target, queue, queued))
+							return false;
+					}
+
+					// 値が確定した変数の値は他の変数から取り除く
+
+					if (cardinality(domains[variable]) == 1) {
+						int value = first(domains[variable]);
+
+						for (int other = 0; other < n; other++) {
+							if (other == variable || (domains[other][value / Long.SIZE] & 1L << (value % Long.SIZE)) == 0)
+								continue;
+
+							domains[other][value / Long.SIZE] &= ~(1L << (value % Long.SIZE));
+
+							if (cardinality(domains[other]) == 0)
+								return false;
+
+							if (!queued[other]) {
+								queue.add(other);
+								queued[other] = true;
+							}
+						}
+					}
+				}
+
+				// 一つの変数にしか残っていない値はその変数に確定する
+
+				for (int value = 0; value < n; value++) {
+					int candidate = -1;
+					int count = 0;
+
+					for (int variable = 0; variable < n && count < 2; variable++) {
+						if ((domains[variable][value / Long.SIZE] & 1L << (value % Long.SIZE)) != 0) {
+							candidate = variable;
+							count++;
+						}
+					}
+
+					if (count == 0)
+						return false;
+
+					if (count == 1 && cardinality(domains[candidate]) > 1) {
+						Arrays.fill(domains[candidate], 0);
+						domains[candidate][value / Long.SIZE] = 1L << (value % Long.SIZE);
+
+						if (!queued[candidate]) {
+							queue.add(candidate);
+							queued[candidate] = true;
+						}
+					}
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * 定義域が最小の変数から値を仮定し、解を2つまで探索します。
+		 * 
+		 * @param domains 伝播済みの定義域。
+		 */
+		void search(long[][] domains) {
+			if (solutionNum >= 2 || ++nodeNum >= NODE_LIMIT)
+				return;
+
+			int variable = -1;
+			int minCardinality = Integer.MAX_VALUE;
+
+			for (int i = 0; i < n; i++) {
+				int currentCardinality = cardinality(domains[i]);
+
+				if (currentCardinality > 1 && currentCardinality < minCardinality) {
+					variable = i;
+					minCardinality = currentCardinality;
+				}
+			}
+
+			if (variable == -1) {
+				if (solutionNum++ == 0) {
+					firstSolution = new int[n];
+
+					for (int i = 0; i < n; i++)
+						firstSolution[i] = first(domains[i]);
+				}
+
+				return;
+			}
+
+			for (int i = 0; i < wordNum; i++) {
+				for (long word = domains[variable][i]; word != 0; word &= word - 1) {
+					long[][] nextDomains = new long[n][];
+
+					for (int j = 0; j < n; j++)
+						nextDomains[j] = domains[j].clone();
+
+					Arrays.fill(nextDomains[variable], 0);
+					nextDomains[variable][i] = Long.lowestOneBit(word);
+
+					if (propagate(nextDomains, new int[] { variable }))
+						search(nextDomains);
+
+					if (solutionNum >= 2 || nodeNum >= NODE_LIMIT)
+						return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 仮説ごとの解
+	 */
+	public static class Solution {
+		/** 未知のローターの位相のずれ */
+		private final int shift;
+		/** 配線（出力文字セット） */
+		private final String charSetPair;
+		/** 解が一意の場合は真 */
+		private final boolean unique;
+		/** 制約伝播のみで確定した番地の個数 */
+		private final int determinedNum;
+		/** 探索の上限に達した場合は真 */
+		private final boolean truncated;
+
+		/**
+		 * 解を生成します。
+		 * 
+		 * @param shift 未知のローターの位相のずれ。
+		 * @param charSetPair 配線。
+		 * @param unique 解が一意の場合は真。
+		 * @param determinedNum 制約伝播のみで確定した番地の個数。
+		 * @param truncated 探索の上限に達した場合は真。
+		 */
+		Solution(int shift, String charSetPair, boolean unique, int determinedNum, boolean truncated) {
+			this.shift = shift;
+			this.charSetPair = charSetPair;
+			this.unique = unique;
+			this.determinedNum = determinedNum;
+			this.truncated = truncated;
+		}
+
+		/**
+		 * 未知のローターの位相のずれを取得します。
+		 * 
+		 * @return 各組の開始時の位相に加えたずれ。
+		 */
+		public int getShift() {
+			return shift;
+		}
+
+		/**
+		 * 配線を取得します。
+		 * 
+		 * @return /SRPで設定できる出力文字セット。
+		 */
+		public String getCharSetPair() {
+			return charSetPair;
+		}
+
+		/**
+		 * 解が一意か確認します。
+		 * 
+		 * @return 他に矛盾のない配線が存在しない場合は真。
+		 */
+		public boolean isUnique() {
+			return unique;
+		}
+
+		/**
+		 * 制約伝播のみで確定した番地の個数を取得します。
+		 * 
+		 * @return 番地の個数。
+		 */
+		public int getDeterminedNum() {
+			return determinedNum;
+		}
+
+		/**
+		 * 探索の上限に達したか確認します。
+		 * 
+		 * @return 上限に達したため一意性を確認できなかった場合は真。
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 配線表
+ * ローター／リフレクターの入出力の対応関係を文字セットの番地で保持する、ヒープ外の読み取り専用の表です。
+ */
+public class WiringTable {
+	/** 配線表の要素 */
+	private final IntBuffer table;
+
+	/**
+	 * 要素を基に配線表を生成します。
+	 * 
+	 * @param table 要素。
+	 */
+	private WiringTable(IntBuffer table) {
+		this.table = table;
+	}
+
+	/**
+	 * 配列を基にヒープ外へ配線表を生成します。
+	 * 
+	 * @param values 文字セットの番地の配列。
+	 * 対応する文字が存在しない要素は-1です。
+	 * @return 配線表。
+	 */
+	public static WiringTable of(int[] values) {
+		IntBuffer table = ByteBuffer.allocateDirect(values.length * Integer.BYTES).order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+
+		table.put(values);
+
+		return new WiringTable(table.asReadOnlyBuffer());
+	}
+
+	/**
+	 * 文字セットと出力文字セットを基にヒープ外へ配線表を生成します。
+	 * 
+	 * @param charSet 入力文字セット。
+	 * @param charSetPair 出力文字セット。
+	 * @return 出力文字セットの各文字の入力文字セットにおける番地を要素とする配線表。
+	 */
+	public static WiringTable of(String charSet, String charSetPair) {
+		int[] values = new int[charSetPair.length()];
+
+		for (int i = 0; i < values.length; i++)
+			values[i] = charSet.indexOf(charSetPair.charAt(i));
+
+		return of(values);
+	}
+
+	/**
+	 * バッファーの一部を配線表として共有します。
+	 * メモリーマップされたバッファーを指定すると、複数のプロセスで一つの配線表を共有できます。
+	 * 
+	 * @param buffer 共有するバッファー。
+	 * @param position 配線表の始点のバイト位置。
+	 * @param length 配線表の要素数。
+	 * @return 配線表。
+	 */
+	public static WiringTable wrap(ByteBuffer buffer, int position, int length) {
+		IntBuffer table = buffer.duplicate().order(buffer.order()).position(position)
+				.limit(position + length * Integer.BYTES).slice().order(buffer.order()).asIntBuffer();
+
+		return new WiringTable(table.asReadOnlyBuffer());
+	}
+
+	/**
+	 * ファイルを読み取り専用でメモリーマップします。
+	 * 
+	 * @param path ファイルのパス。
+	 * @return ファイル全体がマップされたバッファー。
+	 * @throws IOException ファイルを開けない場合。
+	 */
+	public static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * 要素数を取得します。
+	 * 
+	 * @return 要素数。
+	 */
+	public int length() {
+		return table.limit();
+	}
+
+	/**
+	 * 要素を取得します。
+	 * 
+	 * @param index 番地。
+	 * @return 要素。
+	 */
+	public int get(int index) {
+		return table.get(index);
+	}
+
+	/**
+	 * 逆引きの配線表を生成します。
+	 * 重複した要素が存在する場合は最初の番地が優先されます。
+	 * 
+	 * @return 要素と番地を入れ替えた配線表。
+	 * 対応する番地が存在しない要素は-1です。
+	 */
+	public WiringTable inverse() {
+		int[] values = new int[length()];
+
+		Arrays.fill(values, -1);
+
+		for (int i = values.length - 1; i >= 0; i--) {
+			int value = get(i);
+
+			if (value != -1)
+				values[value] = i;
+		}
+
+		return of(values);
+	}
+
+	/**
+	 * 全ての要素が0以上かつ要素数未満であるかを判定します。
+	 * 
+	 * @return 全ての入力に出力が対応する場合は真。
+	 */
+	boolean isComplete() {
+		for (int i = 0; i < length(); i++) {
+			int value = get(i);
+
+			if (value < 0 || value >= length())
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * 2回辿ると元の番地へ戻る表であるかを判定します。
+	 * 
+	 * @return 全ての要素が対応し、かつ対合である場合は真。
+	 */
+	boolean isInvolution() {
+		if (!isComplete())
+			return false;
+
+		for (int i = 0; i < length(); i++)
+			if (get(get(i)) != i)
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * 配線表の逆引きの配線表であるかを判定します。
+	 * {@link #inverse()}と同じ規則で判定されるため、重複した要素を持つ配線表の逆引きも判定できます。
+	 * 
+	 * @param table 配線表。
+	 * 全ての要素が対応している必要があります。
+	 * @return 要素数が等しく、全ての要素が逆引きの要素と一致する場合は真。
+	 */
+	boolean isInverseOf(WiringTable table) {
+		return length() == table.length() && Arrays.equals(toArray(), table.inverse().toArray());
+	}
+
+	/**
+	 * 全ての要素を配列として取得します。
+	 * 
+	 * @return 要素の配列。
+	 */
+	public int[] toArray() {
+		int[] values = new int[length()];
+
+		table.get(0, values);
+
+		return values;
+	}
+
+	/**
+	 * 配線表を出力文字セットとして取得します。
+	 * 
+	 * @param charSet 入力文字セット。
+	 * @return 出力文字セット。
+	 * 対応する文字が存在しない要素はNULL文字です。
+	 */
+	public String toCharSetPair(String charSet) {
+		char[] res = new char[length()];
+
+		for (int i = 0; i < res.length; i++) {
+			int value = get(i);
+
+			res[i] = value != -1 ? charSet.charAt(value) : 0;
+		}
+
+		return new String(res);
+	}
+
+	/**
+	 * 配線表をバッファーへ書き込みます。
+	 * 
+	 * @param buffer 書き込み先のバッファー。
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for (int i = 0; i < length(); i++)
+			buffer.putInt(get(i));
+	}
+}